@@ -0,0 +1,164 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.fabric8.kubernetes.api.model.EndpointAddress;
+import io.fabric8.kubernetes.api.model.EndpointAddressBuilder;
+import io.fabric8.kubernetes.api.model.EndpointPort;
+import io.fabric8.kubernetes.api.model.EndpointPortBuilder;
+import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.model.EndpointsBuilder;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.ServiceBuilder;
+import io.fabric8.kubernetes.api.model.ServicePort;
+import io.fabric8.kubernetes.api.model.ServicePortBuilder;
+import io.fabric8.kubernetes.client.ConfigBuilder;
+import io.fabric8.kubernetes.client.DefaultKubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClient;
+
+/**
+ * In-memory services and endpoints the benchmarks run against, so that results only
+ * depend on the discovery code and not on an API server.
+ */
+final class DiscoveryFixtures {
+
+	static final String NAMESPACE = "benchmark";
+
+	private static final String[] PORT_NAMES = { "http", "https", "metrics" };
+
+	private static final int[] PORT_NUMBERS = { 8080, 8443, 9090 };
+
+	private DiscoveryFixtures() {
+	}
+
+	/**
+	 * @return a client that is never connected, the benchmarks are served from a
+	 * {@link KubernetesDiscoveryCache}
+	 */
+	static KubernetesClient client() {
+		return new DefaultKubernetesClient(new ConfigBuilder()
+				.withMasterUrl("http://localhost:1").withNamespace(NAMESPACE).build());
+	}
+
+	static Service service(String name, int ports, boolean versioned) {
+		List<ServicePort> servicePorts = new ArrayList<>(ports);
+		for (int i = 0; i < ports; i++) {
+			servicePorts.add(new ServicePortBuilder().withName(PORT_NAMES[i])
+					.withPort(PORT_NUMBERS[i]).withProtocol("TCP").build());
+		}
+		Map<String, String> labels = new HashMap<>();
+		labels.put("app", name);
+		labels.put("tier", name.hashCode() % 2 == 0 ? "backend" : "frontend");
+		labels.put("version", "1.0.0");
+		Map<String, String> annotations = new HashMap<>();
+		annotations.put("description", "Benchmark service " + name);
+		annotations.put("owner", "team-" + name.length());
+		return new ServiceBuilder().withNewMetadata().withName(name)
+				.withNamespace(NAMESPACE).withUid(name + "-uid")
+				.withResourceVersion(versioned ? "1" : null).withLabels(labels)
+				.withAnnotations(annotations).endMetadata().withNewSpec()
+				.withType("ClusterIP").withPorts(servicePorts).endSpec().build();
+	}
+
+	static Endpoints endpoints(String name, int addresses, int ports,
+			boolean versioned) {
+		List<EndpointAddress> endpointAddresses = new ArrayList<>(addresses);
+		for (int i = 0; i < addresses; i++) {
+			endpointAddresses.add(new EndpointAddressBuilder()
+					.withIp("10." + (i >> 16 & 255) + "." + (i >> 8 & 255) + "."
+							+ (i & 255))
+					.withNodeName("node-" + i % 16).withNewTargetRef().withKind("Pod")
+					.withName(name + "-" + i).withNamespace(NAMESPACE).endTargetRef()
+					.build());
+		}
+		List<EndpointPort> endpointPorts = new ArrayList<>(ports);
+		for (int i = 0; i < ports; i++) {
+			endpointPorts.add(new EndpointPortBuilder().withName(PORT_NAMES[i])
+					.withPort(PORT_NUMBERS[i]).withProtocol("TCP").build());
+		}
+		return new EndpointsBuilder().withNewMetadata().withName(name)
+				.withNamespace(NAMESPACE).withResourceVersion(versioned ? "1" : null)
+				.endMetadata().addNewSubset().withAddresses(endpointAddresses)
+				.withPorts(endpointPorts).endSubset().build();
+	}
+
+	/**
+	 * {@link KubernetesDiscoveryCache} over a fixed set of services and endpoints.
+	 */
+	static final class InMemoryDiscoveryCache implements KubernetesDiscoveryCache {
+
+		private final Map<String, Service> services = new HashMap<>();
+
+		private final Map<String, List<Endpoints>> endpoints = new HashMap<>();
+
+		private boolean cached = true;
+
+		void add(Service service, Endpoints endpoints) {
+			this.services.put(service.getMetadata().getName(), service);
+			if (endpoints != null) {
+				this.endpoints.put(endpoints.getMetadata().getName(),
+						Collections.singletonList(endpoints));
+			}
+		}
+
+		/**
+		 * @param cached false to report lookups as not answered from memory, so that
+		 * a reactive client moves them off the subscribing thread
+		 */
+		void setCached(boolean cached) {
+			this.cached = cached;
+		}
+
+		@Override
+		public boolean isSynced() {
+			return true;
+		}
+
+		@Override
+		public boolean isCached() {
+			return this.cached;
+		}
+
+		@Override
+		public boolean isCached(String serviceId) {
+			return this.cached;
+		}
+
+		@Override
+		public List<Endpoints> getEndpoints(String serviceId) {
+			return this.endpoints.getOrDefault(serviceId, Collections.emptyList());
+		}
+
+		@Override
+		public Service getService(String namespace, String serviceId) {
+			return this.services.get(serviceId);
+		}
+
+		@Override
+		public List<Service> getServices() {
+			return new ArrayList<>(this.services.values());
+		}
+
+	}
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.fabric8.kubernetes.client.KubernetesClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.cloud.client.ServiceInstance;
+
+/**
+ * Benchmarks {@link KubernetesDiscoveryClient#getInstances(String)} for services of
+ * different sizes. When {@code versioned} is set the endpoints and service carry a
+ * resource version, so instances built by a previous call are reused.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetInstancesBenchmark {
+
+	private static final String SERVICE_ID = "service";
+
+	@Param({ "10", "100", "1000", "10000" })
+	private int addresses;
+
+	@Param({ "1", "3" })
+	private int ports;
+
+	@Param({ "true", "false" })
+	private boolean metadata;
+
+	@Param({ "false", "true" })
+	private boolean versioned;
+
+	private KubernetesClient client;
+
+	private KubernetesDiscoveryClient discoveryClient;
+
+	@Setup
+	public void setUp() {
+		KubernetesDiscoveryProperties properties = new KubernetesDiscoveryProperties();
+		properties.getMetadata().setAddLabels(this.metadata);
+		properties.getMetadata().setAddAnnotations(this.metadata);
+		properties.getMetadata().setAddPorts(this.metadata);
+		properties.setPrimaryPortName("http");
+
+		DiscoveryFixtures.InMemoryDiscoveryCache cache = new DiscoveryFixtures.InMemoryDiscoveryCache();
+		cache.add(DiscoveryFixtures.service(SERVICE_ID, this.ports, this.versioned),
+				DiscoveryFixtures.endpoints(SERVICE_ID, this.addresses, this.ports,
+						this.versioned));
+
+		this.client = DiscoveryFixtures.client();
+		this.discoveryClient = new KubernetesDiscoveryClient(this.client, properties,
+				KubernetesClient::services,
+				new DefaultIsServicePortSecureResolver(properties), cache);
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.client.close();
+	}
+
+	@Benchmark
+	public List<ServiceInstance> getInstances() {
+		return this.discoveryClient.getInstances(SERVICE_ID);
+	}
+
+}
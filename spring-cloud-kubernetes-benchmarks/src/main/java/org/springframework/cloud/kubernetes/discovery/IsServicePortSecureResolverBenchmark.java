@@ -0,0 +1,90 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link DefaultIsServicePortSecureResolver} for each way a port can be
+ * considered secure, and for a port that is not.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IsServicePortSecureResolverBenchmark {
+
+	private DefaultIsServicePortSecureResolver resolver;
+
+	private DefaultIsServicePortSecureResolver.Input securedLabel;
+
+	private DefaultIsServicePortSecureResolver.Input securedAnnotation;
+
+	private DefaultIsServicePortSecureResolver.Input knownSecurePort;
+
+	private DefaultIsServicePortSecureResolver.Input notSecure;
+
+	@Setup
+	public void setUp() {
+		this.resolver = new DefaultIsServicePortSecureResolver(
+				new KubernetesDiscoveryProperties());
+		this.securedLabel = new DefaultIsServicePortSecureResolver.Input(8080,
+				"service", Collections.singletonMap("secured", "true"), null);
+		this.securedAnnotation = new DefaultIsServicePortSecureResolver.Input(8080,
+				"service", null, Collections.singletonMap("secured", "yes"));
+		this.knownSecurePort = new DefaultIsServicePortSecureResolver.Input(443,
+				"service");
+		this.notSecure = new DefaultIsServicePortSecureResolver.Input(8080, "service",
+				Collections.singletonMap("app", "service"),
+				Collections.singletonMap("description", "not secured"));
+	}
+
+	@Benchmark
+	public boolean securedLabel() {
+		return this.resolver.resolve(this.securedLabel);
+	}
+
+	@Benchmark
+	public boolean securedAnnotation() {
+		return this.resolver.resolve(this.securedAnnotation);
+	}
+
+	@Benchmark
+	public boolean knownSecurePort() {
+		return this.resolver.resolve(this.knownSecurePort);
+	}
+
+	@Benchmark
+	public boolean notSecure() {
+		return this.resolver.resolve(this.notSecure);
+	}
+
+}
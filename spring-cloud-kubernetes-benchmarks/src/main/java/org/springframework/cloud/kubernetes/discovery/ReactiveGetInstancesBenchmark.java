@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.fabric8.kubernetes.client.KubernetesClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.cloud.client.ServiceInstance;
+
+/**
+ * Compares {@link KubernetesReactiveDiscoveryClient#getInstances(String)} with the
+ * blocking {@link KubernetesDiscoveryClient#getInstances(String)} under concurrent
+ * load. The {@code blocking} and {@code reactive} benchmarks each run on
+ * {@link #THREADS} threads, the {@code mixed} group runs both clients at the same
+ * time, half of the threads each. When {@code cached} is false the cache reports
+ * lookups as not held in memory, so the reactive client pays for moving them to the
+ * bounded elastic scheduler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(ReactiveGetInstancesBenchmark.THREADS)
+public class ReactiveGetInstancesBenchmark {
+
+	static final int THREADS = 8;
+
+	private static final String SERVICE_ID = "service";
+
+	@Param({ "10", "1000" })
+	private int addresses;
+
+	@Param({ "true", "false" })
+	private boolean cached;
+
+	private KubernetesClient client;
+
+	private KubernetesDiscoveryClient discoveryClient;
+
+	private KubernetesReactiveDiscoveryClient reactiveDiscoveryClient;
+
+	@Setup
+	public void setUp() {
+		KubernetesDiscoveryProperties properties = new KubernetesDiscoveryProperties();
+		properties.setPrimaryPortName("http");
+
+		DiscoveryFixtures.InMemoryDiscoveryCache cache = new DiscoveryFixtures.InMemoryDiscoveryCache();
+		cache.add(DiscoveryFixtures.service(SERVICE_ID, 1, true),
+				DiscoveryFixtures.endpoints(SERVICE_ID, this.addresses, 1, true));
+		cache.setCached(this.cached);
+
+		this.client = DiscoveryFixtures.client();
+		this.discoveryClient = new KubernetesDiscoveryClient(this.client, properties,
+				KubernetesClient::services,
+				new DefaultIsServicePortSecureResolver(properties), cache);
+		this.reactiveDiscoveryClient = new KubernetesReactiveDiscoveryClient(
+				this.discoveryClient, cache);
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.client.close();
+	}
+
+	@Benchmark
+	public List<ServiceInstance> blocking() {
+		return this.discoveryClient.getInstances(SERVICE_ID);
+	}
+
+	@Benchmark
+	public List<ServiceInstance> reactive() {
+		return this.reactiveDiscoveryClient.getInstances(SERVICE_ID).collectList()
+				.block();
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(THREADS / 2)
+	public List<ServiceInstance> mixedBlocking() {
+		return blocking();
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(THREADS / 2)
+	public List<ServiceInstance> mixedReactive() {
+		return reactive();
+	}
+
+}
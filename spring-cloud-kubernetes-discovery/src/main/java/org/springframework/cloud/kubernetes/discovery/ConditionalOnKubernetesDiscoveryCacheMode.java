@@ -0,0 +1,45 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.springframework.context.annotation.Conditional;
+
+/**
+ * Matches when {@code spring.cloud.kubernetes.discovery.cache.mode} is the given
+ * {@link KubernetesDiscoveryCacheMode}. The property is bound like
+ * {@link KubernetesDiscoveryProperties} binds it, so {@code on-demand},
+ * {@code on_demand} and {@code ON_DEMAND} all match {@code ON_DEMAND}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.TYPE, ElementType.METHOD })
+@Documented
+@Conditional(OnKubernetesDiscoveryCacheModeCondition.class)
+public @interface ConditionalOnKubernetesDiscoveryCacheMode {
+
+	/**
+	 * @return the cache mode to match
+	 */
+	KubernetesDiscoveryCacheMode value();
+
+}
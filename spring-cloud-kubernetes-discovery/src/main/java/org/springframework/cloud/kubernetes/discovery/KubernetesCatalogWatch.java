@@ -16,26 +16,68 @@
 
 package org.springframework.cloud.kubernetes.discovery;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
 import io.fabric8.kubernetes.api.model.EndpointAddress;
+import io.fabric8.kubernetes.api.model.EndpointPort;
 import io.fabric8.kubernetes.api.model.EndpointSubset;
 import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.model.ObjectMeta;
 import io.fabric8.kubernetes.api.model.ObjectReference;
 import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.cloud.kubernetes.discovery.KubernetesInstancesChangedEvent.ServiceInstancesChange;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.scheduling.annotation.Scheduled;
 
 /**
+ * Publishes a {@link HeartbeatEvent} whenever the pods backing the services of the
+ * namespace change.
+ *
+ * In {@link KubernetesCatalogWatchMode#POLLING} mode all the endpoints are listed at a
+ * fixed delay and the event carries the sorted list of pod names. In
+ * {@link KubernetesCatalogWatchMode#EVENT} mode the catalog is maintained from an
+ * endpoints watch and the event, published as soon as a change arrives, carries a
+ * monotonically increasing state token.
+ *
+ * In both modes a {@link KubernetesInstancesChangedEvent} listing the instances that
+ * were added, removed or changed in each service follows the heartbeat, so listeners can
+ * update incrementally. The first poll reports every instance as added.
+ *
+ * With {@link KubernetesDiscoveryProperties#isUseEndpointSlices()} the pods are read from
+ * EndpointSlices instead of endpoints.
+ *
  * @author Oleg Vyukov
  */
 public class KubernetesCatalogWatch implements ApplicationEventPublisherAware {
@@ -45,12 +87,32 @@ public class KubernetesCatalogWatch implements ApplicationEventPublisherAware {
 
 	private final KubernetesClient kubernetesClient;
 
+	private final KubernetesDiscoveryProperties properties;
+
 	private final AtomicReference<List<String>> catalogEndpointsState = new AtomicReference<>();
 
+	private final ConcurrentMap<String, CatalogEntry> catalog = new ConcurrentHashMap<>();
+
+	private final AtomicLong catalogState = new AtomicLong();
+
 	private ApplicationEventPublisher publisher;
 
+	private ScheduledExecutorService executor;
+
+	private volatile Watch watch;
+
+	private volatile boolean stopped;
+
+	private KubernetesDiscoveryMetrics metrics = KubernetesDiscoveryMetrics.NONE;
+
 	public KubernetesCatalogWatch(KubernetesClient kubernetesClient) {
+		this(kubernetesClient, null);
+	}
+
+	public KubernetesCatalogWatch(KubernetesClient kubernetesClient,
+			KubernetesDiscoveryProperties properties) {
 		this.kubernetesClient = kubernetesClient;
+		this.properties = properties;
 	}
 
 	@Override
@@ -58,36 +120,525 @@ public class KubernetesCatalogWatch implements ApplicationEventPublisherAware {
 		this.publisher = publisher;
 	}
 
+	/**
+	 * @param metrics receives the latency of API calls, the catalog size and the time
+	 * of the last successful refresh
+	 */
+	public void setMetrics(KubernetesDiscoveryMetrics metrics) {
+		this.metrics = metrics != null ? metrics : KubernetesDiscoveryMetrics.NONE;
+	}
+
+	@PostConstruct
+	public void start() {
+		if (!isEventMode()) {
+			return;
+		}
+		this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "kubernetes-catalog-watch");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.executor.execute(this::listAndWatch);
+	}
+
+	@PreDestroy
+	public void stop() {
+		this.stopped = true;
+		closeWatch();
+		if (this.executor != null) {
+			this.executor.shutdownNow();
+		}
+	}
+
 	@Scheduled(
 			fixedDelayString = "${spring.cloud.kubernetes.discovery.catalogServicesWatchDelay:30000}")
 	public void catalogServicesWatch() {
+		if (isEventMode()) {
+			// 事件模式下目录由watch维护
+			return;
+		}
 		try {
 			List<String> previousState = this.catalogEndpointsState.get();
 
-			//并非所有pod都参与服务发现。只有那些有端点的人。
-			List<Endpoints> endpoints = this.kubernetesClient.endpoints().list()
-					.getItems();
-			// 获得所有的端点的pod 名称集合
-			List<String> endpointsPodNames = endpoints.stream().map(Endpoints::getSubsets)
-					.filter(Objects::nonNull).flatMap(Collection::stream)
-					.map(EndpointSubset::getAddresses).filter(Objects::nonNull)
-					.flatMap(Collection::stream).map(EndpointAddress::getTargetRef)
-					.filter(Objects::nonNull).map(ObjectReference::getName) // pod name
-																			// unique in
-																			// namespace
-					.sorted(String::compareTo).collect(Collectors.toList());
+			// 分页读取，每页只保留pod名称
+			List<String> endpointsPodNames = new ArrayList<>();
+			Map<String, CatalogEntry> fresh = new HashMap<>();
+			AtomicInteger size = new AtomicInteger();
+			if (isUseEndpointSlices()) {
+				Set<String> services = new HashSet<>();
+				this.metrics.recordApiCall("listEndpointSlices",
+						() -> new KubernetesEndpointSliceClient(this.kubernetesClient)
+								.forEach(this.kubernetesClient.getNamespace(), pageSize(),
+										slice -> {
+											if (!KubernetesEndpointSliceClient
+													.hasIpAddresses(slice)) {
+												return;
+											}
+											services.add(slice.getServiceName());
+											CatalogEntry entry = entry(slice);
+											endpointsPodNames.addAll(entry.podNames);
+											if (slice.getMetadata() != null) {
+												fresh.put(key(slice.getMetadata()),
+														entry);
+											}
+										}));
+				size.set(services.size());
+			}
+			else {
+				//并非所有pod都参与服务发现。只有那些有端点的人。
+				this.metrics.recordApiCall("listEndpoints",
+						() -> KubernetesListPager.forEach(
+								this.kubernetesClient.endpoints(), pageSize(),
+								(Endpoints endpoints) -> {
+									size.incrementAndGet();
+									CatalogEntry entry = entry(endpoints);
+									// pod name unique in namespace
+									endpointsPodNames.addAll(entry.podNames);
+									if (endpoints.getMetadata() != null) {
+										fresh.put(key(endpoints.getMetadata()), entry);
+									}
+								}));
+			}
+			endpointsPodNames.sort(String::compareTo);
 
 			this.catalogEndpointsState.set(endpointsPodNames);
+			List<ServiceInstancesChange> changes = changes(this.catalog.values(),
+					fresh.values());
+			this.catalog.keySet().retainAll(fresh.keySet());
+			this.catalog.putAll(fresh);
+			this.metrics.recordCatalogRefresh(size.get());
 
 			if (!endpointsPodNames.equals(previousState)) {
 				logger.trace("Received endpoints update from kubernetesClient: {}",
 						endpointsPodNames);
 				this.publisher.publishEvent(new HeartbeatEvent(this, endpointsPodNames));
 			}
+			publishChanges(changes);
 		}
 		catch (Exception e) {
 			logger.error("Error watching Kubernetes Services", e);
 		}
 	}
 
+	private boolean isEventMode() {
+		return this.properties != null && this.properties.getCatalogServicesWatch()
+				.getMode() == KubernetesCatalogWatchMode.EVENT;
+	}
+
+	private int pageSize() {
+		return this.properties != null ? this.properties.getPageSize() : 0;
+	}
+
+	private boolean isUseEndpointSlices() {
+		return this.properties != null && this.properties.isUseEndpointSlices();
+	}
+
+	private void listAndWatch() {
+		if (this.stopped) {
+			return;
+		}
+		if (isUseEndpointSlices()) {
+			listAndWatchSlices();
+			return;
+		}
+		try {
+			closeWatch();
+			Map<String, CatalogEntry> fresh = new HashMap<>();
+			String resourceVersion = this.metrics.recordApiCall("listEndpoints",
+					() -> KubernetesListPager.forEach(this.kubernetesClient.endpoints(),
+							pageSize(), (Endpoints endpoints) -> fresh
+									.put(key(endpoints.getMetadata()), entry(endpoints))));
+			// 重新list时可能错过了事件，比较整个目录
+			boolean changed = !fresh.equals(this.catalog);
+			List<ServiceInstancesChange> changes = changes(this.catalog.values(),
+					fresh.values());
+			this.catalog.keySet().retainAll(fresh.keySet());
+			this.catalog.putAll(fresh);
+
+			CatalogWatcher watcher = new CatalogWatcher();
+			this.watch = resourceVersion != null
+					? this.kubernetesClient.endpoints().watch(resourceVersion, watcher)
+					: this.kubernetesClient.endpoints().watch(watcher);
+			this.metrics.recordCatalogRefresh(this.catalog.size());
+			if (changed) {
+				publish(changes);
+			}
+		}
+		catch (Exception e) {
+			logger.error("Error watching Kubernetes Services", e);
+			scheduleRelist();
+		}
+	}
+
+	// 与endpoints相同，但目录按slice维护，每次事件只涉及一个slice
+	private void listAndWatchSlices() {
+		try {
+			closeWatch();
+			KubernetesEndpointSliceClient sliceClient = new KubernetesEndpointSliceClient(
+					this.kubernetesClient);
+			String namespace = this.kubernetesClient.getNamespace();
+			Map<String, CatalogEntry> fresh = new HashMap<>();
+			// FQDN的slice不产生实例
+			String resourceVersion = this.metrics.recordApiCall("listEndpointSlices",
+					() -> sliceClient.forEach(namespace, pageSize(), slice -> {
+						if (KubernetesEndpointSliceClient.hasIpAddresses(slice)) {
+							fresh.put(key(slice.getMetadata()), entry(slice));
+						}
+					}));
+			boolean changed = !fresh.equals(this.catalog);
+			List<ServiceInstancesChange> changes = changes(this.catalog.values(),
+					fresh.values());
+			this.catalog.keySet().retainAll(fresh.keySet());
+			this.catalog.putAll(fresh);
+
+			this.watch = sliceClient.watch(namespace, resourceVersion,
+					new SliceCatalogWatcher(sliceClient, namespace, resourceVersion));
+			this.metrics.recordCatalogRefresh(this.catalog.size());
+			if (changed) {
+				publish(changes);
+			}
+		}
+		catch (Exception e) {
+			logger.error("Error watching Kubernetes Services", e);
+			scheduleRelist();
+		}
+	}
+
+	private void onEndpointsEvent(Watcher.Action action, Endpoints endpoints) {
+		onCatalogEvent(action, key(endpoints.getMetadata()), entry(endpoints));
+	}
+
+	private void onCatalogEvent(Watcher.Action action, String key, CatalogEntry entry) {
+		CatalogEntry previous;
+		CatalogEntry current;
+		if (action == Watcher.Action.DELETED) {
+			previous = this.catalog.remove(key);
+			current = null;
+		}
+		else if (action == Watcher.Action.ADDED || action == Watcher.Action.MODIFIED) {
+			previous = this.catalog.put(key, entry);
+			current = entry;
+		}
+		else {
+			previous = null;
+			current = null;
+		}
+		// watch仍在推送事件，目录是最新的
+		this.metrics.recordCatalogRefresh(this.catalog.size());
+		if (!CatalogEntry.sameContent(previous, current)) {
+			logger.trace("Received {} event for {}", action, key);
+			// 使用slice时按slice比较，pod在slice之间移动会报告为先删除后添加
+			publish(changes(Collections.singletonList(previous),
+					Collections.singletonList(current)));
+		}
+	}
+
+	private void publish(List<ServiceInstancesChange> changes) {
+		this.publisher.publishEvent(
+				new HeartbeatEvent(this, this.catalogState.incrementAndGet()));
+		publishChanges(changes);
+	}
+
+	private void publishChanges(List<ServiceInstancesChange> changes) {
+		if (!changes.isEmpty()) {
+			logger.trace("Instances changed: {}", changes);
+			this.publisher
+					.publishEvent(new KubernetesInstancesChangedEvent(this, changes));
+		}
+	}
+
+	private void closeWatch() {
+		Watch current = this.watch;
+		this.watch = null;
+		if (current != null) {
+			try {
+				current.close();
+			}
+			catch (Exception e) {
+				logger.debug("Error while closing the endpoints watch", e);
+			}
+		}
+	}
+
+	private void scheduleRelist() {
+		if (!this.stopped) {
+			Duration retryDelay = this.properties.getCatalogServicesWatch()
+					.getRetryDelay();
+			this.executor.schedule(this::listAndWatch, retryDelay.toMillis(),
+					TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private static String key(ObjectMeta metadata) {
+		return metadata.getNamespace() + "/" + metadata.getName();
+	}
+
+	private static List<ServiceInstancesChange> changes(
+			Collection<CatalogEntry> previous, Collection<CatalogEntry> current) {
+		Map<String, CatalogEntry> before = CatalogEntry.byService(previous);
+		Map<String, CatalogEntry> after = CatalogEntry.byService(current);
+		Set<String> services = new TreeSet<>(before.keySet());
+		services.addAll(after.keySet());
+		List<ServiceInstancesChange> changes = new ArrayList<>();
+		for (String service : services) {
+			Map<String, Set<String>> previousInstances = CatalogEntry
+					.instancesOf(before.get(service));
+			Map<String, Set<String>> currentInstances = CatalogEntry
+					.instancesOf(after.get(service));
+			Set<String> added = new TreeSet<>();
+			Set<String> removed = new TreeSet<>();
+			Set<String> changed = new TreeSet<>();
+			currentInstances.forEach((id, addresses) -> {
+				Set<String> previousAddresses = previousInstances.get(id);
+				if (previousAddresses == null) {
+					added.add(id);
+				}
+				else if (!previousAddresses.equals(addresses)) {
+					changed.add(id);
+				}
+			});
+			for (String id : previousInstances.keySet()) {
+				if (!currentInstances.containsKey(id)) {
+					removed.add(id);
+				}
+			}
+			CatalogEntry entry = after.containsKey(service) ? after.get(service)
+					: before.get(service);
+			ServiceInstancesChange change = new ServiceInstancesChange(entry.namespace,
+					entry.serviceId, added, removed, changed);
+			if (!change.isEmpty()) {
+				changes.add(change);
+			}
+		}
+		return changes;
+	}
+
+	private static CatalogEntry entry(Endpoints endpoints) {
+		Map<String, Set<String>> instances = new HashMap<>();
+		if (endpoints.getSubsets() != null) {
+			for (EndpointSubset subset : endpoints.getSubsets()) {
+				if (subset.getAddresses() == null) {
+					continue;
+				}
+				for (EndpointAddress address : subset.getAddresses()) {
+					addInstance(instances, address.getTargetRef(), address.getIp(),
+							subset.getPorts(), EndpointPort::getPort);
+				}
+			}
+		}
+		ObjectMeta metadata = endpoints.getMetadata();
+		return new CatalogEntry(metadata != null ? metadata.getNamespace() : null,
+				metadata != null ? metadata.getName() : null, podNames(endpoints),
+				instances);
+	}
+
+	private static CatalogEntry entry(KubernetesEndpointSlice slice) {
+		Map<String, Set<String>> instances = new HashMap<>();
+		if (slice.getEndpoints() != null) {
+			for (KubernetesEndpointSlice.Endpoint endpoint : slice.getEndpoints()) {
+				if (!endpoint.isReady() || endpoint.getAddresses() == null
+						|| endpoint.getAddresses().isEmpty()) {
+					continue;
+				}
+				addInstance(instances, endpoint.getTargetRef(),
+						endpoint.getAddresses().get(0), slice.getPorts(),
+						KubernetesEndpointSlice.Port::getPort);
+			}
+		}
+		ObjectMeta metadata = slice.getMetadata();
+		return new CatalogEntry(metadata != null ? metadata.getNamespace() : null,
+				slice.getServiceName(), podNames(slice), instances);
+	}
+
+	// 实例id与DiscoveryClient一致使用pod uid，没有pod时使用ip
+	private static <P> void addInstance(Map<String, Set<String>> instances,
+			ObjectReference targetRef, String ip, List<P> ports,
+			Function<P, Integer> port) {
+		String id = targetRef != null && targetRef.getUid() != null
+				? targetRef.getUid() : ip;
+		if (id == null) {
+			return;
+		}
+		Set<String> addresses = instances.computeIfAbsent(id, k -> new TreeSet<>());
+		if (ports == null || ports.isEmpty()) {
+			addresses.add(String.valueOf(ip));
+			return;
+		}
+		for (P p : ports) {
+			addresses.add(ip + ":" + port.apply(p));
+		}
+	}
+
+	private static List<String> podNames(Endpoints endpoints) {
+		if (endpoints.getSubsets() == null) {
+			return Collections.emptyList();
+		}
+		return endpoints.getSubsets().stream().map(EndpointSubset::getAddresses)
+				.filter(Objects::nonNull).flatMap(Collection::stream)
+				.map(EndpointAddress::getTargetRef).filter(Objects::nonNull)
+				.map(ObjectReference::getName).sorted(String::compareTo)
+				.collect(Collectors.toList());
+	}
+
+	// 与endpoints的addresses一致，只包含就绪的pod
+	private static List<String> podNames(KubernetesEndpointSlice slice) {
+		if (slice.getEndpoints() == null) {
+			return Collections.emptyList();
+		}
+		return slice.getEndpoints().stream()
+				.filter(KubernetesEndpointSlice.Endpoint::isReady)
+				.map(KubernetesEndpointSlice.Endpoint::getTargetRef)
+				.filter(Objects::nonNull).map(ObjectReference::getName)
+				.sorted(String::compareTo).collect(Collectors.toList());
+	}
+
+	/**
+	 * The pods and instances of a single endpoints resource or EndpointSlice.
+	 */
+	private static final class CatalogEntry {
+
+		private final String namespace;
+
+		private final String serviceId;
+
+		private final List<String> podNames;
+
+		// 实例id -> 排序后的 ip:port
+		private final Map<String, Set<String>> instances;
+
+		CatalogEntry(String namespace, String serviceId, List<String> podNames,
+				Map<String, Set<String>> instances) {
+			this.namespace = namespace;
+			this.serviceId = serviceId;
+			this.podNames = podNames;
+			this.instances = instances;
+		}
+
+		static Map<String, CatalogEntry> byService(Collection<CatalogEntry> entries) {
+			Map<String, CatalogEntry> services = new TreeMap<>();
+			for (CatalogEntry entry : entries) {
+				if (entry != null) {
+					services.merge(entry.namespace + "/" + entry.serviceId, entry,
+							CatalogEntry::merge);
+				}
+			}
+			return services;
+		}
+
+		static Map<String, Set<String>> instancesOf(CatalogEntry entry) {
+			return entry != null ? entry.instances : Collections.emptyMap();
+		}
+
+		static boolean sameContent(CatalogEntry previous, CatalogEntry current) {
+			List<String> previousPodNames = previous != null ? previous.podNames
+					: Collections.emptyList();
+			List<String> currentPodNames = current != null ? current.podNames
+					: Collections.emptyList();
+			return previousPodNames.equals(currentPodNames)
+					&& instancesOf(previous).equals(instancesOf(current));
+		}
+
+		// 同一服务的多个slice合并为一个条目
+		CatalogEntry merge(CatalogEntry other) {
+			Map<String, Set<String>> merged = new HashMap<>(this.instances);
+			other.instances.forEach((id, addresses) -> merged.merge(id, addresses,
+					(a, b) -> {
+						Set<String> union = new TreeSet<>(a);
+						union.addAll(b);
+						return union;
+					}));
+			return new CatalogEntry(this.namespace, this.serviceId,
+					Collections.emptyList(), merged);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (o == null || getClass() != o.getClass()) {
+				return false;
+			}
+			CatalogEntry that = (CatalogEntry) o;
+			return this.podNames.equals(that.podNames)
+					&& this.instances.equals(that.instances);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(this.podNames, this.instances);
+		}
+
+	}
+
+	private final class CatalogWatcher implements Watcher<Endpoints> {
+
+		@Override
+		public void eventReceived(Action action, Endpoints endpoints) {
+			onEndpointsEvent(action, endpoints);
+		}
+
+		@Override
+		public void onClose(KubernetesClientException cause) {
+			if (!KubernetesCatalogWatch.this.stopped) {
+				logger.debug("The endpoints watch was closed, listing again", cause);
+				scheduleRelist();
+			}
+		}
+
+	}
+
+	private final class SliceCatalogWatcher
+			implements Watcher<KubernetesEndpointSlice> {
+
+		private final KubernetesEndpointSliceClient sliceClient;
+
+		private final String namespace;
+
+		private volatile String resourceVersion;
+
+		SliceCatalogWatcher(KubernetesEndpointSliceClient sliceClient, String namespace,
+				String resourceVersion) {
+			this.sliceClient = sliceClient;
+			this.namespace = namespace;
+			this.resourceVersion = resourceVersion;
+		}
+
+		@Override
+		public void eventReceived(Action action, KubernetesEndpointSlice slice) {
+			if (slice.getMetadata() != null
+					&& slice.getMetadata().getResourceVersion() != null) {
+				this.resourceVersion = slice.getMetadata().getResourceVersion();
+			}
+			// FQDN的slice不产生实例
+			if (!KubernetesEndpointSliceClient.hasIpAddresses(slice)) {
+				return;
+			}
+			onCatalogEvent(action, key(slice.getMetadata()), entry(slice));
+		}
+
+		@Override
+		public void onClose(KubernetesClientException cause) {
+			if (KubernetesCatalogWatch.this.stopped) {
+				return;
+			}
+			// API server正常结束watch时从最后的版本继续，过期(410)或出错时重新list
+			if (cause == null && this.resourceVersion != null) {
+				try {
+					KubernetesCatalogWatch.this.watch = this.sliceClient
+							.watch(this.namespace, this.resourceVersion, this);
+					logger.debug("Watching endpoint slices again from {}",
+							this.resourceVersion);
+					return;
+				}
+				catch (Exception e) {
+					logger.debug("Could not watch endpoint slices again", e);
+				}
+			}
+			logger.debug("The endpoint slices watch was closed, listing again", cause);
+			scheduleRelist();
+		}
+
+	}
+
 }
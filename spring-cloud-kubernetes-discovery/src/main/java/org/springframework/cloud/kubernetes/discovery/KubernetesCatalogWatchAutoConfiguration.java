@@ -18,6 +18,7 @@ package org.springframework.cloud.kubernetes.discovery;
 
 import io.fabric8.kubernetes.client.KubernetesClient;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -42,8 +43,13 @@ public class KubernetesCatalogWatchAutoConfiguration {
 	@ConditionalOnProperty(
 			name = "spring.cloud.kubernetes.discovery.catalog-services-watch.enabled",
 			matchIfMissing = true)
-	public KubernetesCatalogWatch kubernetesCatalogWatch(KubernetesClient client) {
-		return new KubernetesCatalogWatch(client);
+	public KubernetesCatalogWatch kubernetesCatalogWatch(KubernetesClient client,
+			ObjectProvider<KubernetesDiscoveryProperties> properties,
+			ObjectProvider<KubernetesDiscoveryMetrics> metrics) {
+		KubernetesCatalogWatch catalogWatch = new KubernetesCatalogWatch(client,
+				properties.getIfAvailable(KubernetesDiscoveryProperties::new));
+		catalogWatch.setMetrics(metrics.getIfAvailable());
+		return catalogWatch;
 	}
 
 }
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+/**
+ * How {@link KubernetesCatalogWatch} detects changes in the service catalog.
+ */
+public enum KubernetesCatalogWatchMode {
+
+	/**
+	 * list all the endpoints at a fixed delay and compare them with the previous list.
+	 */
+	POLLING,
+	/**
+	 * maintain the catalog from an endpoints watch.
+	 */
+	EVENT
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.util.List;
+
+import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.model.Service;
+
+/**
+ * In-memory view of the Kubernetes {@link Service} and {@link Endpoints} objects used
+ * by {@link KubernetesDiscoveryClient} instead of querying the API server on every
+ * call.
+ *
+ * The client only reads from the cache once {@link #isSynced()} returns true, so an
+ * implementation that is still loading its initial state never answers with an empty
+ * result.
+ */
+public interface KubernetesDiscoveryCache {
+
+	/**
+	 * @return true once the cache holds a complete view of the watched resources.
+	 */
+	boolean isSynced();
+
+	/**
+	 * @param serviceId the name of the service
+	 * @return true if the cache can answer {@link #getEndpoints(String)} and
+	 * {@link #getService(String, String)} for the service, which defaults to
+	 * {@link #isSynced()}
+	 */
+	default boolean isSynced(String serviceId) {
+		return isSynced();
+	}
+
+	/**
+	 * @return true if {@link #getServices()} is answered from memory, without calling
+	 * the API server on the caller's thread, which defaults to {@link #isSynced()}
+	 */
+	default boolean isCached() {
+		return isSynced();
+	}
+
+	/**
+	 * @param serviceId the name of the service
+	 * @return true if {@link #getEndpoints(String)} and
+	 * {@link #getService(String, String)} are answered from memory for the service,
+	 * without calling the API server on the caller's thread, which defaults to
+	 * {@link #isSynced(String)}
+	 */
+	default boolean isCached(String serviceId) {
+		return isSynced(serviceId);
+	}
+
+	/**
+	 * @param serviceId the name of the service
+	 * @return the endpoints with the given name, one per namespace that contains them
+	 */
+	List<Endpoints> getEndpoints(String serviceId);
+
+	/**
+	 * @param namespace the namespace of the service, may be null for the client's
+	 * default namespace
+	 * @param serviceId the name of the service
+	 * @return the service or null if it is not known
+	 */
+	Service getService(String namespace, String serviceId);
+
+	/**
+	 * @return all the services currently known to the cache
+	 */
+	List<Service> getServices();
+
+}
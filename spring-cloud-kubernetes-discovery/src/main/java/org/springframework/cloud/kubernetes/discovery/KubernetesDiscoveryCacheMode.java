@@ -0,0 +1,43 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+/**
+ * How {@link KubernetesDiscoveryClient} keeps discovery data in memory.
+ */
+public enum KubernetesDiscoveryCacheMode {
+
+	/**
+	 * no cache, every lookup queries the API server.
+	 */
+	NONE,
+	/**
+	 * services and endpoints are listed once and kept up to date by watches.
+	 */
+	WATCH,
+	/**
+	 * the first lookup of a service starts watches on its service and endpoints only,
+	 * watches of services that are no longer looked up are closed.
+	 */
+	ON_DEMAND,
+	/**
+	 * services and endpoints are kept for a time to live and refreshed in the
+	 * background once expired, without any watch.
+	 */
+	TTL
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.client.utils.Serialization;
+
+/**
+ * The content of {@link KubernetesWatchDiscoveryCache} written to disk: the scope it was
+ * written for, the services and endpoints (or endpoint slices) it holds, and the
+ * resource version each watch had reached. Stored as gzipped JSON.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+class KubernetesDiscoveryCacheSnapshot {
+
+	static final int FORMAT_VERSION = 1;
+
+	private int formatVersion = FORMAT_VERSION;
+
+	private String scope;
+
+	private List<Service> services = new ArrayList<>();
+
+	private String servicesResourceVersion;
+
+	private List<Endpoints> endpoints = new ArrayList<>();
+
+	private String endpointsResourceVersion;
+
+	private List<KubernetesEndpointSlice> endpointSlices = new ArrayList<>();
+
+	private String endpointSlicesResourceVersion;
+
+	static KubernetesDiscoveryCacheSnapshot read(Path file) throws IOException {
+		try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+			return Serialization.jsonMapper().readValue(in,
+					KubernetesDiscoveryCacheSnapshot.class);
+		}
+	}
+
+	/**
+	 * Writes the snapshot to a temporary file first and then moves it in place, so a
+	 * crash while writing never leaves a truncated snapshot behind.
+	 * @param file the snapshot file
+	 * @throws IOException if the snapshot could not be written
+	 */
+	void write(Path file) throws IOException {
+		Path directory = file.toAbsolutePath().getParent();
+		if (directory != null) {
+			Files.createDirectories(directory);
+		}
+		Path temp = Files.createTempFile(directory, file.getFileName().toString(),
+				".tmp");
+		try {
+			try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp))) {
+				Serialization.jsonMapper().writeValue(out, this);
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	public int getFormatVersion() {
+		return this.formatVersion;
+	}
+
+	public void setFormatVersion(int formatVersion) {
+		this.formatVersion = formatVersion;
+	}
+
+	public String getScope() {
+		return this.scope;
+	}
+
+	public void setScope(String scope) {
+		this.scope = scope;
+	}
+
+	public List<Service> getServices() {
+		return this.services;
+	}
+
+	public void setServices(List<Service> services) {
+		this.services = services;
+	}
+
+	public String getServicesResourceVersion() {
+		return this.servicesResourceVersion;
+	}
+
+	public void setServicesResourceVersion(String servicesResourceVersion) {
+		this.servicesResourceVersion = servicesResourceVersion;
+	}
+
+	public List<Endpoints> getEndpoints() {
+		return this.endpoints;
+	}
+
+	public void setEndpoints(List<Endpoints> endpoints) {
+		this.endpoints = endpoints;
+	}
+
+	public String getEndpointsResourceVersion() {
+		return this.endpointsResourceVersion;
+	}
+
+	public void setEndpointsResourceVersion(String endpointsResourceVersion) {
+		this.endpointsResourceVersion = endpointsResourceVersion;
+	}
+
+	public List<KubernetesEndpointSlice> getEndpointSlices() {
+		return this.endpointSlices;
+	}
+
+	public void setEndpointSlices(List<KubernetesEndpointSlice> endpointSlices) {
+		this.endpointSlices = endpointSlices;
+	}
+
+	public String getEndpointSlicesResourceVersion() {
+		return this.endpointSlicesResourceVersion;
+	}
+
+	public void setEndpointSlicesResourceVersion(String endpointSlicesResourceVersion) {
+		this.endpointSlicesResourceVersion = endpointSlicesResourceVersion;
+	}
+
+}
@@ -17,10 +17,19 @@
 package org.springframework.cloud.kubernetes.discovery;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -28,21 +37,21 @@ import io.fabric8.kubernetes.api.model.EndpointAddress;
 import io.fabric8.kubernetes.api.model.EndpointPort;
 import io.fabric8.kubernetes.api.model.EndpointSubset;
 import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.model.EndpointsList;
 import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.ServiceList;
 import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.kubernetes.client.dsl.FilterWatchListDeletable;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.springframework.cloud.client.ServiceInstance;
 import org.springframework.cloud.client.discovery.DiscoveryClient;
-import org.springframework.expression.Expression;
-import org.springframework.expression.spel.standard.SpelExpressionParser;
-import org.springframework.expression.spel.support.SimpleEvaluationContext;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
-import static java.util.stream.Collectors.toMap;
-
 /**
  * Kubeneretes implementation of {@link DiscoveryClient}.
  *
@@ -52,16 +61,36 @@ public class KubernetesDiscoveryClient implements DiscoveryClient {
 
 	private static final Log log = LogFactory.getLog(KubernetesDiscoveryClient.class);
 
+	private static final int SAME_NODE = 0;
+
+	private static final int SAME_ZONE = 1;
+
+	private static final int OTHER_ZONE = 2;
+
 	private final KubernetesDiscoveryProperties properties;
 
 	private final DefaultIsServicePortSecureResolver isServicePortSecureResolver;
 
 	private final KubernetesClientServicesFunction kubernetesClientServicesFunction;
 
-	private final SpelExpressionParser parser = new SpelExpressionParser();
+	private final KubernetesDiscoveryCache cache;
+
+	private final KubernetesServiceMetadataResolver metadataResolver;
+
+	private final KubernetesTopologyResolver topologyResolver;
 
-	private final SimpleEvaluationContext evalCtxt = SimpleEvaluationContext
-			.forReadOnlyDataBinding().withInstanceMethods().build();
+	private final ConcurrentMap<String, KubernetesServiceInstancesSnapshot> snapshots = new ConcurrentHashMap<>();
+
+	private final KubernetesSingleFlight<String, List<ServiceInstance>> instancesLookups = new KubernetesSingleFlight<>(
+			KubernetesDiscoveryClient::share);
+
+	private volatile KubernetesServiceFilter serviceFilter;
+
+	private volatile KubernetesNamespaceQueries namespaceQueries;
+
+	private KubernetesDiscoveryMetrics metrics = KubernetesDiscoveryMetrics.NONE;
+
+	private volatile String clusterName;
 
 	private KubernetesClient client;
 
@@ -78,10 +107,35 @@ public class KubernetesDiscoveryClient implements DiscoveryClient {
 			KubernetesClientServicesFunction kubernetesClientServicesFunction,
 			DefaultIsServicePortSecureResolver isServicePortSecureResolver) {
 
+		this(client, kubernetesDiscoveryProperties, kubernetesClientServicesFunction,
+				isServicePortSecureResolver, null);
+	}
+
+	KubernetesDiscoveryClient(KubernetesClient client,
+			KubernetesDiscoveryProperties kubernetesDiscoveryProperties,
+			KubernetesClientServicesFunction kubernetesClientServicesFunction,
+			DefaultIsServicePortSecureResolver isServicePortSecureResolver,
+			KubernetesDiscoveryCache cache) {
+
+		this(client, kubernetesDiscoveryProperties, kubernetesClientServicesFunction,
+				isServicePortSecureResolver, cache, null);
+	}
+
+	KubernetesDiscoveryClient(KubernetesClient client,
+			KubernetesDiscoveryProperties kubernetesDiscoveryProperties,
+			KubernetesClientServicesFunction kubernetesClientServicesFunction,
+			DefaultIsServicePortSecureResolver isServicePortSecureResolver,
+			KubernetesDiscoveryCache cache,
+			KubernetesTopologyResolver topologyResolver) {
+
 		this.client = client;
 		this.properties = kubernetesDiscoveryProperties;
 		this.kubernetesClientServicesFunction = kubernetesClientServicesFunction;
 		this.isServicePortSecureResolver = isServicePortSecureResolver;
+		this.cache = cache;
+		this.topologyResolver = topologyResolver;
+		this.metadataResolver = new KubernetesServiceMetadataResolver(
+				kubernetesDiscoveryProperties);
 	}
 
 	public KubernetesClient getClient() {
@@ -101,88 +155,518 @@ public class KubernetesDiscoveryClient implements DiscoveryClient {
 	public List<ServiceInstance> getInstances(String serviceId) {
 		Assert.notNull(serviceId,
 				"[Assertion failed] - the object argument must not be null");
-		List<Endpoints> endpointsList = this.properties.isAllNamespaces()
-				? this.client.endpoints().inAnyNamespace()
-						.withField("metadata.name", serviceId).list().getItems()
-				: Collections
-						.singletonList(this.client.endpoints().withName(serviceId).get());
-		List<EndpointSubset> subsets = endpointsList.stream()
-				.flatMap(endpoints -> getSubsetsFromEndpoints(endpoints).stream())
-				.collect(Collectors.toList());
-		List<ServiceInstance> instances = new ArrayList<>();
-		if (!subsets.isEmpty()) {
-
-			// 子集合不为空
-			final Service service = this.client.services().withName(serviceId).get();
-
-			final Map<String, String> serviceMetadata = new HashMap<>();
-			// 获得k8s元数据
-			KubernetesDiscoveryProperties.Metadata metadataProps = this.properties
-					.getMetadata();
-			if (metadataProps.isAddLabels()) {
-				// k8s label 标签在元数据中
-				Map<String, String> labelMetadata = getMapWithPrefixedKeys(
-						service.getMetadata().getLabels(),
-						metadataProps.getLabelsPrefix());
-				if (log.isDebugEnabled()) {
-					log.debug("Adding label metadata: " + labelMetadata);
+		List<ServiceInstance> instances;
+		boolean cacheSynced = isCacheSynced(serviceId);
+		if (this.cache != null) {
+			// 只有不需要请求API的查询才算命中
+			this.metrics.recordCacheLookup(
+					cacheSynced && this.cache.isCached(serviceId));
+		}
+		if (cacheSynced) {
+			instances = loadInstances(serviceId);
+		}
+		else {
+			// 同一服务的并发查询合并为一次API请求
+			String key = scope() + "/" + serviceId;
+			instances = this.instancesLookups.execute(key,
+					() -> loadInstances(serviceId));
+		}
+		this.metrics.recordInstances(serviceId, instances.size());
+		return instances;
+	}
+
+	/**
+	 * @param metrics receives the latency of API calls, the number of instances
+	 * returned and the cache hits and misses
+	 */
+	public void setMetrics(KubernetesDiscoveryMetrics metrics) {
+		this.metrics = metrics != null ? metrics : KubernetesDiscoveryMetrics.NONE;
+	}
+
+	/**
+	 * @param clusterName the name of the cluster added to the metadata of every
+	 * instance under {@link KubernetesFederatedDiscoveryClient#CLUSTER_METADATA_KEY}, or
+	 * null to add none
+	 */
+	public void setClusterName(String clusterName) {
+		this.clusterName = clusterName;
+		this.snapshots.clear();
+	}
+
+	public String getClusterName() {
+		return this.clusterName;
+	}
+
+	/**
+	 * @return the number of instance lookups that queried the Kubernetes API server
+	 */
+	public long getInstancesLookupCount() {
+		return this.instancesLookups.getExecutedCount();
+	}
+
+	/**
+	 * @return the number of instance lookups that shared the result of an identical
+	 * lookup already in flight instead of querying the Kubernetes API server
+	 */
+	public long getCoalescedInstancesLookupCount() {
+		return this.instancesLookups.getCoalescedCount();
+	}
+
+	private List<ServiceInstance> loadInstances(String serviceId) {
+		List<Endpoints> endpointsList = new ArrayList<>();
+		List<Service> services = new ArrayList<>();
+		if (isCacheSynced(serviceId)) {
+			for (Endpoints endpoints : this.cache.getEndpoints(serviceId)) {
+				if (getSubsetsFromEndpoints(endpoints).isEmpty()) {
+					continue;
 				}
-				serviceMetadata.putAll(labelMetadata);
+				// 在端点所在的命名空间中查找服务
+				endpointsList.add(endpoints);
+				services.add(this.cache.getService(
+						endpoints.getMetadata().getNamespace(), serviceId));
 			}
-			if (metadataProps.isAddAnnotations()) {
-				// ServiceInstance 中包含k8s 注解
-				// 结果加上前缀
-				Map<String, String> annotationMetadata = getMapWithPrefixedKeys(
-						service.getMetadata().getAnnotations(),
-						metadataProps.getAnnotationsPrefix());
-				if (log.isDebugEnabled()) {
-					log.debug("Adding annotation metadata: " + annotationMetadata);
+		}
+		else if (namespaceQueries() != null) {
+			// 每个命名空间并行查询，服务在端点所在的命名空间中查找
+			for (NamespaceLookup lookup : namespaceQueries()
+					.query(namespace -> loadNamespace(namespace, serviceId))) {
+				for (Endpoints endpoints : lookup.endpoints) {
+					endpointsList.add(endpoints);
+					services.add(lookup.service);
 				}
-				serviceMetadata.putAll(annotationMetadata);
 			}
-
-			for (EndpointSubset s : subsets) {
-				// 使用每个端点端口信息扩展服务元数据映射（如果请求）
-				Map<String, String> endpointMetadata = new HashMap<>(serviceMetadata);
-				if (metadataProps.isAddPorts()) {
-					Map<String, String> ports = s.getPorts().stream()
-						// 过滤端口名不为空的
-							.filter(port -> !StringUtils.isEmpty(port.getName()))
-							.collect(toMap(EndpointPort::getName,
-									port -> Integer.toString(port.getPort())));
-					Map<String, String> portMetadata = getMapWithPrefixedKeys(ports,
-							metadataProps.getPortsPrefix());
-					if (log.isDebugEnabled()) {
-						log.debug("Adding port metadata: " + portMetadata);
-					}
-					endpointMetadata.putAll(portMetadata);
+		}
+		else {
+			List<Endpoints> allEndpoints;
+			if (this.properties.isUseEndpointSlices()) {
+				allEndpoints = getEndpointsFromSlices(null, serviceId);
+			}
+			else {
+				allEndpoints = this.metrics.recordApiCall("getEndpoints",
+						() -> this.properties.isAllNamespaces()
+								? this.client.endpoints().inAnyNamespace()
+										.withField("metadata.name", serviceId).list()
+										.getItems()
+								: Collections.singletonList(this.client.endpoints()
+										.withName(serviceId).get()));
+			}
+			for (Endpoints endpoints : allEndpoints) {
+				if (!getSubsetsFromEndpoints(endpoints).isEmpty()) {
+					endpointsList.add(endpoints);
 				}
+			}
+			if (!endpointsList.isEmpty() && this.properties.isAllNamespaces()) {
+				// 在端点所在的命名空间中查找服务
+				Map<String, Service> byNamespace = getServicesInAnyNamespace(serviceId);
+				endpointsList.forEach(endpoints -> services.add(byNamespace
+						.get(namespaceOf(endpoints.getMetadata().getNamespace()))));
+			}
+			else if (!endpointsList.isEmpty()) {
+				// 子集合不为空
+				final Service service = this.metrics.recordApiCall("getService",
+						() -> this.client.services().withName(serviceId).get());
+				endpointsList.forEach(endpoints -> services.add(service));
+			}
+		}
+		return buildInstances(serviceId, endpointsList, services);
+	}
+
+	private NamespaceLookup loadNamespace(String namespace, String serviceId) {
+		List<Endpoints> found = this.properties.isUseEndpointSlices()
+				? getEndpointsFromSlices(namespace, serviceId)
+				: Collections.singletonList(this.metrics.recordApiCall("getEndpoints",
+						() -> this.client.endpoints().inNamespace(namespace)
+								.withName(serviceId).get()));
+		List<Endpoints> endpointsList = new ArrayList<>();
+		for (Endpoints endpoints : found) {
+			if (!getSubsetsFromEndpoints(endpoints).isEmpty()) {
+				endpointsList.add(endpoints);
+			}
+		}
+		Service service = endpointsList.isEmpty() ? null
+				: this.metrics.recordApiCall("getService", () -> this.client.services()
+						.inNamespace(namespace).withName(serviceId).get());
+		return new NamespaceLookup(endpointsList, service);
+	}
+
+	private Map<String, Service> getServicesInAnyNamespace(String serviceId) {
+		Map<String, Service> result = new HashMap<>();
+		this.metrics.recordApiCall("getService",
+				() -> this.client.services().inAnyNamespace()
+						.withField("metadata.name", serviceId).list().getItems())
+				.forEach(service -> result.put(
+						namespaceOf(service.getMetadata().getNamespace()), service));
+		return result;
+	}
+
+	// 配置了命名空间列表且不查询所有命名空间时按命名空间并行查询
+	private KubernetesNamespaceQueries namespaceQueries() {
+		KubernetesNamespaceQueries queries = KubernetesNamespaceQueries
+				.of(this.properties, this.namespaceQueries);
+		this.namespaceQueries = queries;
+		return queries;
+	}
+
+	private String scope() {
+		if (this.properties.isAllNamespaces()) {
+			return "*";
+		}
+		KubernetesNamespaceQueries queries = namespaceQueries();
+		return queries != null ? String.join(",", queries.getNamespaces())
+				: this.client.getNamespace();
+	}
 
-				List<EndpointAddress> addresses = s.getAddresses();
-				for (EndpointAddress endpointAddress : addresses) {
-					String instanceId = null;
-					if (endpointAddress.getTargetRef() != null) {
-						// 获得instanceId
-						instanceId = endpointAddress.getTargetRef().getUid();
-					}
-
-					// 找到主端口
-					EndpointPort endpointPort = findEndpointPort(s);
-					instances.add(new KubernetesServiceInstance(instanceId, serviceId,
-							endpointAddress, endpointPort, endpointMetadata,
-							this.isServicePortSecureResolver
-									.resolve(new DefaultIsServicePortSecureResolver.Input(
-											endpointPort.getPort(),
-											service.getMetadata().getName(),
-											service.getMetadata().getLabels(),
-											service.getMetadata().getAnnotations()))));
+	/**
+	 * Looks up the instances of several services at once. Unless the cache is synced,
+	 * the endpoints and services are each listed once for the whole set instead of
+	 * queried once per service.
+	 * @param serviceIds the names of the services
+	 * @return the instances of each service, in the iteration order of the given names
+	 */
+	public Map<String, List<ServiceInstance>> getInstances(
+			Collection<String> serviceIds) {
+		Assert.notNull(serviceIds,
+				"[Assertion failed] - the object argument must not be null");
+		Map<String, List<ServiceInstance>> result = new LinkedHashMap<>();
+		if (serviceIds.size() <= 1
+				|| serviceIds.stream().allMatch(this::isCacheSynced)) {
+			for (String serviceId : serviceIds) {
+				result.put(serviceId, getInstances(serviceId));
+			}
+			return result;
+		}
+		Set<String> wanted = new HashSet<>(serviceIds);
+		Map<String, Map<String, Endpoints>> endpointsByService = listEndpoints(wanted);
+		Map<String, Service> servicesByKey = new ConcurrentHashMap<>();
+		if (!endpointsByService.isEmpty()) {
+			KubernetesNamespaceQueries queries = namespaceQueries();
+			if (queries != null) {
+				queries.query(namespace -> {
+					listServices(wanted, namespace, servicesByKey);
+					return null;
+				});
+			}
+			else {
+				listServices(wanted, null, servicesByKey);
+			}
+		}
+		// 在内存中按命名空间和名称关联端点和服务
+		for (String serviceId : serviceIds) {
+			if (this.cache != null) {
+				this.metrics.recordCacheLookup(false);
+			}
+			List<Endpoints> endpointsList = new ArrayList<>();
+			List<Service> services = new ArrayList<>();
+			endpointsByService.getOrDefault(serviceId, Collections.emptyMap())
+					.forEach((namespace, endpoints) -> {
+						endpointsList.add(endpoints);
+						services.add(servicesByKey.get(key(namespace, serviceId)));
+					});
+			List<ServiceInstance> instances = buildInstances(serviceId, endpointsList,
+					services);
+			this.metrics.recordInstances(serviceId, instances.size());
+			result.put(serviceId, instances);
+		}
+		return result;
+	}
+
+	// namespace为null时使用客户端的命名空间或所有命名空间
+	private void listServices(Set<String> serviceIds, String namespace,
+			Map<String, Service> servicesByKey) {
+		FilterWatchListDeletable<Service, ServiceList, Boolean, Watch, Watcher<Service>> operation;
+		if (namespace != null) {
+			operation = this.client.services().inNamespace(namespace);
+		}
+		else if (this.properties.isAllNamespaces()) {
+			operation = this.client.services().inAnyNamespace();
+		}
+		else {
+			operation = this.client.services();
+		}
+		this.metrics.recordApiCall("listServices",
+				() -> KubernetesListPager.forEach(operation,
+						this.properties.getPageSize(), (Service service) -> {
+							if (serviceIds.contains(service.getMetadata().getName())) {
+								servicesByKey.put(
+										key(service.getMetadata().getNamespace(),
+												service.getMetadata().getName()),
+										service);
+							}
+						}));
+	}
+
+	// 一次list得到所有请求服务的端点，按服务名称和命名空间索引
+	private Map<String, Map<String, Endpoints>> listEndpoints(Set<String> serviceIds) {
+		KubernetesNamespaceQueries queries = namespaceQueries();
+		if (queries == null) {
+			return listEndpoints(serviceIds, null);
+		}
+		Map<String, Map<String, Endpoints>> result = new HashMap<>();
+		for (Map<String, Map<String, Endpoints>> partial : queries
+				.query(namespace -> listEndpoints(serviceIds, namespace))) {
+			partial.forEach((serviceId, byNamespace) -> result
+					.computeIfAbsent(serviceId, k -> new LinkedHashMap<>())
+					.putAll(byNamespace));
+		}
+		return result;
+	}
+
+	private Map<String, Map<String, Endpoints>> listEndpoints(Set<String> serviceIds,
+			String namespace) {
+		Map<String, Map<String, Endpoints>> result = new HashMap<>();
+		if (this.properties.isUseEndpointSlices()) {
+			Map<String, Map<String, List<KubernetesEndpointSlice>>> slices = new HashMap<>();
+			this.metrics.recordApiCall("listEndpointSlices",
+					() -> new KubernetesEndpointSliceClient(this.client).forEach(
+							sliceNamespace(namespace),
+							this.properties.getPageSize(), slice -> {
+								String serviceName = slice.getServiceName();
+								if (serviceName != null
+										&& serviceIds.contains(serviceName)) {
+									slices.computeIfAbsent(serviceName,
+											k -> new LinkedHashMap<>())
+											.computeIfAbsent(
+													namespaceOf(slice.getMetadata()
+															.getNamespace()),
+													ns -> new ArrayList<>())
+											.add(slice);
+								}
+							}));
+			slices.forEach((serviceId, byNamespace) -> byNamespace
+					.forEach((sliceNamespace, namespaceSlices) -> result
+							.computeIfAbsent(serviceId, k -> new LinkedHashMap<>())
+							.put(sliceNamespace,
+									KubernetesEndpointSliceClient.toEndpoints(
+											sliceNamespace, serviceId,
+											namespaceSlices))));
+			return result;
+		}
+		FilterWatchListDeletable<Endpoints, EndpointsList, Boolean, Watch, Watcher<Endpoints>> operation;
+		if (namespace != null) {
+			operation = this.client.endpoints().inNamespace(namespace);
+		}
+		else if (this.properties.isAllNamespaces()) {
+			operation = this.client.endpoints().inAnyNamespace();
+		}
+		else {
+			operation = this.client.endpoints();
+		}
+		this.metrics.recordApiCall("listEndpoints",
+				() -> KubernetesListPager.forEach(operation,
+						this.properties.getPageSize(), (Endpoints endpoints) -> {
+							String name = endpoints.getMetadata().getName();
+							if (serviceIds.contains(name)
+									&& !getSubsetsFromEndpoints(endpoints).isEmpty()) {
+								result.computeIfAbsent(name, k -> new LinkedHashMap<>()).put(
+										namespaceOf(endpoints.getMetadata()
+												.getNamespace()),
+										endpoints);
+							}
+						}));
+		return result;
+	}
+
+	// 显式的命名空间，否则为客户端的命名空间，查询所有命名空间时为null
+	private String sliceNamespace(String namespace) {
+		if (namespace != null) {
+			return namespace;
+		}
+		return this.properties.isAllNamespaces() ? null : this.client.getNamespace();
+	}
+
+	private String namespaceOf(String namespace) {
+		return namespace != null ? namespace : this.client.getNamespace();
+	}
+
+	private String key(String namespace, String name) {
+		return namespaceOf(namespace) + "/" + name;
+	}
+
+	private List<ServiceInstance> buildInstances(String serviceId,
+			List<Endpoints> endpointsList, List<Service> services) {
+		if (endpointsList.isEmpty()) {
+			this.snapshots.remove(serviceId);
+			return new ArrayList<>();
+		}
+
+		// 端点和服务的resourceVersion未变化时直接返回之前构建的实例，
+		// 节点可用区缓存过期后重新构建
+		long topologyGeneration = topologyMode() != KubernetesTopologyMode.NONE
+				? this.topologyResolver.getGeneration() : 0;
+		KubernetesServiceInstancesSnapshot snapshot = this.snapshots.get(serviceId);
+		if (snapshot != null
+				&& snapshot.isBuiltFrom(endpointsList, services, topologyGeneration)) {
+			return snapshot.getInstances();
+		}
+
+		List<ServiceInstance> instances = new ArrayList<>();
+		for (int i = 0; i < endpointsList.size(); i++) {
+			Service service = services.get(i);
+			if (service == null) {
+				if (log.isDebugEnabled()) {
+					log.debug("No service found for endpoints "
+							+ endpointsList.get(i).getMetadata().getNamespace() + "/"
+							+ serviceId);
 				}
+				continue;
 			}
+			addInstances(instances, serviceId, service,
+					getSubsetsFromEndpoints(endpointsList.get(i)));
 		}
 
+		instances = applyTopology(instances);
+
+		snapshot = new KubernetesServiceInstancesSnapshot(endpointsList, services,
+				instances, topologyGeneration);
+		if (snapshot.isVersioned()) {
+			this.snapshots.put(serviceId, snapshot);
+			return snapshot.getInstances();
+		}
+		this.snapshots.remove(serviceId);
 		return instances;
 	}
 
+	// 快照中的列表不可变可以直接共享，其他列表给每个等待者一份拷贝
+	private static List<ServiceInstance> share(List<ServiceInstance> instances) {
+		return instances instanceof ArrayList ? new ArrayList<>(instances) : instances;
+	}
+
+	// 按命名空间合并同一服务的EndpointSlice
+	private List<Endpoints> getEndpointsFromSlices(String namespace, String serviceId) {
+		List<KubernetesEndpointSlice> slices = this.metrics.recordApiCall(
+				"getEndpointSlices", () -> new KubernetesEndpointSliceClient(this.client)
+						.list(sliceNamespace(namespace), serviceId));
+		Map<String, List<KubernetesEndpointSlice>> byNamespace = slices.stream()
+				.collect(Collectors.groupingBy(
+						slice -> slice.getMetadata().getNamespace(), TreeMap::new,
+						Collectors.toList()));
+		List<Endpoints> result = new ArrayList<>(byNamespace.size());
+		byNamespace.forEach((sliceNamespace, namespaceSlices) -> result.add(
+				KubernetesEndpointSliceClient.toEndpoints(sliceNamespace, serviceId,
+						namespaceSlices)));
+		return result;
+	}
+
+	private void addInstances(List<ServiceInstance> instances, String serviceId,
+			Service service, List<EndpointSubset> subsets) {
+		for (EndpointSubset s : subsets) {
+			List<EndpointAddress> addresses = s.getAddresses();
+			if (addresses == null || addresses.isEmpty()) {
+				continue;
+			}
+			// 服务元数据按服务版本共享，不再为每个子集复制
+			Map<String, String> endpointMetadata = this.metadataResolver
+					.resolve(service, s);
+			if (this.clusterName != null) {
+				endpointMetadata = withCluster(endpointMetadata);
+			}
+			boolean topology = topologyMode() != KubernetesTopologyMode.NONE;
+			// 同一节点上的实例共用一份带拓扑信息的元数据
+			Map<String, Map<String, String>> byNode = topology ? new HashMap<>() : null;
+
+			// 找到主端口，同一子集中的所有地址共享端口和安全标记
+			EndpointPort endpointPort = findEndpointPort(s);
+			boolean secure = this.isServicePortSecureResolver
+					.resolve(new DefaultIsServicePortSecureResolver.Input(
+							endpointPort.getPort(), service.getMetadata().getName(),
+							service.getMetadata().getLabels(),
+							service.getMetadata().getAnnotations()));
+			for (EndpointAddress endpointAddress : addresses) {
+				String instanceId = null;
+				if (endpointAddress.getTargetRef() != null) {
+					// 获得instanceId
+					instanceId = endpointAddress.getTargetRef().getUid();
+				}
+
+				instances.add(new KubernetesServiceInstance(instanceId, serviceId,
+						endpointAddress, endpointPort,
+						topology ? withTopology(byNode, endpointMetadata,
+								endpointAddress.getNodeName()) : endpointMetadata,
+						secure));
+			}
+		}
+	}
+
+	private KubernetesTopologyMode topologyMode() {
+		KubernetesDiscoveryProperties.Topology topology = this.properties.getTopology();
+		if (this.topologyResolver == null || topology == null
+				|| topology.getMode() == null) {
+			return KubernetesTopologyMode.NONE;
+		}
+		return topology.getMode();
+	}
+
+	private Map<String, String> withCluster(Map<String, String> metadata) {
+		Map<String, String> result = new HashMap<>(metadata);
+		result.put(KubernetesFederatedDiscoveryClient.CLUSTER_METADATA_KEY,
+				this.clusterName);
+		return Collections.unmodifiableMap(result);
+	}
+
+	private Map<String, String> withTopology(
+			Map<String, Map<String, String>> byNode, Map<String, String> metadata,
+			String nodeName) {
+		if (nodeName == null) {
+			return metadata;
+		}
+		return byNode.computeIfAbsent(nodeName, node -> withTopology(metadata, node));
+	}
+
+	private Map<String, String> withTopology(Map<String, String> metadata,
+			String nodeName) {
+		Map<String, String> result = new HashMap<>(metadata);
+		result.put(KubernetesTopologyResolver.NODE_METADATA_KEY, nodeName);
+		String zone = this.topologyResolver.getZone(nodeName);
+		if (zone != null) {
+			result.put(KubernetesTopologyResolver.ZONE_METADATA_KEY, zone);
+		}
+		return Collections.unmodifiableMap(result);
+	}
+
+	// 同节点的实例排在最前，其次是同可用区的实例
+	private List<ServiceInstance> applyTopology(List<ServiceInstance> instances) {
+		KubernetesTopologyMode mode = topologyMode();
+		if (mode == KubernetesTopologyMode.NONE || instances.isEmpty()) {
+			return instances;
+		}
+		String currentNode = this.topologyResolver.getCurrentNodeName();
+		String currentZone = this.topologyResolver.getCurrentZone();
+		if (currentNode == null && currentZone == null) {
+			return instances;
+		}
+		List<ServiceInstance> result = new ArrayList<>(instances);
+		result.sort(Comparator
+				.comparingInt(instance -> locality(instance, currentNode, currentZone)));
+		if (mode == KubernetesTopologyMode.FILTER
+				&& locality(result.get(0), currentNode, currentZone) < OTHER_ZONE) {
+			result.removeIf(
+					instance -> locality(instance, currentNode, currentZone) == OTHER_ZONE);
+		}
+		return result;
+	}
+
+	private static int locality(ServiceInstance instance, String currentNode,
+			String currentZone) {
+		Map<String, String> metadata = instance.getMetadata();
+		if (currentNode != null && currentNode
+				.equals(metadata.get(KubernetesTopologyResolver.NODE_METADATA_KEY))) {
+			return SAME_NODE;
+		}
+		if (currentZone != null && currentZone
+				.equals(metadata.get(KubernetesTopologyResolver.ZONE_METADATA_KEY))) {
+			return SAME_ZONE;
+		}
+		return OTHER_ZONE;
+	}
+
+	private boolean isCacheSynced() {
+		return this.cache != null && this.cache.isSynced();
+	}
+
+	private boolean isCacheSynced(String serviceId) {
+		return this.cache != null && this.cache.isSynced(serviceId);
+	}
+
 	private EndpointPort findEndpointPort(EndpointSubset s) {
 		List<EndpointPort> ports = s.getPorts();
 		EndpointPort endpointPort;
@@ -217,52 +701,116 @@ public class KubernetesDiscoveryClient implements DiscoveryClient {
 		return endpoints.getSubsets();
 	}
 
-	//返回一个包含原始地图所有条目的新地图
-	//但前缀是键
-	//如果前缀为null或为空，则返回地图本身（当然不变）
-	private Map<String, String> getMapWithPrefixedKeys(Map<String, String> map,
-			String prefix) {
-		if (map == null) {
-			return new HashMap<>();
-		}
-
-		// 当前缀为空时，只返回具有相同条目的map
-		if (!StringUtils.hasText(prefix)) {
-			return map;
-		}
-
-		final Map<String, String> result = new HashMap<>();
-		map.forEach((k, v) -> result.put(prefix + k, v));
-
-		// 循环加上前缀，返回
-		return result;
-	}
-
 	@Override
 	public List<String> getServices() {
 		String spelExpression = this.properties.getFilter();
-		Predicate<Service> filteredServices;
 		if (spelExpression == null || spelExpression.isEmpty()) {
-			filteredServices = (Service instance) -> true;
+			return getServiceNames((Service instance) -> true, true);
+		}
+		KubernetesServiceFilter filter = getServiceFilter(spelExpression);
+		Set<String> uids = new HashSet<>();
+		List<String> result = getServiceNames(service -> {
+			if (service.getMetadata().getUid() != null) {
+				uids.add(service.getMetadata().getUid());
+			}
+			return filter.test(service);
+		}, filter.isMetadataOnly());
+		filter.retainOnly(uids);
+		return result;
+	}
+
+	public List<String> getServices(Predicate<Service> filter) {
+		return getServiceNames(filter, false);
+	}
+
+	// 分页读取服务，每页只保留通过过滤的服务名称
+	private List<String> getServiceNames(Predicate<Service> filter,
+			boolean metadataOnly) {
+		List<String> names = new ArrayList<>();
+		Consumer<Service> consumer = service -> {
+			if (filter.test(service)) {
+				names.add(service.getMetadata().getName());
+			}
+		};
+		if (isCacheSynced()) {
+			this.cache.getServices().forEach(consumer);
+		}
+		else if (namespaceQueries() != null) {
+			// 并行读取各命名空间，在调用线程上过滤
+			boolean metadata = metadataOnly && this.properties.isMetadataOnlyListing();
+			namespaceQueries()
+					.query(namespace -> listServices(namespace, metadata))
+					.forEach(services -> services.forEach(consumer));
+		}
+		else if (metadataOnly && this.properties.isMetadataOnlyListing()) {
+			// 过滤只需要metadata时，不下载spec和status
+			this.metrics.recordApiCall("listServiceMetadata", () -> {
+				new KubernetesServiceMetadataClient(this.client).forEach(
+						this.properties.isAllNamespaces() ? null
+								: this.client.getNamespace(),
+						this.properties.getServiceLabels(), this.properties.getPageSize(),
+						consumer);
+				return null;
+			});
 		}
 		else {
-			Expression filterExpr = this.parser.parseExpression(spelExpression);
-			filteredServices = (Service instance) -> {
-				Boolean include = filterExpr.getValue(this.evalCtxt, instance,
-						Boolean.class);
-				if (include == null) {
-					return false;
-				}
-				return include;
-			};
+			this.metrics.recordApiCall("listServices",
+					() -> KubernetesListPager.forEach(
+							this.kubernetesClientServicesFunction.apply(this.client),
+							this.properties.getPageSize(), consumer));
 		}
-		return getServices(filteredServices);
+		return names;
 	}
 
-	public List<String> getServices(Predicate<Service> filter) {
-		return this.kubernetesClientServicesFunction.apply(this.client).list().getItems()
-				.stream().filter(filter).map(s -> s.getMetadata().getName())
-				.collect(Collectors.toList());
+	// 命名空间列表中的服务按namespace和serviceLabels选择，不使用自定义的函数
+	private List<Service> listServices(String namespace, boolean metadataOnly) {
+		List<Service> services = new ArrayList<>();
+		if (metadataOnly) {
+			this.metrics.recordApiCall("listServiceMetadata", () -> {
+				new KubernetesServiceMetadataClient(this.client).forEach(namespace,
+						this.properties.getServiceLabels(), this.properties.getPageSize(),
+						services::add);
+				return null;
+			});
+			return services;
+		}
+		FilterWatchListDeletable<Service, ServiceList, Boolean, Watch, Watcher<Service>> operation = this.client
+				.services().inNamespace(namespace);
+		if (!this.properties.getServiceLabels().isEmpty()) {
+			operation = operation.withLabels(this.properties.getServiceLabels());
+		}
+		FilterWatchListDeletable<Service, ServiceList, Boolean, Watch, Watcher<Service>> labelled = operation;
+		this.metrics.recordApiCall("listServices",
+				() -> KubernetesListPager.forEach(labelled,
+						this.properties.getPageSize(),
+						(Service service) -> services.add(service)));
+		return services;
+	}
+
+	// 表达式只解析一次，配置变化时才重新解析
+	private KubernetesServiceFilter getServiceFilter(String spelExpression) {
+		KubernetesServiceFilter filter = this.serviceFilter;
+		if (filter == null || !filter.getExpressionString().equals(spelExpression)) {
+			filter = new KubernetesServiceFilter(spelExpression);
+			this.serviceFilter = filter;
+		}
+		return filter;
+	}
+
+	/**
+	 * The endpoints of a service in one namespace and the service itself.
+	 */
+	private static final class NamespaceLookup {
+
+		private final List<Endpoints> endpoints;
+
+		private final Service service;
+
+		NamespaceLookup(List<Endpoints> endpoints, Service service) {
+			this.endpoints = endpoints;
+			this.service = service;
+		}
+
 	}
 
 }
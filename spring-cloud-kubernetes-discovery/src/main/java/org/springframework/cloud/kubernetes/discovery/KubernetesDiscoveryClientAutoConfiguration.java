@@ -18,16 +18,26 @@ package org.springframework.cloud.kubernetes.discovery;
 
 import io.fabric8.kubernetes.client.KubernetesClient;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.AutoConfigureBefore;
+import org.springframework.boot.autoconfigure.condition.ConditionMessage;
+import org.springframework.boot.autoconfigure.condition.ConditionOutcome;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.SpringBootCondition;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.cloud.client.CommonsClientAutoConfiguration;
 import org.springframework.cloud.client.ConditionalOnDiscoveryEnabled;
 import org.springframework.cloud.client.discovery.simple.SimpleDiscoveryClientAutoConfiguration;
+import org.springframework.cloud.kubernetes.PodUtils;
 import org.springframework.cloud.kubernetes.registry.KubernetesRegistration;
 import org.springframework.cloud.kubernetes.registry.KubernetesServiceRegistry;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.type.AnnotatedTypeMetadata;
 
 /**
  * Auto configuration for discovery clients.
@@ -72,6 +82,44 @@ public class KubernetesDiscoveryClientAutoConfiguration {
 		}
 	}
 
+	@Bean
+	@ConditionalOnMissingBean
+	@ConditionalOnKubernetesDiscoveryCacheMode(KubernetesDiscoveryCacheMode.WATCH)
+	public KubernetesDiscoveryCache kubernetesDiscoveryCache(KubernetesClient client,
+			KubernetesDiscoveryProperties properties,
+			KubernetesClientServicesFunction kubernetesClientServicesFunction) {
+		return new KubernetesWatchDiscoveryCache(client, properties,
+				kubernetesClientServicesFunction);
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	@ConditionalOnKubernetesDiscoveryCacheMode(KubernetesDiscoveryCacheMode.ON_DEMAND)
+	public KubernetesDiscoveryCache kubernetesOnDemandDiscoveryCache(
+			KubernetesClient client, KubernetesDiscoveryProperties properties) {
+		return new KubernetesOnDemandDiscoveryCache(client, properties);
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	@ConditionalOnKubernetesDiscoveryCacheMode(KubernetesDiscoveryCacheMode.TTL)
+	public KubernetesDiscoveryCache kubernetesTtlDiscoveryCache(KubernetesClient client,
+			KubernetesDiscoveryProperties properties,
+			KubernetesClientServicesFunction kubernetesClientServicesFunction) {
+		return new KubernetesTtlDiscoveryCache(client, properties,
+				kubernetesClientServicesFunction);
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	@Conditional(OnTopologyCondition.class)
+	public KubernetesTopologyResolver kubernetesTopologyResolver(
+			KubernetesClient client, ObjectProvider<PodUtils> podUtils,
+			KubernetesDiscoveryProperties properties) {
+		return new KubernetesTopologyResolver(client, podUtils.getIfAvailable(),
+				properties.getTopology().getNodeCacheTtl());
+	}
+
 	@Bean
 	@ConditionalOnMissingBean
 	@ConditionalOnProperty(name = "spring.cloud.kubernetes.discovery.enabled",
@@ -79,9 +127,34 @@ public class KubernetesDiscoveryClientAutoConfiguration {
 	public KubernetesDiscoveryClient kubernetesDiscoveryClient(KubernetesClient client,
 			KubernetesDiscoveryProperties properties,
 			KubernetesClientServicesFunction kubernetesClientServicesFunction,
-			DefaultIsServicePortSecureResolver isServicePortSecureResolver) {
-		return new KubernetesDiscoveryClient(client, properties,
-				kubernetesClientServicesFunction, isServicePortSecureResolver);
+			DefaultIsServicePortSecureResolver isServicePortSecureResolver,
+			ObjectProvider<KubernetesDiscoveryCache> cache,
+			ObjectProvider<KubernetesTopologyResolver> topologyResolver,
+			ObjectProvider<KubernetesDiscoveryMetrics> metrics) {
+		KubernetesDiscoveryClient discoveryClient = new KubernetesDiscoveryClient(client,
+				properties, kubernetesClientServicesFunction, isServicePortSecureResolver,
+				cache.getIfAvailable(), topologyResolver.getIfAvailable());
+		discoveryClient.setMetrics(metrics.getIfAvailable());
+		if (properties.getFederation().isEnabled()) {
+			discoveryClient
+					.setClusterName(properties.getFederation().getLocalCluster());
+		}
+		return discoveryClient;
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	@ConditionalOnBean(KubernetesDiscoveryClient.class)
+	@ConditionalOnProperty(name = "spring.cloud.kubernetes.discovery.federation.enabled")
+	public KubernetesFederatedDiscoveryClient kubernetesFederatedDiscoveryClient(
+			KubernetesDiscoveryClient discoveryClient,
+			KubernetesDiscoveryProperties properties,
+			KubernetesClientServicesFunction kubernetesClientServicesFunction,
+			DefaultIsServicePortSecureResolver isServicePortSecureResolver,
+			ObjectProvider<KubernetesDiscoveryMetrics> metrics) {
+		return new KubernetesFederatedDiscoveryClient(discoveryClient, properties,
+				kubernetesClientServicesFunction, isServicePortSecureResolver,
+				metrics.getIfAvailable());
 	}
 
 	@Bean
@@ -100,4 +173,29 @@ public class KubernetesDiscoveryClientAutoConfiguration {
 		return new KubernetesDiscoveryProperties();
 	}
 
+	/**
+	 * Matches when {@code spring.cloud.kubernetes.discovery.topology.mode} is not
+	 * {@link KubernetesTopologyMode#NONE}, so nodes are only read when topology is used.
+	 */
+	static class OnTopologyCondition extends SpringBootCondition {
+
+		private static final String PROPERTY = "spring.cloud.kubernetes.discovery.topology.mode";
+
+		@Override
+		public ConditionOutcome getMatchOutcome(ConditionContext context,
+				AnnotatedTypeMetadata metadata) {
+			KubernetesTopologyMode mode = Binder.get(context.getEnvironment())
+					.bind(PROPERTY, KubernetesTopologyMode.class)
+					.orElse(KubernetesTopologyMode.NONE);
+			ConditionMessage.Builder message = ConditionMessage
+					.forCondition("Kubernetes discovery topology");
+			if (mode == KubernetesTopologyMode.NONE) {
+				return ConditionOutcome
+						.noMatch(message.because(PROPERTY + " is " + mode));
+			}
+			return ConditionOutcome.match(message.because(PROPERTY + " is " + mode));
+		}
+
+	}
+
 }
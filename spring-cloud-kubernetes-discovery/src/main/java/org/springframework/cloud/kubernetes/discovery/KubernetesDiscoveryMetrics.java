@@ -0,0 +1,66 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.util.function.Supplier;
+
+/**
+ * Receives measurements from {@link KubernetesDiscoveryClient} and
+ * {@link KubernetesCatalogWatch}. Every method does nothing by default, see
+ * {@link MicrometerKubernetesDiscoveryMetrics} for the Micrometer implementation.
+ */
+public interface KubernetesDiscoveryMetrics {
+
+	/**
+	 * Records nothing.
+	 */
+	KubernetesDiscoveryMetrics NONE = new KubernetesDiscoveryMetrics() {
+	};
+
+	/**
+	 * Runs a call to the Kubernetes API server.
+	 * @param operation the name of the operation, for example {@code getEndpoints}
+	 * @param call the call
+	 * @param <T> the type of the result
+	 * @return the result of the call
+	 */
+	default <T> T recordApiCall(String operation, Supplier<T> call) {
+		return call.get();
+	}
+
+	/**
+	 * @param serviceId the name of the service
+	 * @param count the number of instances returned for the service
+	 */
+	default void recordInstances(String serviceId, int count) {
+	}
+
+	/**
+	 * @param hit true if the lookup was answered from the
+	 * {@link KubernetesDiscoveryCache}, false if the cache was not synced yet
+	 */
+	default void recordCacheLookup(boolean hit) {
+	}
+
+	/**
+	 * Called whenever the catalog was successfully refreshed.
+	 * @param size the number of endpoints in the catalog
+	 */
+	default void recordCatalogRefresh(int size) {
+	}
+
+}
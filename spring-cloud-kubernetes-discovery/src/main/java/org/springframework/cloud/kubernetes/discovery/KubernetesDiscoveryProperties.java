@@ -16,8 +16,11 @@
 
 package org.springframework.cloud.kubernetes.discovery;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -43,6 +46,12 @@ public class KubernetesDiscoveryProperties {
 	/** If discovering all namespaces. */
 	private boolean allNamespaces = false;
 
+	/**
+	 * The namespaces to discover in, queried in parallel. The namespace of the client
+	 * is used if empty. Ignored when discovering all namespaces.
+	 */
+	private Set<String> namespaces = new LinkedHashSet<>();
+
 	/**
 	 * SpEL expression to filter services AFTER they have been retrieved from the
 	 * Kubernetes API server.
@@ -67,8 +76,38 @@ public class KubernetesDiscoveryProperties {
 	 */
 	private String primaryPortName;
 
+	/**
+	 * If set, instances are read from discovery.k8s.io/v1 EndpointSlices instead of
+	 * Endpoints, which only transfers the changed slice when a pod of a large service
+	 * changes.
+	 */
+	private boolean useEndpointSlices = false;
+
+	/**
+	 * Maximum number of services, endpoints or endpoint slices requested from the
+	 * Kubernetes API server in a single list call. Larger lists are read page by page.
+	 * 0 lists everything at once.
+	 */
+	private int pageSize = 0;
+
+	/**
+	 * If set, service names are listed without the spec and status of the services
+	 * whenever the filter only reads their metadata. The services are then selected
+	 * from the namespace, allNamespaces and serviceLabels properties rather than from a
+	 * custom KubernetesClientServicesFunction.
+	 */
+	private boolean metadataOnlyListing = false;
+
 	private Metadata metadata = new Metadata();
 
+	private Cache cache = new Cache();
+
+	private CatalogServicesWatch catalogServicesWatch = new CatalogServicesWatch();
+
+	private Topology topology = new Topology();
+
+	private Federation federation = new Federation();
+
 	public boolean isEnabled() {
 		return this.enabled;
 	}
@@ -117,6 +156,30 @@ public class KubernetesDiscoveryProperties {
 		this.primaryPortName = primaryPortName;
 	}
 
+	public boolean isUseEndpointSlices() {
+		return this.useEndpointSlices;
+	}
+
+	public void setUseEndpointSlices(boolean useEndpointSlices) {
+		this.useEndpointSlices = useEndpointSlices;
+	}
+
+	public int getPageSize() {
+		return this.pageSize;
+	}
+
+	public void setPageSize(int pageSize) {
+		this.pageSize = pageSize;
+	}
+
+	public boolean isMetadataOnlyListing() {
+		return this.metadataOnlyListing;
+	}
+
+	public void setMetadataOnlyListing(boolean metadataOnlyListing) {
+		this.metadataOnlyListing = metadataOnlyListing;
+	}
+
 	public Metadata getMetadata() {
 		return this.metadata;
 	}
@@ -125,6 +188,38 @@ public class KubernetesDiscoveryProperties {
 		this.metadata = metadata;
 	}
 
+	public Cache getCache() {
+		return this.cache;
+	}
+
+	public void setCache(Cache cache) {
+		this.cache = cache;
+	}
+
+	public CatalogServicesWatch getCatalogServicesWatch() {
+		return this.catalogServicesWatch;
+	}
+
+	public void setCatalogServicesWatch(CatalogServicesWatch catalogServicesWatch) {
+		this.catalogServicesWatch = catalogServicesWatch;
+	}
+
+	public Topology getTopology() {
+		return this.topology;
+	}
+
+	public void setTopology(Topology topology) {
+		this.topology = topology;
+	}
+
+	public Federation getFederation() {
+		return this.federation;
+	}
+
+	public void setFederation(Federation federation) {
+		this.federation = federation;
+	}
+
 	public boolean isAllNamespaces() {
 		return allNamespaces;
 	}
@@ -133,13 +228,29 @@ public class KubernetesDiscoveryProperties {
 		this.allNamespaces = allNamespaces;
 	}
 
+	public Set<String> getNamespaces() {
+		return this.namespaces;
+	}
+
+	public void setNamespaces(Set<String> namespaces) {
+		this.namespaces = namespaces;
+	}
+
 	@Override
 	public String toString() {
 		return new ToStringCreator(this).append("enabled", this.enabled)
-				.append("serviceName", this.serviceName).append("filter", this.filter)
+				.append("serviceName", this.serviceName)
+				.append("allNamespaces", this.allNamespaces)
+				.append("namespaces", this.namespaces).append("filter", this.filter)
 				.append("knownSecurePorts", this.knownSecurePorts)
 				.append("serviceLabels", this.serviceLabels)
-				.append("metadata", this.metadata).toString();
+				.append("useEndpointSlices", this.useEndpointSlices)
+				.append("pageSize", this.pageSize)
+				.append("metadataOnlyListing", this.metadataOnlyListing)
+				.append("metadata", this.metadata).append("cache", this.cache)
+				.append("catalogServicesWatch", this.catalogServicesWatch)
+				.append("topology", this.topology)
+				.append("federation", this.federation).toString();
 	}
 
 	/**
@@ -183,6 +294,19 @@ public class KubernetesDiscoveryProperties {
 		 */
 		private String portsPrefix = "port.";
 
+		/**
+		 * If set, only the labels and annotations with these keys are added to the
+		 * metadata. A key ending with '*' matches every key starting with it.
+		 */
+		private Set<String> includedKeys = new HashSet<>();
+
+		/**
+		 * Labels and annotations with these keys are never added to the metadata, for
+		 * instance 'kubectl.kubernetes.io/last-applied-configuration'. A key ending with
+		 * '*' matches every key starting with it.
+		 */
+		private Set<String> excludedKeys = new HashSet<>();
+
 		public boolean isAddLabels() {
 			return this.addLabels;
 		}
@@ -231,6 +355,22 @@ public class KubernetesDiscoveryProperties {
 			this.portsPrefix = portsPrefix;
 		}
 
+		public Set<String> getIncludedKeys() {
+			return this.includedKeys;
+		}
+
+		public void setIncludedKeys(Set<String> includedKeys) {
+			this.includedKeys = includedKeys;
+		}
+
+		public Set<String> getExcludedKeys() {
+			return this.excludedKeys;
+		}
+
+		public void setExcludedKeys(Set<String> excludedKeys) {
+			this.excludedKeys = excludedKeys;
+		}
+
 		@Override
 		public String toString() {
 			return new ToStringCreator(this).append("addLabels", this.addLabels)
@@ -238,7 +378,498 @@ public class KubernetesDiscoveryProperties {
 					.append("addAnnotations", this.addAnnotations)
 					.append("annotationsPrefix", this.annotationsPrefix)
 					.append("addPorts", this.addPorts)
-					.append("portsPrefix", this.portsPrefix).toString();
+					.append("portsPrefix", this.portsPrefix)
+					.append("includedKeys", this.includedKeys)
+					.append("excludedKeys", this.excludedKeys).toString();
+		}
+
+	}
+
+	/**
+	 * Discovery cache properties.
+	 */
+	public class Cache {
+
+		/**
+		 * How services and endpoints are kept in memory. NONE queries the Kubernetes
+		 * API server on every lookup.
+		 */
+		private KubernetesDiscoveryCacheMode mode = KubernetesDiscoveryCacheMode.NONE;
+
+		/**
+		 * Delay before listing a resource type again after its watch was closed or
+		 * could not be established.
+		 */
+		private Duration retryDelay = Duration.ofSeconds(5);
+
+		/**
+		 * File the watch cache is written to and loaded from at startup, so instances
+		 * can be served before the first list completes. Not written if unset.
+		 */
+		private String snapshotFile;
+
+		/**
+		 * How often the watch cache is written to the snapshot file when it changed.
+		 */
+		private Duration snapshotInterval = Duration.ofMinutes(1);
+
+		/**
+		 * In ON_DEMAND mode, how long the watches of a service are kept open after
+		 * its last lookup.
+		 */
+		private Duration idleTimeout = Duration.ofMinutes(10);
+
+		/**
+		 * In ON_DEMAND mode, the maximum number of services watched at once. The least
+		 * recently looked up service is evicted beyond that.
+		 */
+		private int maxServices = 1000;
+
+		/**
+		 * In TTL mode, how long a service is served without asking the API server
+		 * again. Each entry expires up to 10% earlier or later.
+		 */
+		private Duration ttl = Duration.ofSeconds(30);
+
+		/**
+		 * In TTL mode, how long after expiry a service is still served while it is
+		 * refreshed in the background. Older entries are refreshed before answering.
+		 */
+		private Duration maxStaleness = Duration.ofMinutes(5);
+
+		/**
+		 * In TTL mode, the maximum number of services kept. The least recently looked
+		 * up service is evicted beyond that.
+		 */
+		private int maxEntries = 1000;
+
+		public KubernetesDiscoveryCacheMode getMode() {
+			return this.mode;
+		}
+
+		public void setMode(KubernetesDiscoveryCacheMode mode) {
+			this.mode = mode;
+		}
+
+		public Duration getRetryDelay() {
+			return this.retryDelay;
+		}
+
+		public void setRetryDelay(Duration retryDelay) {
+			this.retryDelay = retryDelay;
+		}
+
+		public String getSnapshotFile() {
+			return this.snapshotFile;
+		}
+
+		public void setSnapshotFile(String snapshotFile) {
+			this.snapshotFile = snapshotFile;
+		}
+
+		public Duration getSnapshotInterval() {
+			return this.snapshotInterval;
+		}
+
+		public void setSnapshotInterval(Duration snapshotInterval) {
+			this.snapshotInterval = snapshotInterval;
+		}
+
+		public Duration getIdleTimeout() {
+			return this.idleTimeout;
+		}
+
+		public void setIdleTimeout(Duration idleTimeout) {
+			this.idleTimeout = idleTimeout;
+		}
+
+		public int getMaxServices() {
+			return this.maxServices;
+		}
+
+		public void setMaxServices(int maxServices) {
+			this.maxServices = maxServices;
+		}
+
+		public Duration getTtl() {
+			return this.ttl;
+		}
+
+		public void setTtl(Duration ttl) {
+			this.ttl = ttl;
+		}
+
+		public Duration getMaxStaleness() {
+			return this.maxStaleness;
+		}
+
+		public void setMaxStaleness(Duration maxStaleness) {
+			this.maxStaleness = maxStaleness;
+		}
+
+		public int getMaxEntries() {
+			return this.maxEntries;
+		}
+
+		public void setMaxEntries(int maxEntries) {
+			this.maxEntries = maxEntries;
+		}
+
+		@Override
+		public String toString() {
+			return new ToStringCreator(this).append("mode", this.mode)
+					.append("retryDelay", this.retryDelay)
+					.append("snapshotFile", this.snapshotFile)
+					.append("snapshotInterval", this.snapshotInterval)
+					.append("idleTimeout", this.idleTimeout)
+					.append("maxServices", this.maxServices).append("ttl", this.ttl)
+					.append("maxStaleness", this.maxStaleness)
+					.append("maxEntries", this.maxEntries).toString();
+		}
+
+	}
+
+	/**
+	 * Catalog services watch properties.
+	 */
+	public class CatalogServicesWatch {
+
+		/**
+		 * If the service catalog is watched for changes.
+		 */
+		private boolean enabled = true;
+
+		/**
+		 * How changes in the service catalog are detected.
+		 */
+		private KubernetesCatalogWatchMode mode = KubernetesCatalogWatchMode.POLLING;
+
+		/**
+		 * Delay before listing the catalog again after its watch was closed or could
+		 * not be established, in event mode.
+		 */
+		private Duration retryDelay = Duration.ofSeconds(5);
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public KubernetesCatalogWatchMode getMode() {
+			return this.mode;
+		}
+
+		public void setMode(KubernetesCatalogWatchMode mode) {
+			this.mode = mode;
+		}
+
+		public Duration getRetryDelay() {
+			return this.retryDelay;
+		}
+
+		public void setRetryDelay(Duration retryDelay) {
+			this.retryDelay = retryDelay;
+		}
+
+		@Override
+		public String toString() {
+			return new ToStringCreator(this).append("enabled", this.enabled)
+					.append("mode", this.mode).append("retryDelay", this.retryDelay)
+					.toString();
+		}
+
+	}
+
+	/**
+	 * Topology properties.
+	 */
+	public class Topology {
+
+		/**
+		 * How the node and zone of instances relative to the current pod are used. The
+		 * node and zone of every instance are added to its metadata unless NONE.
+		 */
+		private KubernetesTopologyMode mode = KubernetesTopologyMode.NONE;
+
+		/**
+		 * How long the zone of a node is remembered.
+		 */
+		private Duration nodeCacheTtl = Duration.ofMinutes(5);
+
+		public KubernetesTopologyMode getMode() {
+			return this.mode;
+		}
+
+		public void setMode(KubernetesTopologyMode mode) {
+			this.mode = mode;
+		}
+
+		public Duration getNodeCacheTtl() {
+			return this.nodeCacheTtl;
+		}
+
+		public void setNodeCacheTtl(Duration nodeCacheTtl) {
+			this.nodeCacheTtl = nodeCacheTtl;
+		}
+
+		@Override
+		public String toString() {
+			return new ToStringCreator(this).append("mode", this.mode)
+					.append("nodeCacheTtl", this.nodeCacheTtl).toString();
+		}
+
+	}
+
+	/**
+	 * Federation properties.
+	 */
+	public class Federation {
+
+		/**
+		 * If instances and services are also discovered in the clusters below.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * The name the current cluster is reported under in the metadata of its
+		 * instances.
+		 */
+		private String localCluster = "local";
+
+		/**
+		 * If only the instances of the current cluster are returned when it has any, the
+		 * other clusters are then only queried when it has none.
+		 */
+		private boolean preferLocalCluster = false;
+
+		/**
+		 * How long a lookup waits for a cluster before leaving it out.
+		 */
+		private Duration timeout = Duration.ofSeconds(2);
+
+		/**
+		 * The maximum number of lookups running against one cluster at a time. Further
+		 * lookups leave that cluster out instead of queueing behind it.
+		 */
+		private int maxConcurrentRequests = 8;
+
+		/**
+		 * How long the previous answer of a cluster is used in place of a lookup that
+		 * it did not answer. Older answers are dropped and the cluster is left out.
+		 */
+		private Duration maxStaleness = Duration.ofMinutes(5);
+
+		/**
+		 * The maximum number of previous answers kept across all clusters. The least
+		 * recently used one is dropped beyond that.
+		 */
+		private int maxStaleEntries = 1000;
+
+		/**
+		 * The other clusters, by name.
+		 */
+		private Map<String, Cluster> clusters = new LinkedHashMap<>();
+
+		public boolean isEnabled() {
+			return this.enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public String getLocalCluster() {
+			return this.localCluster;
+		}
+
+		public void setLocalCluster(String localCluster) {
+			this.localCluster = localCluster;
+		}
+
+		public boolean isPreferLocalCluster() {
+			return this.preferLocalCluster;
+		}
+
+		public void setPreferLocalCluster(boolean preferLocalCluster) {
+			this.preferLocalCluster = preferLocalCluster;
+		}
+
+		public Duration getTimeout() {
+			return this.timeout;
+		}
+
+		public void setTimeout(Duration timeout) {
+			this.timeout = timeout;
+		}
+
+		public int getMaxConcurrentRequests() {
+			return this.maxConcurrentRequests;
+		}
+
+		public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+			this.maxConcurrentRequests = maxConcurrentRequests;
+		}
+
+		public Duration getMaxStaleness() {
+			return this.maxStaleness;
+		}
+
+		public void setMaxStaleness(Duration maxStaleness) {
+			this.maxStaleness = maxStaleness;
+		}
+
+		public int getMaxStaleEntries() {
+			return this.maxStaleEntries;
+		}
+
+		public void setMaxStaleEntries(int maxStaleEntries) {
+			this.maxStaleEntries = maxStaleEntries;
+		}
+
+		public Map<String, Cluster> getClusters() {
+			return this.clusters;
+		}
+
+		public void setClusters(Map<String, Cluster> clusters) {
+			this.clusters = clusters;
+		}
+
+		@Override
+		public String toString() {
+			return new ToStringCreator(this).append("enabled", this.enabled)
+					.append("localCluster", this.localCluster)
+					.append("preferLocalCluster", this.preferLocalCluster)
+					.append("timeout", this.timeout)
+					.append("maxConcurrentRequests", this.maxConcurrentRequests)
+					.append("maxStaleness", this.maxStaleness)
+					.append("maxStaleEntries", this.maxStaleEntries)
+					.append("clusters", this.clusters).toString();
+		}
+
+	}
+
+	/**
+	 * Connection to another cluster. Either a kubeconfig context or the master URL and
+	 * credentials of the cluster.
+	 */
+	public static class Cluster {
+
+		/**
+		 * The kubeconfig context of the cluster.
+		 */
+		private String context;
+
+		/**
+		 * The URL of the API server of the cluster.
+		 */
+		private String masterUrl;
+
+		/**
+		 * The namespace to discover in, defaults to the namespace of the context.
+		 */
+		private String namespace;
+
+		/**
+		 * The bearer token used to authenticate against the cluster.
+		 */
+		private String oauthToken;
+
+		/**
+		 * The CA certificate file of the cluster.
+		 */
+		private String caCertFile;
+
+		/**
+		 * The CA certificate data of the cluster.
+		 */
+		private String caCertData;
+
+		/**
+		 * If the certificate of the API server is trusted without verification.
+		 */
+		private Boolean trustCerts;
+
+		/**
+		 * How long a lookup waits for this cluster, defaults to the federation timeout.
+		 */
+		private Duration timeout;
+
+		public String getContext() {
+			return this.context;
+		}
+
+		public void setContext(String context) {
+			this.context = context;
+		}
+
+		public String getMasterUrl() {
+			return this.masterUrl;
+		}
+
+		public void setMasterUrl(String masterUrl) {
+			this.masterUrl = masterUrl;
+		}
+
+		public String getNamespace() {
+			return this.namespace;
+		}
+
+		public void setNamespace(String namespace) {
+			this.namespace = namespace;
+		}
+
+		public String getOauthToken() {
+			return this.oauthToken;
+		}
+
+		public void setOauthToken(String oauthToken) {
+			this.oauthToken = oauthToken;
+		}
+
+		public String getCaCertFile() {
+			return this.caCertFile;
+		}
+
+		public void setCaCertFile(String caCertFile) {
+			this.caCertFile = caCertFile;
+		}
+
+		public String getCaCertData() {
+			return this.caCertData;
+		}
+
+		public void setCaCertData(String caCertData) {
+			this.caCertData = caCertData;
+		}
+
+		public Boolean getTrustCerts() {
+			return this.trustCerts;
+		}
+
+		public void setTrustCerts(Boolean trustCerts) {
+			this.trustCerts = trustCerts;
+		}
+
+		public Duration getTimeout() {
+			return this.timeout;
+		}
+
+		public void setTimeout(Duration timeout) {
+			this.timeout = timeout;
+		}
+
+		@Override
+		public String toString() {
+			// 不输出令牌
+			return new ToStringCreator(this).append("context", this.context)
+					.append("masterUrl", this.masterUrl)
+					.append("namespace", this.namespace)
+					.append("caCertFile", this.caCertFile)
+					.append("trustCerts", this.trustCerts)
+					.append("timeout", this.timeout).toString();
 		}
 
 	}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import io.fabric8.kubernetes.api.model.ObjectMeta;
+import io.fabric8.kubernetes.api.model.ObjectReference;
+
+/**
+ * The parts of a {@code discovery.k8s.io/v1} EndpointSlice that discovery needs. Every
+ * other field of the resource is skipped while decoding.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class KubernetesEndpointSlice {
+
+	/**
+	 * Label holding the name of the service a slice belongs to.
+	 */
+	public static final String SERVICE_NAME_LABEL = "kubernetes.io/service-name";
+
+	/**
+	 * Address type of slices holding IPv4 addresses.
+	 */
+	public static final String IPV4 = "IPv4";
+
+	/**
+	 * Address type of slices holding IPv6 addresses.
+	 */
+	public static final String IPV6 = "IPv6";
+
+	/**
+	 * Address type of slices holding fully qualified domain names.
+	 */
+	public static final String FQDN = "FQDN";
+
+	private ObjectMeta metadata;
+
+	private String addressType;
+
+	private List<Endpoint> endpoints;
+
+	private List<Port> ports;
+
+	public ObjectMeta getMetadata() {
+		return this.metadata;
+	}
+
+	public void setMetadata(ObjectMeta metadata) {
+		this.metadata = metadata;
+	}
+
+	public String getAddressType() {
+		return this.addressType;
+	}
+
+	public void setAddressType(String addressType) {
+		this.addressType = addressType;
+	}
+
+	public List<Endpoint> getEndpoints() {
+		return this.endpoints;
+	}
+
+	public void setEndpoints(List<Endpoint> endpoints) {
+		this.endpoints = endpoints;
+	}
+
+	public List<Port> getPorts() {
+		return this.ports;
+	}
+
+	public void setPorts(List<Port> ports) {
+		this.ports = ports;
+	}
+
+	/**
+	 * @return the name of the service the slice belongs to, or null
+	 */
+	@JsonIgnore
+	public String getServiceName() {
+		if (this.metadata == null || this.metadata.getLabels() == null) {
+			return null;
+		}
+		return this.metadata.getLabels().get(SERVICE_NAME_LABEL);
+	}
+
+	/**
+	 * A single endpoint of a slice.
+	 */
+	@JsonIgnoreProperties(ignoreUnknown = true)
+	public static class Endpoint {
+
+		private List<String> addresses;
+
+		private Conditions conditions;
+
+		private String hostname;
+
+		private String nodeName;
+
+		private String zone;
+
+		private ObjectReference targetRef;
+
+		public List<String> getAddresses() {
+			return this.addresses;
+		}
+
+		public void setAddresses(List<String> addresses) {
+			this.addresses = addresses;
+		}
+
+		public Conditions getConditions() {
+			return this.conditions;
+		}
+
+		public void setConditions(Conditions conditions) {
+			this.conditions = conditions;
+		}
+
+		public String getHostname() {
+			return this.hostname;
+		}
+
+		public void setHostname(String hostname) {
+			this.hostname = hostname;
+		}
+
+		public String getNodeName() {
+			return this.nodeName;
+		}
+
+		public void setNodeName(String nodeName) {
+			this.nodeName = nodeName;
+		}
+
+		public String getZone() {
+			return this.zone;
+		}
+
+		public void setZone(String zone) {
+			this.zone = zone;
+		}
+
+		public ObjectReference getTargetRef() {
+			return this.targetRef;
+		}
+
+		public void setTargetRef(ObjectReference targetRef) {
+			this.targetRef = targetRef;
+		}
+
+		/**
+		 * @return false only if the endpoint is explicitly not ready, an unknown state
+		 * is treated as ready
+		 */
+		@JsonIgnore
+		public boolean isReady() {
+			return this.conditions == null || this.conditions.getReady() == null
+					|| this.conditions.getReady();
+		}
+
+	}
+
+	/**
+	 * The conditions of an endpoint.
+	 */
+	@JsonIgnoreProperties(ignoreUnknown = true)
+	public static class Conditions {
+
+		private Boolean ready;
+
+		public Boolean getReady() {
+			return this.ready;
+		}
+
+		public void setReady(Boolean ready) {
+			this.ready = ready;
+		}
+
+	}
+
+	/**
+	 * A port exposed by every endpoint of a slice.
+	 */
+	@JsonIgnoreProperties(ignoreUnknown = true)
+	public static class Port {
+
+		private String name;
+
+		private Integer port;
+
+		private String protocol;
+
+		public String getName() {
+			return this.name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public Integer getPort() {
+			return this.port;
+		}
+
+		public void setPort(Integer port) {
+			this.port = port;
+		}
+
+		public String getProtocol() {
+			return this.protocol;
+		}
+
+		public void setProtocol(String protocol) {
+			this.protocol = protocol;
+		}
+
+	}
+
+}
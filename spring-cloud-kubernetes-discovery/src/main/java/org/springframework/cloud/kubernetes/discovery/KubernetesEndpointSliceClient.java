@@ -0,0 +1,427 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.fabric8.kubernetes.api.model.EndpointAddress;
+import io.fabric8.kubernetes.api.model.EndpointAddressBuilder;
+import io.fabric8.kubernetes.api.model.EndpointPort;
+import io.fabric8.kubernetes.api.model.EndpointPortBuilder;
+import io.fabric8.kubernetes.api.model.EndpointSubset;
+import io.fabric8.kubernetes.api.model.EndpointSubsetBuilder;
+import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.model.EndpointsBuilder;
+import io.fabric8.kubernetes.client.HttpClientAware;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.kubernetes.client.utils.Serialization;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Reads {@code discovery.k8s.io/v1} EndpointSlices through the HTTP client of a
+ * {@link KubernetesClient}, which has no model for them.
+ *
+ * Slices are decoded into {@link KubernetesEndpointSlice}, which only keeps what
+ * discovery needs, and can be merged back into a single {@link Endpoints} per service
+ * with {@link #toEndpoints(String, String, Collection)} so that the rest of the
+ * discovery code does not need to know where the endpoints came from.
+ */
+public class KubernetesEndpointSliceClient {
+
+	private static final String API_PATH = "apis/discovery.k8s.io/v1";
+
+	private final KubernetesClient client;
+
+	public KubernetesEndpointSliceClient(KubernetesClient client) {
+		this.client = client;
+	}
+
+	/**
+	 * @param namespace the namespace, or null for all namespaces
+	 * @param serviceName the service name
+	 * @return the slices of the service
+	 */
+	public List<KubernetesEndpointSlice> list(String namespace, String serviceName) {
+		return list(url(namespace).addQueryParameter("labelSelector",
+				KubernetesEndpointSlice.SERVICE_NAME_LABEL + "=" + serviceName))
+						.getItems();
+	}
+
+	/**
+	 * @param namespace the namespace, or null for all namespaces
+	 * @return every slice of the namespace
+	 */
+	public KubernetesEndpointSliceList list(String namespace) {
+		return list(url(namespace));
+	}
+
+	/**
+	 * Lists every slice of a namespace page by page, see {@code KubernetesListPager}.
+	 * @param namespace the namespace, or null for all namespaces
+	 * @param pageSize the maximum number of slices per page, 0 or less lists everything
+	 * at once
+	 * @param consumer called for every slice
+	 * @return the resource version of the list, or null
+	 */
+	public String forEach(String namespace, int pageSize,
+			Consumer<KubernetesEndpointSlice> consumer) {
+		String continueToken = null;
+		String resourceVersion = null;
+		do {
+			HttpUrl.Builder url = url(namespace);
+			if (pageSize > 0) {
+				url.addQueryParameter("limit", Integer.toString(pageSize));
+			}
+			if (continueToken != null) {
+				url.addQueryParameter("continue", continueToken);
+			}
+			KubernetesEndpointSliceList page = list(url);
+			page.getItems().forEach(consumer);
+			continueToken = null;
+			if (page.getMetadata() != null) {
+				resourceVersion = page.getMetadata().getResourceVersion();
+				continueToken = page.getMetadata().getContinue();
+			}
+		}
+		while (pageSize > 0 && StringUtils.hasText(continueToken));
+		return resourceVersion;
+	}
+
+	/**
+	 * Watches the slices of a namespace. The watcher is called on a thread of the HTTP
+	 * client and is closed with a null cause when the API server ends the watch, which
+	 * can then be resumed from the last seen resource version. Errors, such as an
+	 * expired resource version (410), close it with a cause carrying the status code.
+	 * @param namespace the namespace, or null for all namespaces
+	 * @param resourceVersion the resource version to watch from, or null
+	 * @param watcher the watcher
+	 * @return the watch, closing it cancels the request
+	 */
+	public Watch watch(String namespace, String resourceVersion,
+			Watcher<KubernetesEndpointSlice> watcher) {
+		return watchUrl(url(namespace), resourceVersion, watcher);
+	}
+
+	/**
+	 * Watches the slices of a single service, see
+	 * {@link #watch(String, String, Watcher)}.
+	 * @param namespace the namespace, or null for all namespaces
+	 * @param serviceName the service name
+	 * @param resourceVersion the resource version to watch from, or null
+	 * @param watcher the watcher
+	 * @return the watch, closing it cancels the request
+	 */
+	public Watch watch(String namespace, String serviceName, String resourceVersion,
+			Watcher<KubernetesEndpointSlice> watcher) {
+		return watchUrl(url(namespace).addQueryParameter("labelSelector",
+				KubernetesEndpointSlice.SERVICE_NAME_LABEL + "=" + serviceName),
+				resourceVersion, watcher);
+	}
+
+	private Watch watchUrl(HttpUrl.Builder url, String resourceVersion,
+			Watcher<KubernetesEndpointSlice> watcher) {
+		url.addQueryParameter("watch", "true");
+		if (resourceVersion != null) {
+			url.addQueryParameter("resourceVersion", resourceVersion);
+		}
+		OkHttpClient watchClient = httpClient().newBuilder()
+				.readTimeout(0, TimeUnit.MILLISECONDS).build();
+		Call call = watchClient
+				.newCall(new Request.Builder().get().url(url.build()).build());
+		call.enqueue(new SliceWatchCallback(watcher));
+		return call::cancel;
+	}
+
+	/**
+	 * Merges the slices of a service into a single {@link Endpoints}, with one subset
+	 * per slice of the address family picked by {@link #addressFamily(Collection)}.
+	 * The resource version of the result is derived from the names and
+	 * resource versions of the slices, so it only changes when one of them changes.
+	 * @param namespace the namespace of the service
+	 * @param serviceName the service name
+	 * @param slices the slices of the service
+	 * @return the merged endpoints
+	 */
+	public static Endpoints toEndpoints(String namespace, String serviceName,
+			Collection<KubernetesEndpointSlice> slices) {
+		List<EndpointSubset> subsets = new ArrayList<>(slices.size());
+		List<String> versions = new ArrayList<>(slices.size());
+		boolean versioned = true;
+		String family = addressFamily(slices);
+		for (KubernetesEndpointSlice slice : slices) {
+			String resourceVersion = slice.getMetadata() != null
+					? slice.getMetadata().getResourceVersion() : null;
+			if (resourceVersion == null) {
+				versioned = false;
+			}
+			else {
+				versions.add(slice.getMetadata().getName() + ":" + resourceVersion);
+			}
+			EndpointSubset subset = family.equals(addressType(slice)) ? toSubset(slice)
+					: null;
+			if (subset != null) {
+				subsets.add(subset);
+			}
+		}
+		Collections.sort(versions);
+		return new EndpointsBuilder().withNewMetadata().withName(serviceName)
+				.withNamespace(namespace)
+				.withResourceVersion(versioned ? String.join(",", versions) : null)
+				.endMetadata().withSubsets(subsets).build();
+	}
+
+	/**
+	 * Picks the address family the instances of a service are built from. A
+	 * dual-stack service has slices of both families for the same pods, so only one
+	 * of them is used: IPv4 when the service has IPv4 slices, IPv6 otherwise. Slices
+	 * holding FQDNs never are, since their addresses are not IPs.
+	 * @param slices the slices of a service
+	 * @return the address type of the slices to use
+	 */
+	public static String addressFamily(Collection<KubernetesEndpointSlice> slices) {
+		for (KubernetesEndpointSlice slice : slices) {
+			if (KubernetesEndpointSlice.IPV4.equals(addressType(slice))) {
+				return KubernetesEndpointSlice.IPV4;
+			}
+		}
+		return KubernetesEndpointSlice.IPV6;
+	}
+
+	/**
+	 * @param slice a slice
+	 * @return whether the addresses of the slice are IPs rather than FQDNs
+	 */
+	public static boolean hasIpAddresses(KubernetesEndpointSlice slice) {
+		return !KubernetesEndpointSlice.FQDN.equals(addressType(slice));
+	}
+
+	// 未设置地址类型的slice按IPv4处理
+	private static String addressType(KubernetesEndpointSlice slice) {
+		return slice.getAddressType() != null ? slice.getAddressType()
+				: KubernetesEndpointSlice.IPV4;
+	}
+
+	private static EndpointSubset toSubset(KubernetesEndpointSlice slice) {
+		// 没有端口的slice无法构造实例
+		if (slice.getPorts() == null || slice.getPorts().isEmpty()
+				|| slice.getEndpoints() == null) {
+			return null;
+		}
+		List<EndpointPort> ports = new ArrayList<>(slice.getPorts().size());
+		for (KubernetesEndpointSlice.Port port : slice.getPorts()) {
+			if (port.getPort() != null) {
+				ports.add(new EndpointPortBuilder().withName(port.getName())
+						.withPort(port.getPort()).withProtocol(port.getProtocol())
+						.build());
+			}
+		}
+		if (ports.isEmpty()) {
+			return null;
+		}
+		List<EndpointAddress> addresses = new ArrayList<>();
+		List<EndpointAddress> notReadyAddresses = new ArrayList<>();
+		for (KubernetesEndpointSlice.Endpoint endpoint : slice.getEndpoints()) {
+			if (endpoint.getAddresses() == null || endpoint.getAddresses().isEmpty()) {
+				continue;
+			}
+			// 按照API约定只使用第一个地址
+			EndpointAddress address = new EndpointAddressBuilder()
+					.withIp(endpoint.getAddresses().get(0))
+					.withHostname(endpoint.getHostname())
+					.withNodeName(endpoint.getNodeName())
+					.withTargetRef(endpoint.getTargetRef()).build();
+			if (endpoint.isReady()) {
+				addresses.add(address);
+			}
+			else {
+				notReadyAddresses.add(address);
+			}
+		}
+		return new EndpointSubsetBuilder().withAddresses(addresses)
+				.withNotReadyAddresses(notReadyAddresses).withPorts(ports).build();
+	}
+
+	private KubernetesEndpointSliceList list(HttpUrl.Builder url) {
+		Request request = new Request.Builder().get().url(url.build()).build();
+		try (Response response = httpClient().newCall(request).execute()) {
+			if (!response.isSuccessful()) {
+				throw new KubernetesClientException(
+						"Failed to list EndpointSlices from " + request.url() + ": "
+								+ response.code() + " " + response.message(),
+						response.code(), null);
+			}
+			KubernetesEndpointSliceList list = mapper().readValue(
+					response.body().byteStream(), KubernetesEndpointSliceList.class);
+			if (list.getItems() == null) {
+				list.setItems(new ArrayList<>());
+			}
+			return list;
+		}
+		catch (IOException e) {
+			throw new KubernetesClientException(
+					"Failed to list EndpointSlices from " + request.url(), e);
+		}
+	}
+
+	private HttpUrl.Builder url(String namespace) {
+		HttpUrl.Builder url = HttpUrl.get(this.client.getMasterUrl()).newBuilder()
+				.addPathSegments(API_PATH);
+		if (namespace != null) {
+			url.addPathSegment("namespaces").addPathSegment(namespace);
+		}
+		return url.addPathSegment("endpointslices");
+	}
+
+	private OkHttpClient httpClient() {
+		if (!(this.client instanceof HttpClientAware)) {
+			throw new IllegalStateException(
+					"EndpointSlices can only be read with a KubernetesClient that exposes its HTTP client");
+		}
+		return ((HttpClientAware) this.client).getHttpClient();
+	}
+
+	private static ObjectMapper mapper() {
+		return Serialization.jsonMapper();
+	}
+
+	/**
+	 * Reads the line delimited watch events of the response.
+	 */
+	private static final class SliceWatchCallback implements Callback {
+
+		private final Watcher<KubernetesEndpointSlice> watcher;
+
+		SliceWatchCallback(Watcher<KubernetesEndpointSlice> watcher) {
+			this.watcher = watcher;
+		}
+
+		@Override
+		public void onFailure(Call call, IOException e) {
+			if (!call.isCanceled()) {
+				this.watcher.onClose(new KubernetesClientException(
+						"The EndpointSlice watch failed", e));
+			}
+		}
+
+		@Override
+		public void onResponse(Call call, Response response) {
+			try (ResponseBody body = response.body()) {
+				if (!response.isSuccessful()) {
+					this.watcher.onClose(new KubernetesClientException(
+							"Failed to watch EndpointSlices: " + response.code() + " "
+									+ response.message(),
+							response.code(), null));
+					return;
+				}
+				BufferedSource source = body.source();
+				String line;
+				while (!call.isCanceled() && (line = source.readUtf8Line()) != null) {
+					if (line.isEmpty()) {
+						continue;
+					}
+					SliceEvent event = mapper().readValue(line, SliceEvent.class);
+					if ("ERROR".equals(event.getType())) {
+						// 通常是资源版本过期(410)，需要重新list
+						int code = mapper().readTree(line).path("object").path("code")
+								.asInt();
+						this.watcher.onClose(new KubernetesClientException(
+								"The EndpointSlice watch returned an error: " + line, code,
+								null));
+						return;
+					}
+					Watcher.Action action = action(event.getType());
+					if (action != null && event.getObject() != null) {
+						this.watcher.eventReceived(action, event.getObject());
+					}
+				}
+			}
+			catch (IOException e) {
+				if (!call.isCanceled()) {
+					this.watcher.onClose(new KubernetesClientException(
+							"The EndpointSlice watch failed", e));
+				}
+				return;
+			}
+			if (!call.isCanceled()) {
+				this.watcher.onClose(null);
+			}
+		}
+
+		private static Watcher.Action action(String type) {
+			if ("ADDED".equals(type)) {
+				return Watcher.Action.ADDED;
+			}
+			if ("MODIFIED".equals(type)) {
+				return Watcher.Action.MODIFIED;
+			}
+			if ("DELETED".equals(type)) {
+				return Watcher.Action.DELETED;
+			}
+			return null;
+		}
+
+	}
+
+	/**
+	 * A watch event carrying a slice.
+	 */
+	@JsonIgnoreProperties(ignoreUnknown = true)
+	static class SliceEvent {
+
+		private String type;
+
+		private KubernetesEndpointSlice object;
+
+		public String getType() {
+			return this.type;
+		}
+
+		public void setType(String type) {
+			this.type = type;
+		}
+
+		public KubernetesEndpointSlice getObject() {
+			return this.object;
+		}
+
+		public void setObject(KubernetesEndpointSlice object) {
+			this.object = object;
+		}
+
+	}
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import io.fabric8.kubernetes.api.model.ListMeta;
+
+/**
+ * A page of {@link KubernetesEndpointSlice}s as returned by the Kubernetes API server.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class KubernetesEndpointSliceList {
+
+	private ListMeta metadata;
+
+	private List<KubernetesEndpointSlice> items = new ArrayList<>();
+
+	public ListMeta getMetadata() {
+		return this.metadata;
+	}
+
+	public void setMetadata(ListMeta metadata) {
+		this.metadata = metadata;
+	}
+
+	public List<KubernetesEndpointSlice> getItems() {
+		return this.items;
+	}
+
+	public void setItems(List<KubernetesEndpointSlice> items) {
+		this.items = items;
+	}
+
+}
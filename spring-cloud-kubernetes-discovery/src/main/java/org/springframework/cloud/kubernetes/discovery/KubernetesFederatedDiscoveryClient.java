@@ -0,0 +1,497 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import javax.annotation.PreDestroy;
+
+import io.fabric8.kubernetes.client.Config;
+import io.fabric8.kubernetes.client.ConfigBuilder;
+import io.fabric8.kubernetes.client.DefaultKubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.util.Assert;
+
+/**
+ * {@link DiscoveryClient} spanning the current cluster and the clusters configured in
+ * {@link KubernetesDiscoveryProperties.Federation#getClusters()}.
+ *
+ * Every cluster has its own {@link KubernetesDiscoveryClient} and its own pool of at
+ * most {@link KubernetesDiscoveryProperties.Federation#getMaxConcurrentRequests()}
+ * threads. Lookups query the clusters in parallel and wait for each of them at most its
+ * timeout. A cluster that is too slow, unreachable or already busy with as many lookups
+ * as it may run is left out, or answered with what it returned for the same lookup last
+ * time, so that it never stalls the lookups of the other clusters. Previous answers are
+ * used for at most {@link KubernetesDiscoveryProperties.Federation#getMaxStaleness()},
+ * and their instances carry the time the answer was received under
+ * {@value #STALE_SINCE_METADATA_KEY}. The name of the cluster of every instance is added
+ * to its metadata under {@value #CLUSTER_METADATA_KEY} by the discovery client of that
+ * cluster.
+ *
+ * The client takes precedence over the {@link KubernetesDiscoveryClient} of the current
+ * cluster in the composite discovery client.
+ */
+public class KubernetesFederatedDiscoveryClient implements DiscoveryClient {
+
+	/**
+	 * Instance metadata key holding the name of the cluster of the instance.
+	 */
+	public static final String CLUSTER_METADATA_KEY = "kubernetes.cluster";
+
+	/**
+	 * Instance metadata key holding when the answer an instance comes from was received,
+	 * set only on instances from a previous answer of a cluster that did not answer.
+	 */
+	public static final String STALE_SINCE_METADATA_KEY = "kubernetes.cluster.stale-since";
+
+	private static final Log log = LogFactory
+			.getLog(KubernetesFederatedDiscoveryClient.class);
+
+	private final List<Member> members;
+
+	private final Member local;
+
+	private final boolean preferLocalCluster;
+
+	private final List<KubernetesClient> ownedClients = new ArrayList<>();
+
+	private final List<KubernetesTtlDiscoveryCache> ownedCaches = new ArrayList<>();
+
+	// 集群超时时返回其上一次的结果
+	private final LastAnswers lastAnswers;
+
+	public KubernetesFederatedDiscoveryClient(KubernetesDiscoveryClient localClient,
+			KubernetesDiscoveryProperties properties,
+			KubernetesClientServicesFunction kubernetesClientServicesFunction,
+			DefaultIsServicePortSecureResolver isServicePortSecureResolver,
+			KubernetesDiscoveryMetrics metrics) {
+		this(localClient, new RemoteClusters(properties, kubernetesClientServicesFunction,
+				isServicePortSecureResolver, metrics), properties.getFederation());
+	}
+
+	private KubernetesFederatedDiscoveryClient(KubernetesDiscoveryClient localClient,
+			RemoteClusters remoteClusters,
+			KubernetesDiscoveryProperties.Federation federation) {
+		this(localClient, remoteClusters.discoveryClients, federation);
+		this.ownedClients.addAll(remoteClusters.clients);
+		this.ownedCaches.addAll(remoteClusters.caches);
+	}
+
+	KubernetesFederatedDiscoveryClient(KubernetesDiscoveryClient localClient,
+			Map<String, KubernetesDiscoveryClient> remoteClients,
+			KubernetesDiscoveryProperties.Federation federation) {
+		Assert.notNull(localClient,
+				"The discovery client of the current cluster is required");
+		this.preferLocalCluster = federation.isPreferLocalCluster();
+		this.lastAnswers = new LastAnswers(federation.getMaxStaleEntries(),
+				federation.getMaxStaleness());
+		List<Member> members = new ArrayList<>();
+		this.local = new Member(federation.getLocalCluster(), localClient,
+				federation.getTimeout(), federation.getMaxConcurrentRequests());
+		members.add(this.local);
+		remoteClients.forEach((name, client) -> {
+			KubernetesDiscoveryProperties.Cluster cluster = federation.getClusters()
+					.get(name);
+			Duration timeout = cluster != null && cluster.getTimeout() != null
+					? cluster.getTimeout() : federation.getTimeout();
+			members.add(new Member(name, client, timeout,
+					federation.getMaxConcurrentRequests()));
+		});
+		this.members = Collections.unmodifiableList(members);
+	}
+
+	@PreDestroy
+	public void stop() {
+		this.members.forEach(member -> member.executor.shutdownNow());
+		this.ownedCaches.forEach(KubernetesTtlDiscoveryCache::stop);
+		for (KubernetesClient client : this.ownedClients) {
+			try {
+				client.close();
+			}
+			catch (Exception e) {
+				log.debug("Error while closing the client of a federated cluster", e);
+			}
+		}
+	}
+
+	@Override
+	public String description() {
+		return "Kubernetes Federated Discovery Client";
+	}
+
+	@Override
+	public List<ServiceInstance> getInstances(String serviceId) {
+		Assert.notNull(serviceId,
+				"[Assertion failed] - the object argument must not be null");
+		if (this.preferLocalCluster) {
+			// 本集群有实例时不查询其他集群
+			List<ServiceInstance> local = query(Collections.singletonList(this.local),
+					client -> client.getInstances(serviceId), "instances/" + serviceId,
+					KubernetesFederatedDiscoveryClient::stale).get(this.local.name);
+			if (local != null && !local.isEmpty()) {
+				return local;
+			}
+			List<ServiceInstance> result = new ArrayList<>();
+			query(this.members.subList(1, this.members.size()),
+					client -> client.getInstances(serviceId), "instances/" + serviceId,
+					KubernetesFederatedDiscoveryClient::stale).values()
+							.forEach(result::addAll);
+			return result;
+		}
+		List<ServiceInstance> result = new ArrayList<>();
+		query(this.members, client -> client.getInstances(serviceId),
+				"instances/" + serviceId, KubernetesFederatedDiscoveryClient::stale)
+						.values().forEach(result::addAll);
+		return result;
+	}
+
+	@Override
+	public List<String> getServices() {
+		Set<String> services = new LinkedHashSet<>();
+		query(this.members, KubernetesDiscoveryClient::getServices, "services",
+				(names, receivedAt) -> names).values().forEach(services::addAll);
+		return new ArrayList<>(services);
+	}
+
+	/**
+	 * Federated clients are consulted before the discovery client of the current
+	 * cluster, which only sees part of the instances.
+	 */
+	@Override
+	public int getOrder() {
+		return -1;
+	}
+
+	// 每个集群在自己的线程池中查询，超时、失败或线程池已满时使用上一次的结果
+	private <T> Map<String, T> query(List<Member> members,
+			Function<KubernetesDiscoveryClient, T> lookup, String key,
+			BiFunction<T, Instant, T> stale) {
+		long start = System.nanoTime();
+		Map<String, Future<T>> futures = new LinkedHashMap<>();
+		for (Member member : members) {
+			String lastKey = member.name + "/" + key;
+			try {
+				futures.put(member.name, member.executor.submit(() -> {
+					T result = lookup.apply(member.client);
+					if (result != null) {
+						this.lastAnswers.put(lastKey, result);
+					}
+					return result;
+				}));
+			}
+			catch (RejectedExecutionException e) {
+				log.debug("Cluster " + member.name
+						+ " is busy with other lookups, leaving it out");
+				futures.put(member.name, null);
+			}
+		}
+		Map<String, T> results = new LinkedHashMap<>();
+		for (Member member : members) {
+			Future<T> future = futures.get(member.name);
+			T result = null;
+			if (future != null) {
+				try {
+					long remaining = member.timeout.toNanos()
+							- (System.nanoTime() - start);
+					result = future.get(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+				}
+				catch (TimeoutException e) {
+					// 不取消查询，完成后更新上一次的结果
+					log.warn("Cluster " + member.name + " did not answer within "
+							+ member.timeout + ", leaving it out");
+				}
+				catch (ExecutionException e) {
+					log.warn("Lookup in cluster " + member.name + " failed",
+							e.getCause());
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			if (result == null) {
+				LastAnswer last = this.lastAnswers.get(member.name + "/" + key);
+				if (last != null) {
+					@SuppressWarnings("unchecked")
+					T value = (T) last.value;
+					result = stale.apply(value, last.receivedAt);
+				}
+			}
+			if (result != null) {
+				results.put(member.name, result);
+			}
+		}
+		return results;
+	}
+
+	private static List<ServiceInstance> stale(List<ServiceInstance> instances,
+			Instant receivedAt) {
+		List<ServiceInstance> result = new ArrayList<>(instances.size());
+		for (ServiceInstance instance : instances) {
+			result.add(new StaleServiceInstance(instance, receivedAt));
+		}
+		return result;
+	}
+
+	/**
+	 * Builds the client configuration of another cluster. Credentials of the current
+	 * cluster are never sent to it: without a kubeconfig context, only the credentials
+	 * configured for the cluster are used.
+	 * @param cluster the cluster properties
+	 * @param defaultTimeout the federation timeout
+	 * @return the client configuration
+	 */
+	static Config config(KubernetesDiscoveryProperties.Cluster cluster,
+			Duration defaultTimeout) {
+		Duration timeout = cluster.getTimeout() != null ? cluster.getTimeout()
+				: defaultTimeout;
+		ConfigBuilder builder;
+		if (cluster.getContext() != null) {
+			builder = new ConfigBuilder(Config.autoConfigure(cluster.getContext()));
+		}
+		else {
+			Assert.hasText(cluster.getMasterUrl(),
+					"Either the context or the master URL of a cluster is required");
+			builder = new ConfigBuilder(Config.autoConfigure(null))
+					.withOauthToken(cluster.getOauthToken()).withCaCertFile(null)
+					.withCaCertData(null).withClientCertFile(null)
+					.withClientCertData(null).withClientKeyFile(null)
+					.withClientKeyData(null).withUsername(null).withPassword(null)
+					.withTrustCerts(false);
+		}
+		if (cluster.getMasterUrl() != null) {
+			builder.withMasterUrl(cluster.getMasterUrl());
+		}
+		if (cluster.getNamespace() != null) {
+			builder.withNamespace(cluster.getNamespace());
+		}
+		if (cluster.getOauthToken() != null) {
+			builder.withOauthToken(cluster.getOauthToken());
+		}
+		if (cluster.getCaCertFile() != null) {
+			builder.withCaCertFile(cluster.getCaCertFile());
+		}
+		if (cluster.getCaCertData() != null) {
+			builder.withCaCertData(cluster.getCaCertData());
+		}
+		if (cluster.getTrustCerts() != null) {
+			builder.withTrustCerts(cluster.getTrustCerts());
+		}
+		// 请求本身也有超时，避免挂起的请求一直占用线程
+		return builder.withRequestTimeout((int) timeout.toMillis())
+				.withConnectionTimeout((int) timeout.toMillis()).build();
+	}
+
+	/**
+	 * The clients of the other clusters. Only the TTL cache is supported for them, the
+	 * other cache modes keep watches open that are not worth it across clusters.
+	 */
+	private static final class RemoteClusters {
+
+		private final Map<String, KubernetesDiscoveryClient> discoveryClients = new LinkedHashMap<>();
+
+		private final List<KubernetesClient> clients = new ArrayList<>();
+
+		private final List<KubernetesTtlDiscoveryCache> caches = new ArrayList<>();
+
+		RemoteClusters(KubernetesDiscoveryProperties properties,
+				KubernetesClientServicesFunction kubernetesClientServicesFunction,
+				DefaultIsServicePortSecureResolver isServicePortSecureResolver,
+				KubernetesDiscoveryMetrics metrics) {
+			properties.getFederation().getClusters().forEach((name, cluster) -> {
+				KubernetesClient client = new DefaultKubernetesClient(
+						config(cluster, properties.getFederation().getTimeout()));
+				this.clients.add(client);
+				KubernetesTtlDiscoveryCache cache = null;
+				if (properties.getCache().getMode() == KubernetesDiscoveryCacheMode.TTL) {
+					cache = new KubernetesTtlDiscoveryCache(client, properties,
+							kubernetesClientServicesFunction);
+					this.caches.add(cache);
+				}
+				KubernetesDiscoveryClient discoveryClient = new KubernetesDiscoveryClient(
+						client, properties, kubernetesClientServicesFunction,
+						isServicePortSecureResolver, cache);
+				discoveryClient.setMetrics(metrics);
+				discoveryClient.setClusterName(name);
+				this.discoveryClients.put(name, discoveryClient);
+			});
+		}
+
+	}
+
+	/**
+	 * The last answer of each cluster to each lookup, dropped once older than the
+	 * maximum staleness or when too many are kept.
+	 */
+	private static final class LastAnswers {
+
+		private final Map<String, LastAnswer> answers;
+
+		private final long maxStalenessMs;
+
+		LastAnswers(int maxEntries, Duration maxStaleness) {
+			this.maxStalenessMs = maxStaleness.toMillis();
+			this.answers = Collections.synchronizedMap(
+					new LinkedHashMap<String, LastAnswer>(16, 0.75f, true) {
+						@Override
+						protected boolean removeEldestEntry(
+								Map.Entry<String, LastAnswer> eldest) {
+							return size() > maxEntries;
+						}
+					});
+		}
+
+		void put(String key, Object value) {
+			this.answers.put(key, new LastAnswer(value, Instant.now()));
+		}
+
+		LastAnswer get(String key) {
+			LastAnswer answer = this.answers.get(key);
+			if (answer != null && Instant.now().toEpochMilli()
+					- answer.receivedAt.toEpochMilli() > this.maxStalenessMs) {
+				this.answers.remove(key, answer);
+				return null;
+			}
+			return answer;
+		}
+
+	}
+
+	private static final class LastAnswer {
+
+		private final Object value;
+
+		private final Instant receivedAt;
+
+		LastAnswer(Object value, Instant receivedAt) {
+			this.value = value;
+			this.receivedAt = receivedAt;
+		}
+
+	}
+
+	/**
+	 * An instance from a previous answer, with when that answer was received added to
+	 * its metadata.
+	 */
+	private static final class StaleServiceInstance implements ServiceInstance {
+
+		private final ServiceInstance delegate;
+
+		private final Map<String, String> metadata;
+
+		StaleServiceInstance(ServiceInstance delegate, Instant receivedAt) {
+			this.delegate = delegate;
+			Map<String, String> metadata = new HashMap<>(delegate.getMetadata());
+			metadata.put(STALE_SINCE_METADATA_KEY, receivedAt.toString());
+			this.metadata = Collections.unmodifiableMap(metadata);
+		}
+
+		@Override
+		public String getInstanceId() {
+			return this.delegate.getInstanceId();
+		}
+
+		@Override
+		public String getServiceId() {
+			return this.delegate.getServiceId();
+		}
+
+		@Override
+		public String getHost() {
+			return this.delegate.getHost();
+		}
+
+		@Override
+		public int getPort() {
+			return this.delegate.getPort();
+		}
+
+		@Override
+		public boolean isSecure() {
+			return this.delegate.isSecure();
+		}
+
+		@Override
+		public URI getUri() {
+			return this.delegate.getUri();
+		}
+
+		@Override
+		public String getScheme() {
+			return this.delegate.getScheme();
+		}
+
+		@Override
+		public Map<String, String> getMetadata() {
+			return this.metadata;
+		}
+
+	}
+
+	private static final class Member {
+
+		private final String name;
+
+		private final KubernetesDiscoveryClient client;
+
+		private final Duration timeout;
+
+		private final ThreadPoolExecutor executor;
+
+		Member(String name, KubernetesDiscoveryClient client, Duration timeout,
+				int maxConcurrentRequests) {
+			this.name = name;
+			this.client = client;
+			this.timeout = timeout;
+			// 没有队列，线程都被占用时直接拒绝
+			this.executor = new ThreadPoolExecutor(0, maxConcurrentRequests, 60,
+					TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+						Thread thread = new Thread(runnable,
+								"kubernetes-federation-" + name);
+						thread.setDaemon(true);
+						return thread;
+					});
+		}
+
+	}
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.context.ApplicationEvent;
+import org.springframework.core.style.ToStringCreator;
+
+/**
+ * Published by the {@link KubernetesCatalogWatch} alongside its {@code HeartbeatEvent},
+ * listing per service which instances were added, removed or changed, so that listeners
+ * can update incrementally instead of reloading every service.
+ *
+ * Instances are identified by the uid of the pod backing them, or by their address if
+ * the endpoint does not reference a pod. An instance changed if its address or ports
+ * changed. Only ready instances are taken into account.
+ */
+public class KubernetesInstancesChangedEvent extends ApplicationEvent {
+
+	private final List<ServiceInstancesChange> changes;
+
+	public KubernetesInstancesChangedEvent(Object source,
+			List<ServiceInstancesChange> changes) {
+		super(source);
+		this.changes = Collections.unmodifiableList(changes);
+	}
+
+	/**
+	 * @return the changes, at most one per service
+	 */
+	public List<ServiceInstancesChange> getChanges() {
+		return this.changes;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringCreator(this).append("changes", this.changes).toString();
+	}
+
+	/**
+	 * The instances of a single service that changed.
+	 */
+	public static class ServiceInstancesChange {
+
+		private final String namespace;
+
+		private final String serviceId;
+
+		private final Set<String> added;
+
+		private final Set<String> removed;
+
+		private final Set<String> changed;
+
+		public ServiceInstancesChange(String namespace, String serviceId,
+				Set<String> added, Set<String> removed, Set<String> changed) {
+			this.namespace = namespace;
+			this.serviceId = serviceId;
+			this.added = Collections.unmodifiableSet(added);
+			this.removed = Collections.unmodifiableSet(removed);
+			this.changed = Collections.unmodifiableSet(changed);
+		}
+
+		public String getNamespace() {
+			return this.namespace;
+		}
+
+		public String getServiceId() {
+			return this.serviceId;
+		}
+
+		/**
+		 * @return the ids of the instances that became ready
+		 */
+		public Set<String> getAdded() {
+			return this.added;
+		}
+
+		/**
+		 * @return the ids of the instances that are gone or no longer ready
+		 */
+		public Set<String> getRemoved() {
+			return this.removed;
+		}
+
+		/**
+		 * @return the ids of the instances whose address or ports changed
+		 */
+		public Set<String> getChanged() {
+			return this.changed;
+		}
+
+		public boolean isEmpty() {
+			return this.added.isEmpty() && this.removed.isEmpty()
+					&& this.changed.isEmpty();
+		}
+
+		@Override
+		public String toString() {
+			return new ToStringCreator(this).append("namespace", this.namespace)
+					.append("serviceId", this.serviceId).append("added", this.added)
+					.append("removed", this.removed).append("changed", this.changed)
+					.toString();
+		}
+
+	}
+
+}
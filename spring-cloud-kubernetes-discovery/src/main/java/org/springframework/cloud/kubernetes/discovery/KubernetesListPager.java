@@ -0,0 +1,71 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.util.function.Consumer;
+
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.KubernetesResourceList;
+import io.fabric8.kubernetes.client.dsl.Listable;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Lists resources page by page with the {@code limit} and {@code continue} parameters
+ * of the Kubernetes API, handing every item to a consumer before the next page is
+ * requested. Only one page is held in memory at a time, whatever the size of the
+ * cluster.
+ */
+final class KubernetesListPager {
+
+	private KubernetesListPager() {
+	}
+
+	/**
+	 * @param operation the operation to list with
+	 * @param pageSize the maximum number of items per page, 0 or less lists everything
+	 * at once
+	 * @param consumer called for every item
+	 * @param <T> the resource type
+	 * @param <L> the list type
+	 * @return the resource version of the list, or null
+	 */
+	static <T extends HasMetadata, L extends KubernetesResourceList<T>> String forEach(
+			Listable<L> operation, int pageSize, Consumer<T> consumer) {
+		if (pageSize <= 0) {
+			L list = operation.list();
+			list.getItems().forEach(consumer);
+			return list.getMetadata() != null ? list.getMetadata().getResourceVersion()
+					: null;
+		}
+		String continueToken = null;
+		String resourceVersion = null;
+		do {
+			L page = operation.list(pageSize, continueToken);
+			page.getItems().forEach(consumer);
+			continueToken = null;
+			if (page.getMetadata() != null) {
+				// 所有分页属于同一个快照，资源版本相同
+				resourceVersion = page.getMetadata().getResourceVersion();
+				continueToken = page.getMetadata().getContinue();
+			}
+		}
+		while (StringUtils.hasText(continueToken));
+		return resourceVersion;
+	}
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Runs a query once in each namespace of
+ * {@link KubernetesDiscoveryProperties#getNamespaces()}, in parallel.
+ *
+ * The first namespace is queried on the calling thread and the others on a pool of at
+ * most one thread per namespace. Idle threads stop after a minute, and a query runs on
+ * the calling thread when the pool is busy with other lookups, so the pool needs no
+ * shutdown and never queues work.
+ */
+final class KubernetesNamespaceQueries {
+
+	private final List<String> namespaces;
+
+	private final ThreadPoolExecutor executor;
+
+	KubernetesNamespaceQueries(Collection<String> namespaces) {
+		this.namespaces = Collections.unmodifiableList(new ArrayList<>(namespaces));
+		this.executor = new ThreadPoolExecutor(0,
+				Math.max(this.namespaces.size() - 1, 1), 60, TimeUnit.SECONDS,
+				new SynchronousQueue<>(), runnable -> {
+					Thread thread = new Thread(runnable, "kubernetes-discovery-namespaces");
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	/**
+	 * @param properties the discovery properties
+	 * @param current the queries used so far, or null
+	 * @return null if the namespaces are not configured or all namespaces are
+	 * discovered, the current queries if they still run in the configured namespaces,
+	 * new queries otherwise
+	 */
+	static KubernetesNamespaceQueries of(KubernetesDiscoveryProperties properties,
+			KubernetesNamespaceQueries current) {
+		Collection<String> namespaces = properties.getNamespaces();
+		if (properties.isAllNamespaces() || namespaces == null
+				|| namespaces.isEmpty()) {
+			return null;
+		}
+		if (current != null && current.isFor(namespaces)) {
+			return current;
+		}
+		return new KubernetesNamespaceQueries(namespaces);
+	}
+
+	List<String> getNamespaces() {
+		return this.namespaces;
+	}
+
+	/**
+	 * @param namespaces the configured namespaces
+	 * @return true if the queries run in exactly these namespaces
+	 */
+	boolean isFor(Collection<String> namespaces) {
+		return this.namespaces.size() == namespaces.size()
+				&& this.namespaces.containsAll(namespaces);
+	}
+
+	/**
+	 * @param query the query to run in a namespace
+	 * @param <T> the type of result
+	 * @return the result of the query in each namespace, in the configured order
+	 */
+	<T> List<T> query(Function<String, T> query) {
+		if (this.namespaces.size() == 1) {
+			return Collections.singletonList(query.apply(this.namespaces.get(0)));
+		}
+		List<Future<T>> futures = new ArrayList<>(this.namespaces.size() - 1);
+		for (String namespace : this.namespaces.subList(1, this.namespaces.size())) {
+			futures.add(this.executor.submit(() -> query.apply(namespace)));
+		}
+		List<T> results = new ArrayList<>(this.namespaces.size());
+		results.add(query.apply(this.namespaces.get(0)));
+		for (Future<T> future : futures) {
+			results.add(get(future));
+		}
+		return results;
+	}
+
+	private static <T> T get(Future<T> future) {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while querying namespaces", e);
+		}
+		catch (ExecutionException e) {
+			// 保留原始异常类型，与单命名空间查询一致
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+}
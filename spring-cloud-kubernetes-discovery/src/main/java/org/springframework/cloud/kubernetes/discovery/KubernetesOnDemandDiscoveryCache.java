@@ -0,0 +1,380 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.model.EndpointsList;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.KubernetesResourceList;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.ServiceList;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.kubernetes.client.dsl.FilterWatchListDeletable;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * {@link KubernetesDiscoveryCache} that only keeps the services that are looked up in
+ * memory. The first lookup of a service lists its {@link Service} and {@link Endpoints}
+ * and starts a watch on each of them, selected by name. Later lookups are answered from
+ * memory.
+ *
+ * The watches of a service are closed when it was not looked up for
+ * {@link KubernetesDiscoveryProperties.Cache#getIdleTimeout()}, or when more than
+ * {@link KubernetesDiscoveryProperties.Cache#getMaxServices()} services are watched, in
+ * which case the least recently looked up service is evicted. Memory and watch count
+ * thus follow the services the application calls rather than the size of the cluster.
+ *
+ * The cache never holds every service, so {@link #isSynced()} is false and
+ * {@code getServices} keeps querying the API server. EndpointSlices are not used in this
+ * mode.
+ */
+public class KubernetesOnDemandDiscoveryCache implements KubernetesDiscoveryCache {
+
+	private static final Log log = LogFactory
+			.getLog(KubernetesOnDemandDiscoveryCache.class);
+
+	private static final String NAME_FIELD = "metadata.name";
+
+	private static final String NO_NAMESPACE = "";
+
+	private final KubernetesClient client;
+
+	private final KubernetesDiscoveryProperties properties;
+
+	private final ConcurrentMap<String, ServiceWatch> watches = new ConcurrentHashMap<>();
+
+	private final ScheduledExecutorService executor;
+
+	private volatile boolean stopped;
+
+	public KubernetesOnDemandDiscoveryCache(KubernetesClient client,
+			KubernetesDiscoveryProperties properties) {
+		this.client = client;
+		this.properties = properties;
+		this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "kubernetes-discovery-on-demand");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@PostConstruct
+	public void start() {
+		long period = Math.max(1000,
+				this.properties.getCache().getIdleTimeout().toMillis() / 2);
+		this.executor.scheduleWithFixedDelay(this::evictIdle, period, period,
+				TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		this.stopped = true;
+		this.executor.shutdownNow();
+		this.watches.values().forEach(ServiceWatch::close);
+		this.watches.clear();
+	}
+
+	@Override
+	public boolean isSynced() {
+		return false;
+	}
+
+	@Override
+	public boolean isSynced(String serviceId) {
+		return !this.stopped;
+	}
+
+	/**
+	 * @param serviceId the name of the service
+	 * @return true if the service is already watched, the first lookup of a service
+	 * lists it on the caller's thread
+	 */
+	@Override
+	public boolean isCached(String serviceId) {
+		ServiceWatch watch = this.watches.get(serviceId);
+		return !this.stopped && watch != null && watch.started;
+	}
+
+	@Override
+	public List<Endpoints> getEndpoints(String serviceId) {
+		return watch(serviceId).endpoints.items();
+	}
+
+	@Override
+	public Service getService(String namespace, String serviceId) {
+		Map<String, Service> byNamespace = watch(serviceId).services.store;
+		String ns = namespace != null ? namespace : this.client.getNamespace();
+		if (ns == null) {
+			return byNamespace.values().stream().findFirst().orElse(null);
+		}
+		return byNamespace.get(ns);
+	}
+
+	@Override
+	public List<Service> getServices() {
+		List<Service> result = new ArrayList<>();
+		this.watches.values().forEach(watch -> result.addAll(watch.services.items()));
+		return result;
+	}
+
+	/**
+	 * @return the number of services currently watched
+	 */
+	int size() {
+		return this.watches.size();
+	}
+
+	private ServiceWatch watch(String serviceId) {
+		ServiceWatch watch = this.watches.get(serviceId);
+		if (watch == null) {
+			ServiceWatch created = new ServiceWatch(serviceId);
+			watch = this.watches.putIfAbsent(serviceId, created);
+			if (watch == null) {
+				watch = created;
+				evictLeastRecentlyUsed(serviceId);
+			}
+		}
+		watch.lastAccess = System.nanoTime();
+		watch.start();
+		return watch;
+	}
+
+	// 新服务加入时才会超过上限，这里线性扫描的代价可以接受
+	private void evictLeastRecentlyUsed(String added) {
+		int maxServices = this.properties.getCache().getMaxServices();
+		while (maxServices > 0 && this.watches.size() > maxServices) {
+			ServiceWatch eldest = null;
+			for (ServiceWatch watch : this.watches.values()) {
+				if (!watch.serviceId.equals(added)
+						&& (eldest == null || watch.lastAccess < eldest.lastAccess)) {
+					eldest = watch;
+				}
+			}
+			if (eldest == null) {
+				return;
+			}
+			evict(eldest, "more than " + maxServices + " services are watched");
+		}
+	}
+
+	private void evictIdle() {
+		long idleTimeout = this.properties.getCache().getIdleTimeout().toNanos();
+		long now = System.nanoTime();
+		for (ServiceWatch watch : this.watches.values()) {
+			if (now - watch.lastAccess > idleTimeout) {
+				evict(watch, "it was not looked up recently");
+			}
+		}
+	}
+
+	private void evict(ServiceWatch watch, String reason) {
+		if (this.watches.remove(watch.serviceId, watch)) {
+			if (log.isDebugEnabled()) {
+				log.debug("No longer watching service " + watch.serviceId + " since "
+						+ reason);
+			}
+			watch.close();
+		}
+	}
+
+	private FilterWatchListDeletable<Endpoints, EndpointsList, Boolean, Watch, Watcher<Endpoints>> endpointsOperation(
+			String serviceId) {
+		if (this.properties.isAllNamespaces()) {
+			return this.client.endpoints().inAnyNamespace().withField(NAME_FIELD,
+					serviceId);
+		}
+		return this.client.endpoints().withField(NAME_FIELD, serviceId);
+	}
+
+	private FilterWatchListDeletable<Service, ServiceList, Boolean, Watch, Watcher<Service>> servicesOperation(
+			String serviceId) {
+		if (this.properties.isAllNamespaces()) {
+			return this.client.services().inAnyNamespace().withField(NAME_FIELD,
+					serviceId);
+		}
+		return this.client.services().withField(NAME_FIELD, serviceId);
+	}
+
+	/**
+	 * The service and endpoints of a single service, one per namespace.
+	 */
+	private final class ServiceWatch {
+
+		private final String serviceId;
+
+		private final ResourceWatch<Service, ServiceList> services;
+
+		private final ResourceWatch<Endpoints, EndpointsList> endpoints;
+
+		private volatile long lastAccess = System.nanoTime();
+
+		private volatile boolean started;
+
+		private boolean closed;
+
+		ServiceWatch(String serviceId) {
+			this.serviceId = serviceId;
+			this.services = new ResourceWatch<>(this,
+					() -> servicesOperation(serviceId));
+			this.endpoints = new ResourceWatch<>(this,
+					() -> endpointsOperation(serviceId));
+		}
+
+		/**
+		 * Lists and watches the service and its endpoints on the first call. A watch
+		 * is not started if the service was evicted meanwhile, the lookup is then
+		 * answered from the list alone.
+		 */
+		synchronized void start() {
+			if (this.started) {
+				return;
+			}
+			this.services.list();
+			this.endpoints.list();
+			this.started = true;
+			if (!this.closed) {
+				this.services.watch();
+				this.endpoints.watch();
+				if (log.isDebugEnabled()) {
+					log.debug("Watching service " + this.serviceId);
+				}
+			}
+		}
+
+		synchronized void close() {
+			this.closed = true;
+			this.services.closeWatch();
+			this.endpoints.closeWatch();
+		}
+
+		// watch被关闭后下一次查询重新list，而不是在后台重试
+		void onClose(KubernetesClientException cause) {
+			if (KubernetesOnDemandDiscoveryCache.this.stopped) {
+				return;
+			}
+			log.debug("A watch of service " + this.serviceId
+					+ " was closed, listing again on the next lookup", cause);
+			evict(this, "its watch was closed");
+		}
+
+	}
+
+	/**
+	 * Resources of a single kind and name indexed by namespace.
+	 */
+	private static final class ResourceWatch<T extends HasMetadata, L extends KubernetesResourceList<T>>
+			implements Watcher<T> {
+
+		private final ServiceWatch owner;
+
+		private final Supplier<FilterWatchListDeletable<T, L, Boolean, Watch, Watcher<T>>> operation;
+
+		private final ConcurrentMap<String, T> store = new ConcurrentHashMap<>();
+
+		private String resourceVersion;
+
+		private volatile Watch watch;
+
+		ResourceWatch(ServiceWatch owner,
+				Supplier<FilterWatchListDeletable<T, L, Boolean, Watch, Watcher<T>>> operation) {
+			this.owner = owner;
+			this.operation = operation;
+		}
+
+		List<T> items() {
+			return this.store.isEmpty() ? Collections.emptyList()
+					: new ArrayList<>(this.store.values());
+		}
+
+		void list() {
+			L list = this.operation.get().list();
+			if (list.getItems() != null) {
+				for (T item : list.getItems()) {
+					this.store.put(namespaceOf(item), item);
+				}
+			}
+			this.resourceVersion = list.getMetadata() != null
+					? list.getMetadata().getResourceVersion() : null;
+		}
+
+		void watch() {
+			this.watch = this.resourceVersion != null
+					? this.operation.get().watch(this.resourceVersion, this)
+					: this.operation.get().watch(this);
+		}
+
+		void closeWatch() {
+			Watch current = this.watch;
+			this.watch = null;
+			if (current != null) {
+				try {
+					current.close();
+				}
+				catch (Exception e) {
+					log.debug("Error while closing a watch of service "
+							+ this.owner.serviceId, e);
+				}
+			}
+		}
+
+		@Override
+		public void eventReceived(Action action, T resource) {
+			switch (action) {
+			case ADDED:
+			case MODIFIED:
+				this.store.put(namespaceOf(resource), resource);
+				break;
+			case DELETED:
+				this.store.remove(namespaceOf(resource));
+				break;
+			default:
+				log.warn("Received " + action + " event for service "
+						+ this.owner.serviceId);
+			}
+		}
+
+		@Override
+		public void onClose(KubernetesClientException cause) {
+			this.owner.onClose(cause);
+		}
+
+		private static String namespaceOf(HasMetadata resource) {
+			String namespace = resource.getMetadata().getNamespace();
+			return namespace != null ? namespace : NO_NAMESPACE;
+		}
+
+	}
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.util.Assert;
+
+/**
+ * Kubernetes implementation of {@link ReactiveDiscoveryClient}.
+ *
+ * Lookups are delegated to a {@link KubernetesDiscoveryClient}. When a
+ * {@link KubernetesDiscoveryCache} holds the results in memory when a lookup is
+ * subscribed to, they are served on the subscribing thread, otherwise the blocking
+ * API calls are made on the {@link Schedulers#boundedElastic() bounded elastic}
+ * scheduler so that they never run on an event loop thread.
+ */
+public class KubernetesReactiveDiscoveryClient implements ReactiveDiscoveryClient {
+
+	private final KubernetesDiscoveryClient discoveryClient;
+
+	private final KubernetesDiscoveryCache cache;
+
+	public KubernetesReactiveDiscoveryClient(KubernetesDiscoveryClient discoveryClient,
+			KubernetesDiscoveryCache cache) {
+		this.discoveryClient = discoveryClient;
+		this.cache = cache;
+	}
+
+	@Override
+	public String description() {
+		return "Kubernetes Reactive Discovery Client";
+	}
+
+	@Override
+	public Flux<ServiceInstance> getInstances(String serviceId) {
+		Assert.notNull(serviceId,
+				"[Assertion failed] - the object argument must not be null");
+		return lookup(() -> this.cache.isCached(serviceId),
+				() -> this.discoveryClient.getInstances(serviceId));
+	}
+
+	@Override
+	public Flux<String> getServices() {
+		return lookup(() -> this.cache.isCached(), this.discoveryClient::getServices);
+	}
+
+	// 每次订阅时重新判断，缓存状态在组装和订阅之间可能已经变化
+	private <T> Flux<T> lookup(BooleanSupplier cached, Supplier<List<T>> supplier) {
+		Flux<T> flux = Flux.defer(() -> Flux.fromIterable(supplier.get()));
+		return Flux.defer(() -> this.cache != null && cached.getAsBoolean() ? flux
+				: flux.subscribeOn(Schedulers.boundedElastic()));
+	}
+
+}
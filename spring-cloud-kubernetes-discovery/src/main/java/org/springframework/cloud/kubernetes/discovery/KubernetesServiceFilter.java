@@ -0,0 +1,184 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+
+import io.fabric8.kubernetes.api.model.ObjectMeta;
+import io.fabric8.kubernetes.api.model.Service;
+
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelNode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.ast.CompoundExpression;
+import org.springframework.expression.spel.ast.Indexer;
+import org.springframework.expression.spel.ast.MethodReference;
+import org.springframework.expression.spel.ast.Projection;
+import org.springframework.expression.spel.ast.PropertyOrFieldReference;
+import org.springframework.expression.spel.ast.Selection;
+import org.springframework.expression.spel.ast.StringLiteral;
+import org.springframework.expression.spel.ast.VariableReference;
+import org.springframework.expression.spel.standard.SpelExpression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.SimpleEvaluationContext;
+
+/**
+ * {@link Service} predicate backed by the SpEL expression configured in
+ * {@code spring.cloud.kubernetes.discovery.filter}.
+ *
+ * The expression is parsed once, in {@link SpelCompilerMode#MIXED} so that it is
+ * compiled to bytecode after a few interpreted runs and falls back to interpretation
+ * if compilation is not possible. The outcome for each service is remembered by uid
+ * and resource version, so a service is only evaluated again after it changed.
+ */
+final class KubernetesServiceFilter implements Predicate<Service> {
+
+	private static final String METADATA = "metadata";
+
+	private static final SpelExpressionParser PARSER = new SpelExpressionParser(
+			new SpelParserConfiguration(SpelCompilerMode.MIXED,
+					KubernetesServiceFilter.class.getClassLoader()));
+
+	private final SimpleEvaluationContext evalCtxt = SimpleEvaluationContext
+			.forReadOnlyDataBinding().withInstanceMethods().build();
+
+	private final String expressionString;
+
+	private final Expression expression;
+
+	private final boolean metadataOnly;
+
+	private final ConcurrentMap<String, Decision> decisions = new ConcurrentHashMap<>();
+
+	KubernetesServiceFilter(String expressionString) {
+		this.expressionString = expressionString;
+		this.expression = PARSER.parseExpression(expressionString);
+		this.metadataOnly = this.expression instanceof SpelExpression
+				&& referencesOnlyMetadata(((SpelExpression) this.expression).getAST());
+	}
+
+	String getExpressionString() {
+		return this.expressionString;
+	}
+
+	/**
+	 * @return true if the expression only reads the metadata of a service, so it can be
+	 * evaluated against services listed without their spec and status
+	 */
+	boolean isMetadataOnly() {
+		return this.metadataOnly;
+	}
+
+	@Override
+	public boolean test(Service service) {
+		ObjectMeta metadata = service.getMetadata();
+		String uid = metadata != null ? metadata.getUid() : null;
+		String resourceVersion = metadata != null ? metadata.getResourceVersion()
+				: null;
+		if (uid == null || resourceVersion == null) {
+			return evaluate(service);
+		}
+		Decision decision = this.decisions.get(uid);
+		if (decision == null || !decision.resourceVersion.equals(resourceVersion)) {
+			decision = new Decision(resourceVersion, evaluate(service));
+			this.decisions.put(uid, decision);
+		}
+		return decision.include;
+	}
+
+	/**
+	 * Forgets the outcome for services that are no longer listed.
+	 * @param uids the uids of the services that were just filtered
+	 */
+	void retainOnly(Set<String> uids) {
+		if (this.decisions.size() > uids.size()) {
+			this.decisions.keySet().retainAll(uids);
+		}
+	}
+
+	// 根对象上的属性只能是metadata，无法判断的表达式按需要完整对象处理
+	private static boolean referencesOnlyMetadata(SpelNode node) {
+		if (node instanceof CompoundExpression) {
+			if (!referencesOnlyMetadata(node.getChild(0))) {
+				return false;
+			}
+			for (int i = 1; i < node.getChildCount(); i++) {
+				if (!childrenReferenceOnlyMetadata(node.getChild(i))) {
+					return false;
+				}
+			}
+			return true;
+		}
+		if (node instanceof PropertyOrFieldReference) {
+			return METADATA.equals(((PropertyOrFieldReference) node).getName());
+		}
+		if (node instanceof Indexer) {
+			// 根对象上的索引就是属性访问，例如['spec']
+			SpelNode index = node.getChild(0);
+			return index instanceof StringLiteral && METADATA
+					.equals(((StringLiteral) index).getLiteralValue().getValue());
+		}
+		if (node instanceof MethodReference) {
+			return "getMetadata".equals(((MethodReference) node).getName())
+					&& childrenReferenceOnlyMetadata(node);
+		}
+		if (node instanceof VariableReference || node instanceof Selection
+				|| node instanceof Projection) {
+			return false;
+		}
+		return childrenReferenceOnlyMetadata(node);
+	}
+
+	private static boolean childrenReferenceOnlyMetadata(SpelNode node) {
+		if (node instanceof Selection || node instanceof Projection) {
+			return false;
+		}
+		for (int i = 0; i < node.getChildCount(); i++) {
+			if (!referencesOnlyMetadata(node.getChild(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean evaluate(Service service) {
+		Boolean include = this.expression.getValue(this.evalCtxt, service,
+				Boolean.class);
+		if (include == null) {
+			return false;
+		}
+		return include;
+	}
+
+	private static final class Decision {
+
+		private final String resourceVersion;
+
+		private final boolean include;
+
+		Decision(String resourceVersion, boolean include) {
+			this.resourceVersion = resourceVersion;
+			this.include = include;
+		}
+
+	}
+
+}
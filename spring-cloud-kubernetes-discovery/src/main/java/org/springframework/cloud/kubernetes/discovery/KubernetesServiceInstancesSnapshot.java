@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.Service;
+
+import org.springframework.cloud.client.ServiceInstance;
+
+/**
+ * Immutable list of the {@link ServiceInstance}s of a service, together with the
+ * namespaces and resource versions of the {@link Endpoints} and {@link Service}
+ * objects it was built from. As long as those resource versions and the topology
+ * generation do not change the same list can be handed out to every caller.
+ */
+final class KubernetesServiceInstancesSnapshot {
+
+	private final String[] namespaces;
+
+	private final String[] endpointsVersions;
+
+	private final String[] serviceVersions;
+
+	private final List<ServiceInstance> instances;
+
+	private final boolean versioned;
+
+	private final long topologyGeneration;
+
+	KubernetesServiceInstancesSnapshot(List<Endpoints> endpoints,
+			List<Service> services, List<ServiceInstance> instances,
+			long topologyGeneration) {
+		int size = endpoints.size();
+		this.namespaces = new String[size];
+		this.endpointsVersions = new String[size];
+		this.serviceVersions = new String[size];
+		boolean allVersioned = true;
+		for (int i = 0; i < size; i++) {
+			Endpoints e = endpoints.get(i);
+			this.namespaces[i] = e.getMetadata() != null
+					? e.getMetadata().getNamespace() : null;
+			this.endpointsVersions[i] = resourceVersion(e);
+			this.serviceVersions[i] = resourceVersion(services.get(i));
+			allVersioned &= this.endpointsVersions[i] != null
+					&& this.serviceVersions[i] != null;
+		}
+		this.versioned = allVersioned;
+		this.topologyGeneration = topologyGeneration;
+		this.instances = Collections.unmodifiableList(new ArrayList<>(instances));
+	}
+
+	/**
+	 * @return true if every source object carried a resource version, so the snapshot
+	 * can be reused
+	 */
+	boolean isVersioned() {
+		return this.versioned;
+	}
+
+	/**
+	 * @param endpoints the current endpoints of the service
+	 * @param services the current service for each of the endpoints
+	 * @param topologyGeneration the current generation of the node zones
+	 * @return true if the snapshot was built from exactly these resource versions and
+	 * node zones
+	 */
+	boolean isBuiltFrom(List<Endpoints> endpoints, List<Service> services,
+			long topologyGeneration) {
+		if (!this.versioned || this.topologyGeneration != topologyGeneration
+				|| endpoints.size() != this.endpointsVersions.length) {
+			return false;
+		}
+		for (int i = 0; i < this.endpointsVersions.length; i++) {
+			Endpoints e = endpoints.get(i);
+			if (e.getMetadata() == null
+					|| !Objects.equals(this.namespaces[i], e.getMetadata().getNamespace())
+					|| !this.endpointsVersions[i].equals(resourceVersion(e))
+					|| !this.serviceVersions[i].equals(resourceVersion(services.get(i)))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	List<ServiceInstance> getInstances() {
+		return this.instances;
+	}
+
+	private static String resourceVersion(HasMetadata resource) {
+		if (resource == null || resource.getMetadata() == null) {
+			return null;
+		}
+		return resource.getMetadata().getResourceVersion();
+	}
+
+}
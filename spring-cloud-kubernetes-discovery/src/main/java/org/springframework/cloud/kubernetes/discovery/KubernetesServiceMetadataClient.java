@@ -0,0 +1,170 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import io.fabric8.kubernetes.api.model.ListMeta;
+import io.fabric8.kubernetes.api.model.ObjectMeta;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.client.HttpClientAware;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.utils.Serialization;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Lists services without their spec and status. The API server is asked for a
+ * {@code PartialObjectMetadataList}, which only carries the metadata of every service;
+ * servers that do not support it answer with a regular list, of which only the
+ * metadata is decoded.
+ *
+ * The returned {@link Service}s only have their metadata set.
+ */
+final class KubernetesServiceMetadataClient {
+
+	private static final String ACCEPT = "application/json;as=PartialObjectMetadataList;g=meta.k8s.io;v=v1,application/json";
+
+	private final KubernetesClient client;
+
+	KubernetesServiceMetadataClient(KubernetesClient client) {
+		this.client = client;
+	}
+
+	/**
+	 * @param namespace the namespace, or null for all namespaces
+	 * @param labels the labels the services must have
+	 * @param pageSize the maximum number of services per page, 0 or less lists
+	 * everything at once
+	 * @param consumer called for every service
+	 */
+	void forEach(String namespace, Map<String, String> labels, int pageSize,
+			Consumer<Service> consumer) {
+		String continueToken = null;
+		do {
+			HttpUrl.Builder url = url(namespace);
+			if (labels != null && !labels.isEmpty()) {
+				url.addQueryParameter("labelSelector", labels.entrySet().stream()
+						.map(e -> e.getKey() + "=" + e.getValue())
+						.collect(Collectors.joining(",")));
+			}
+			if (pageSize > 0) {
+				url.addQueryParameter("limit", Integer.toString(pageSize));
+			}
+			if (continueToken != null) {
+				url.addQueryParameter("continue", continueToken);
+			}
+			MetadataList page = list(url.build());
+			if (page.getItems() != null) {
+				for (MetadataItem item : page.getItems()) {
+					Service service = new Service();
+					service.setMetadata(item.getMetadata());
+					consumer.accept(service);
+				}
+			}
+			continueToken = page.getMetadata() != null
+					? page.getMetadata().getContinue() : null;
+		}
+		while (pageSize > 0 && StringUtils.hasText(continueToken));
+	}
+
+	private MetadataList list(HttpUrl url) {
+		Request request = new Request.Builder().get().url(url).header("Accept", ACCEPT)
+				.build();
+		try (Response response = httpClient().newCall(request).execute()) {
+			if (!response.isSuccessful()) {
+				throw new KubernetesClientException("Failed to list services from " + url
+						+ ": " + response.code() + " " + response.message(),
+						response.code(), null);
+			}
+			return Serialization.jsonMapper().readValue(response.body().byteStream(),
+					MetadataList.class);
+		}
+		catch (IOException e) {
+			throw new KubernetesClientException("Failed to list services from " + url,
+					e);
+		}
+	}
+
+	private HttpUrl.Builder url(String namespace) {
+		HttpUrl.Builder url = HttpUrl.get(this.client.getMasterUrl()).newBuilder()
+				.addPathSegments("api/v1");
+		if (namespace != null) {
+			url.addPathSegment("namespaces").addPathSegment(namespace);
+		}
+		return url.addPathSegment("services");
+	}
+
+	private OkHttpClient httpClient() {
+		if (!(this.client instanceof HttpClientAware)) {
+			throw new IllegalStateException(
+					"Services can only be listed without their spec with a KubernetesClient that exposes its HTTP client");
+		}
+		return ((HttpClientAware) this.client).getHttpClient();
+	}
+
+	@JsonIgnoreProperties(ignoreUnknown = true)
+	static class MetadataList {
+
+		private ListMeta metadata;
+
+		private List<MetadataItem> items;
+
+		public ListMeta getMetadata() {
+			return this.metadata;
+		}
+
+		public void setMetadata(ListMeta metadata) {
+			this.metadata = metadata;
+		}
+
+		public List<MetadataItem> getItems() {
+			return this.items;
+		}
+
+		public void setItems(List<MetadataItem> items) {
+			this.items = items;
+		}
+
+	}
+
+	@JsonIgnoreProperties(ignoreUnknown = true)
+	static class MetadataItem {
+
+		private ObjectMeta metadata;
+
+		public ObjectMeta getMetadata() {
+			return this.metadata;
+		}
+
+		public void setMetadata(ObjectMeta metadata) {
+			this.metadata = metadata;
+		}
+
+	}
+
+}
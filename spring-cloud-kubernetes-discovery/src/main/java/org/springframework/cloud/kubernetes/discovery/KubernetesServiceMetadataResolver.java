@@ -0,0 +1,256 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import io.fabric8.kubernetes.api.model.EndpointPort;
+import io.fabric8.kubernetes.api.model.EndpointSubset;
+import io.fabric8.kubernetes.api.model.ObjectMeta;
+import io.fabric8.kubernetes.api.model.Service;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Builds the metadata of the {@link KubernetesServiceInstance}s of a service.
+ *
+ * Labels and annotations are projected through the included and excluded keys of
+ * {@link KubernetesDiscoveryProperties.Metadata}, prefixed, and kept as one immutable
+ * map per resource version of the service. The maps extended with the port metadata of
+ * a subset are shared the same way, so instances reference the metadata instead of
+ * each holding a copy. The metadata of a service that has not been resolved for
+ * {@value #IDLE_TIMEOUT_MINUTES} minutes, such as a deleted service, is dropped the
+ * next time the metadata of another service is built.
+ */
+final class KubernetesServiceMetadataResolver {
+
+	private static final Log log = LogFactory
+			.getLog(KubernetesServiceMetadataResolver.class);
+
+	private static final String WILDCARD = "*";
+
+	static final long IDLE_TIMEOUT_MINUTES = 10;
+
+	private static final long IDLE_TIMEOUT_NANOS = TimeUnit.MINUTES
+			.toNanos(IDLE_TIMEOUT_MINUTES);
+
+	private final KubernetesDiscoveryProperties properties;
+
+	private final LongSupplier nanoTime;
+
+	private final ConcurrentMap<String, ServiceMetadata> serviceMetadata = new ConcurrentHashMap<>();
+
+	private volatile long lastEviction;
+
+	KubernetesServiceMetadataResolver(KubernetesDiscoveryProperties properties) {
+		this(properties, System::nanoTime);
+	}
+
+	KubernetesServiceMetadataResolver(KubernetesDiscoveryProperties properties,
+			LongSupplier nanoTime) {
+		this.properties = properties;
+		this.nanoTime = nanoTime;
+		this.lastEviction = nanoTime.getAsLong();
+	}
+
+	/**
+	 * @param service the service the subset belongs to
+	 * @param subset the endpoint subset
+	 * @return the immutable metadata of the instances of the subset
+	 */
+	Map<String, String> resolve(Service service, EndpointSubset subset) {
+		KubernetesDiscoveryProperties.Metadata metadataProps = this.properties
+				.getMetadata();
+		ServiceMetadata metadata = getServiceMetadata(service, metadataProps);
+		if (!metadataProps.isAddPorts()) {
+			return metadata.base;
+		}
+		String portsKey = portsKey(subset.getPorts());
+		if (portsKey.isEmpty()) {
+			return metadata.base;
+		}
+		return metadata.withPorts.computeIfAbsent(portsKey,
+				k -> withPortMetadata(metadata.base, subset, metadataProps));
+	}
+
+	private ServiceMetadata getServiceMetadata(Service service,
+			KubernetesDiscoveryProperties.Metadata metadataProps) {
+		ObjectMeta meta = service.getMetadata();
+		String resourceVersion = meta.getResourceVersion();
+		if (resourceVersion == null) {
+			return new ServiceMetadata(null, buildServiceMetadata(meta, metadataProps),
+					0);
+		}
+		String key = meta.getNamespace() + "/" + meta.getName();
+		long now = this.nanoTime.getAsLong();
+		ServiceMetadata current = this.serviceMetadata.get(key);
+		if (current == null || !resourceVersion.equals(current.resourceVersion)) {
+			// 只在新建条目时清理，删除的服务不会再被解析
+			evictIdle(now);
+			current = new ServiceMetadata(resourceVersion,
+					buildServiceMetadata(meta, metadataProps), now);
+			this.serviceMetadata.put(key, current);
+		}
+		else {
+			current.lastUsed = now;
+		}
+		return current;
+	}
+
+	// 最多每个超时周期扫描一次
+	private void evictIdle(long now) {
+		if (now - this.lastEviction < IDLE_TIMEOUT_NANOS) {
+			return;
+		}
+		this.lastEviction = now;
+		this.serviceMetadata.values()
+				.removeIf(metadata -> now - metadata.lastUsed > IDLE_TIMEOUT_NANOS);
+	}
+
+	/**
+	 * @return the number of services whose metadata is kept
+	 */
+	int size() {
+		return this.serviceMetadata.size();
+	}
+
+	private Map<String, String> buildServiceMetadata(ObjectMeta meta,
+			KubernetesDiscoveryProperties.Metadata metadataProps) {
+		final Map<String, String> result = new HashMap<>();
+		if (metadataProps.isAddLabels()) {
+			// k8s label 标签在元数据中
+			Map<String, String> labelMetadata = project(meta.getLabels(),
+					metadataProps.getLabelsPrefix(), metadataProps);
+			if (log.isDebugEnabled()) {
+				log.debug("Adding label metadata: " + labelMetadata);
+			}
+			result.putAll(labelMetadata);
+		}
+		if (metadataProps.isAddAnnotations()) {
+			// ServiceInstance 中包含k8s 注解, 结果加上前缀
+			Map<String, String> annotationMetadata = project(meta.getAnnotations(),
+					metadataProps.getAnnotationsPrefix(), metadataProps);
+			if (log.isDebugEnabled()) {
+				log.debug("Adding annotation metadata: " + annotationMetadata);
+			}
+			result.putAll(annotationMetadata);
+		}
+		return Collections.unmodifiableMap(result);
+	}
+
+	private Map<String, String> withPortMetadata(Map<String, String> base,
+			EndpointSubset subset, KubernetesDiscoveryProperties.Metadata metadataProps) {
+		String prefix = metadataProps.getPortsPrefix();
+		Map<String, String> portMetadata = new HashMap<>();
+		for (EndpointPort port : subset.getPorts()) {
+			// 过滤端口名不为空的
+			if (!StringUtils.isEmpty(port.getName())) {
+				portMetadata.put(
+						StringUtils.hasText(prefix) ? prefix + port.getName()
+								: port.getName(),
+						Integer.toString(port.getPort()));
+			}
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Adding port metadata: " + portMetadata);
+		}
+		Map<String, String> result = new HashMap<>(base);
+		result.putAll(portMetadata);
+		return Collections.unmodifiableMap(result);
+	}
+
+	private Map<String, String> project(Map<String, String> map, String prefix,
+			KubernetesDiscoveryProperties.Metadata metadataProps) {
+		if (map == null) {
+			return Collections.emptyMap();
+		}
+		Map<String, String> result = new HashMap<>();
+		map.forEach((k, v) -> {
+			if (isIncluded(k, metadataProps)) {
+				result.put(StringUtils.hasText(prefix) ? prefix + k : k, v);
+			}
+		});
+		return result;
+	}
+
+	private static boolean isIncluded(String key,
+			KubernetesDiscoveryProperties.Metadata metadataProps) {
+		Collection<String> included = metadataProps.getIncludedKeys();
+		if (included != null && !included.isEmpty() && !matchesAny(key, included)) {
+			return false;
+		}
+		return !matchesAny(key, metadataProps.getExcludedKeys());
+	}
+
+	private static boolean matchesAny(String key, Collection<String> patterns) {
+		if (patterns == null) {
+			return false;
+		}
+		for (String pattern : patterns) {
+			if (pattern.endsWith(WILDCARD) ? key.startsWith(
+					pattern.substring(0, pattern.length() - WILDCARD.length()))
+					: key.equals(pattern)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String portsKey(List<EndpointPort> ports) {
+		if (ports == null) {
+			return "";
+		}
+		StringBuilder key = new StringBuilder();
+		for (EndpointPort port : ports) {
+			if (!StringUtils.isEmpty(port.getName())) {
+				key.append(port.getName()).append('=').append(port.getPort())
+						.append(',');
+			}
+		}
+		return key.toString();
+	}
+
+	private static final class ServiceMetadata {
+
+		private final String resourceVersion;
+
+		private final Map<String, String> base;
+
+		private final ConcurrentMap<String, Map<String, String>> withPorts = new ConcurrentHashMap<>();
+
+		private volatile long lastUsed;
+
+		ServiceMetadata(String resourceVersion, Map<String, String> base,
+				long lastUsed) {
+			this.resourceVersion = resourceVersion;
+			this.base = base;
+			this.lastUsed = lastUsed;
+		}
+
+	}
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Coalesces concurrent loads of the same key into a single call. The first caller for a
+ * key runs the loader, callers arriving while it is in flight wait for it and share its
+ * result or its exception. Nothing is cached once the call completed.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+final class KubernetesSingleFlight<K, V> {
+
+	private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+	private final UnaryOperator<V> share;
+
+	private final LongAdder executed = new LongAdder();
+
+	private final LongAdder coalesced = new LongAdder();
+
+	/**
+	 * @param share applied to the result handed to waiting callers, for instance to
+	 * give each of them its own copy of a mutable value
+	 */
+	KubernetesSingleFlight(UnaryOperator<V> share) {
+		this.share = share;
+	}
+
+	V execute(K key, Supplier<V> loader) {
+		CompletableFuture<V> call = new CompletableFuture<>();
+		CompletableFuture<V> existing = this.inFlight.putIfAbsent(key, call);
+		if (existing != null) {
+			this.coalesced.increment();
+			return this.share.apply(await(existing));
+		}
+		this.executed.increment();
+		try {
+			V value = loader.get();
+			call.complete(value);
+			return value;
+		}
+		catch (RuntimeException | Error e) {
+			call.completeExceptionally(e);
+			throw e;
+		}
+		finally {
+			this.inFlight.remove(key, call);
+		}
+	}
+
+	/**
+	 * @return the number of loads that were actually run
+	 */
+	long getExecutedCount() {
+		return this.executed.sum();
+	}
+
+	/**
+	 * @return the number of calls that shared the result of a load already in flight
+	 */
+	long getCoalescedCount() {
+		return this.coalesced.sum();
+	}
+
+	private V await(CompletableFuture<V> call) {
+		try {
+			return call.join();
+		}
+		catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
+	}
+
+}
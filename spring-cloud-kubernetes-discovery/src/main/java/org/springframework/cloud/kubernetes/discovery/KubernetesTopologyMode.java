@@ -0,0 +1,38 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+/**
+ * How {@link KubernetesDiscoveryClient} uses the node and zone of instances relative to
+ * the current pod.
+ */
+public enum KubernetesTopologyMode {
+
+	/**
+	 * return instances in the order of the Kubernetes API.
+	 */
+	NONE,
+	/**
+	 * return instances on the same node first, then instances in the same zone.
+	 */
+	ORDER,
+	/**
+	 * like ORDER, but only return the instances in the same zone when there are any.
+	 */
+	FILTER
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+
+import io.fabric8.kubernetes.api.model.Node;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.cloud.kubernetes.PodUtils;
+
+/**
+ * Resolves the zone of Kubernetes nodes and the node and zone of the current pod.
+ *
+ * The zone is read from the {@value #ZONE_LABEL} label of a node, falling back to the
+ * deprecated {@value #LEGACY_ZONE_LABEL} label. Nodes are looked up at most once per
+ * node name and time to live, so resolving the zone of many endpoints on the same nodes
+ * only costs a few API calls.
+ */
+public class KubernetesTopologyResolver {
+
+	/**
+	 * Node label holding the zone of the node.
+	 */
+	public static final String ZONE_LABEL = "topology.kubernetes.io/zone";
+
+	/**
+	 * Deprecated node label holding the zone of the node.
+	 */
+	public static final String LEGACY_ZONE_LABEL = "failure-domain.beta.kubernetes.io/zone";
+
+	/**
+	 * Instance metadata key holding the node of the instance.
+	 */
+	public static final String NODE_METADATA_KEY = "topology.node";
+
+	/**
+	 * Instance metadata key holding the zone of the instance.
+	 */
+	public static final String ZONE_METADATA_KEY = "topology.zone";
+
+	private static final Log log = LogFactory.getLog(KubernetesTopologyResolver.class);
+
+	private final KubernetesClient client;
+
+	private final PodUtils podUtils;
+
+	private final Duration nodeCacheTtl;
+
+	private final LongSupplier nanoTime;
+
+	private final long createdAt;
+
+	private final ConcurrentMap<String, CachedZone> zones = new ConcurrentHashMap<>();
+
+	private volatile String currentNodeName;
+
+	private volatile boolean currentPodResolved;
+
+	public KubernetesTopologyResolver(KubernetesClient client, PodUtils podUtils,
+			Duration nodeCacheTtl) {
+		this(client, podUtils, nodeCacheTtl, System::nanoTime);
+	}
+
+	KubernetesTopologyResolver(KubernetesClient client, PodUtils podUtils,
+			Duration nodeCacheTtl, LongSupplier nanoTime) {
+		this.client = client;
+		this.podUtils = podUtils;
+		this.nodeCacheTtl = nodeCacheTtl;
+		this.nanoTime = nanoTime;
+		this.createdAt = nanoTime.getAsLong();
+	}
+
+	/**
+	 * Changes once per node cache time to live. Results built from resolved zones
+	 * should be rebuilt when it changes, so that zones are looked up again and a failed
+	 * lookup does not stick.
+	 * @return the current generation of the node cache
+	 */
+	public long getGeneration() {
+		return (this.nanoTime.getAsLong() - this.createdAt)
+				/ Math.max(1, this.nodeCacheTtl.toNanos());
+	}
+
+	/**
+	 * @return the name of the node the current pod runs on, or null outside Kubernetes
+	 */
+	public String getCurrentNodeName() {
+		if (!this.currentPodResolved) {
+			Pod pod = this.podUtils != null ? this.podUtils.currentPod().get() : null;
+			if (pod != null && pod.getSpec() != null) {
+				this.currentNodeName = pod.getSpec().getNodeName();
+			}
+			this.currentPodResolved = true;
+		}
+		return this.currentNodeName;
+	}
+
+	/**
+	 * @return the zone of the node the current pod runs on, or null if unknown
+	 */
+	public String getCurrentZone() {
+		return getZone(getCurrentNodeName());
+	}
+
+	/**
+	 * @param nodeName the node name
+	 * @return the zone of the node, or null if unknown
+	 */
+	public String getZone(String nodeName) {
+		if (nodeName == null) {
+			return null;
+		}
+		long now = this.nanoTime.getAsLong();
+		CachedZone cached = this.zones.get(nodeName);
+		if (cached == null || now - cached.resolvedAt > this.nodeCacheTtl.toNanos()) {
+			cached = new CachedZone(lookupZone(nodeName), now);
+			this.zones.put(nodeName, cached);
+		}
+		return cached.zone;
+	}
+
+	private String lookupZone(String nodeName) {
+		try {
+			Node node = this.client.nodes().withName(nodeName).get();
+			if (node == null || node.getMetadata() == null) {
+				return null;
+			}
+			Map<String, String> labels = node.getMetadata().getLabels();
+			if (labels == null) {
+				return null;
+			}
+			String zone = labels.get(ZONE_LABEL);
+			return zone != null ? zone : labels.get(LEGACY_ZONE_LABEL);
+		}
+		catch (Exception e) {
+			// 没有读取node的权限时不影响服务发现
+			log.debug("Could not read the zone of node " + nodeName, e);
+			return null;
+		}
+	}
+
+	private static final class CachedZone {
+
+		private final String zone;
+
+		private final long resolvedAt;
+
+		CachedZone(String zone, long resolvedAt) {
+			this.zone = zone;
+			this.resolvedAt = resolvedAt;
+		}
+
+	}
+
+}
@@ -0,0 +1,424 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+
+import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.ServiceList;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.kubernetes.client.dsl.FilterWatchListDeletable;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * {@link KubernetesDiscoveryCache} that keeps what the API server returned for a time to
+ * live, for clusters where watches are not allowed or do not stay open.
+ *
+ * Each service and the list of all services expire independently, after
+ * {@link KubernetesDiscoveryProperties.Cache#getTtl()} give or take
+ * {@value #JITTER_PERCENT}%, so that services loaded together are not refreshed
+ * together. An expired entry is still returned right away while a single background
+ * refresh runs, unless it expired more than
+ * {@link KubernetesDiscoveryProperties.Cache#getMaxStaleness()} ago, in which case the
+ * lookup waits for fresh data. A failed refresh keeps the stale entry and is retried
+ * after {@link KubernetesDiscoveryProperties.Cache#getRetryDelay()}. At most
+ * {@link KubernetesDiscoveryProperties.Cache#getMaxEntries()} services are kept, the
+ * least recently looked up one is evicted beyond that.
+ */
+public class KubernetesTtlDiscoveryCache implements KubernetesDiscoveryCache {
+
+	static final int JITTER_PERCENT = 10;
+
+	private static final Log log = LogFactory.getLog(KubernetesTtlDiscoveryCache.class);
+
+	private static final String NO_NAMESPACE = "";
+
+	private static final String ALL_SERVICES = "";
+
+	private final KubernetesClient client;
+
+	private final KubernetesDiscoveryProperties properties;
+
+	private final KubernetesClientServicesFunction kubernetesClientServicesFunction;
+
+	private final LongSupplier nanoClock;
+
+	private final ConcurrentMap<String, Entry<ServiceData>> services = new ConcurrentHashMap<>();
+
+	private final Entry<List<Service>> allServices = new Entry<>();
+
+	private final KubernetesSingleFlight<String, Object> loads = new KubernetesSingleFlight<>(
+			UnaryOperator.identity());
+
+	private final ExecutorService executor;
+
+	private volatile KubernetesNamespaceQueries namespaceQueries;
+
+	public KubernetesTtlDiscoveryCache(KubernetesClient client,
+			KubernetesDiscoveryProperties properties,
+			KubernetesClientServicesFunction kubernetesClientServicesFunction) {
+		this(client, properties, kubernetesClientServicesFunction, System::nanoTime);
+	}
+
+	KubernetesTtlDiscoveryCache(KubernetesClient client,
+			KubernetesDiscoveryProperties properties,
+			KubernetesClientServicesFunction kubernetesClientServicesFunction,
+			LongSupplier nanoClock) {
+		this.client = client;
+		this.properties = properties;
+		this.kubernetesClientServicesFunction = kubernetesClientServicesFunction;
+		this.nanoClock = nanoClock;
+		this.executor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "kubernetes-discovery-ttl-cache");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@PreDestroy
+	public void stop() {
+		this.executor.shutdownNow();
+	}
+
+	/**
+	 * @return always true, missing or expired entries are loaded on lookup
+	 */
+	@Override
+	public boolean isSynced() {
+		return true;
+	}
+
+	/**
+	 * @return true if the list of all services is present and fresh enough to be
+	 * returned without waiting for the API server
+	 */
+	@Override
+	public boolean isCached() {
+		return isAnsweredFromMemory(this.allServices);
+	}
+
+	/**
+	 * @param serviceId the name of the service
+	 * @return true if the service is present and fresh enough to be returned without
+	 * waiting for the API server
+	 */
+	@Override
+	public boolean isCached(String serviceId) {
+		Entry<ServiceData> entry = this.services.get(serviceId);
+		return entry != null && isAnsweredFromMemory(entry);
+	}
+
+	@Override
+	public List<Endpoints> getEndpoints(String serviceId) {
+		return serviceData(serviceId).endpoints;
+	}
+
+	@Override
+	public Service getService(String namespace, String serviceId) {
+		Map<String, Service> byNamespace = serviceData(serviceId).services;
+		String ns = namespace != null ? namespace : this.client.getNamespace();
+		if (ns == null) {
+			return byNamespace.values().stream().findFirst().orElse(null);
+		}
+		return byNamespace.get(ns);
+	}
+
+	@Override
+	public List<Service> getServices() {
+		return get(ALL_SERVICES, this.allServices, this::loadServices);
+	}
+
+	/**
+	 * @return the number of services currently cached
+	 */
+	int size() {
+		return this.services.size();
+	}
+
+	private ServiceData serviceData(String serviceId) {
+		Entry<ServiceData> entry = this.services.get(serviceId);
+		if (entry == null) {
+			Entry<ServiceData> created = new Entry<>();
+			entry = this.services.putIfAbsent(serviceId, created);
+			if (entry == null) {
+				entry = created;
+				evictLeastRecentlyUsed(serviceId);
+			}
+		}
+		return get("service/" + serviceId, entry, () -> loadService(serviceId));
+	}
+
+	// 与get的判断一致：未过期或未超过最大陈旧时间的条目不会阻塞调用方
+	private boolean isAnsweredFromMemory(Entry<?> entry) {
+		Loaded<?> loaded = entry.loaded;
+		return loaded != null && this.nanoClock.getAsLong()
+				- loaded.expiresAt <= this.properties.getCache().getMaxStaleness()
+						.toNanos();
+	}
+
+	@SuppressWarnings("unchecked")
+	private <V> V get(String key, Entry<V> entry, Supplier<V> loader) {
+		long now = this.nanoClock.getAsLong();
+		entry.lastAccess = now;
+		Loaded<V> loaded = entry.loaded;
+		if (loaded != null && now - loaded.expiresAt < 0) {
+			return loaded.value;
+		}
+		KubernetesDiscoveryProperties.Cache cache = this.properties.getCache();
+		if (loaded != null
+				&& now - loaded.expiresAt <= cache.getMaxStaleness().toNanos()) {
+			// 过期但未超过最大陈旧时间，先返回旧值，后台只刷新一次
+			if (entry.refreshing.compareAndSet(false, true)) {
+				refreshInBackground(key, entry, loader);
+			}
+			return loaded.value;
+		}
+		return (V) this.loads.execute(key, () -> {
+			V value = loader.get();
+			entry.loaded = loaded(value, cache.getTtl().toNanos());
+			return value;
+		});
+	}
+
+	private <V> void refreshInBackground(String key, Entry<V> entry,
+			Supplier<V> loader) {
+		try {
+			this.executor.execute(() -> {
+				try {
+					entry.loaded = loaded(loader.get(),
+							this.properties.getCache().getTtl().toNanos());
+				}
+				catch (Exception e) {
+					log.warn("Failed to refresh " + key + ", serving stale data", e);
+					Loaded<V> stale = entry.loaded;
+					entry.loaded = new Loaded<>(stale.value,
+							this.nanoClock.getAsLong() + this.properties.getCache()
+									.getRetryDelay().toNanos());
+				}
+				finally {
+					entry.refreshing.set(false);
+				}
+			});
+		}
+		catch (RuntimeException e) {
+			// 已停止时不再刷新
+			entry.refreshing.set(false);
+		}
+	}
+
+	private <V> Loaded<V> loaded(V value, long ttl) {
+		long jitter = ttl * JITTER_PERCENT / 100;
+		long jittered = jitter > 0
+				? ttl - jitter + ThreadLocalRandom.current().nextLong(2 * jitter + 1)
+				: ttl;
+		return new Loaded<>(value, this.nanoClock.getAsLong() + jittered);
+	}
+
+	// 新服务加入时才会超过上限，这里线性扫描的代价可以接受
+	private void evictLeastRecentlyUsed(String added) {
+		int maxEntries = this.properties.getCache().getMaxEntries();
+		while (maxEntries > 0 && this.services.size() > maxEntries) {
+			String eldest = null;
+			long eldestAccess = 0;
+			for (Map.Entry<String, Entry<ServiceData>> candidate : this.services
+					.entrySet()) {
+				long access = candidate.getValue().lastAccess;
+				if (!candidate.getKey().equals(added)
+						&& (eldest == null || access - eldestAccess < 0)) {
+					eldest = candidate.getKey();
+					eldestAccess = access;
+				}
+			}
+			if (eldest == null) {
+				return;
+			}
+			this.services.remove(eldest);
+		}
+	}
+
+	private List<Service> loadServices() {
+		List<Service> result = new ArrayList<>();
+		KubernetesNamespaceQueries queries = namespaceQueries();
+		if (queries != null) {
+			queries.query(this::loadNamespaceServices).forEach(result::addAll);
+			return Collections.unmodifiableList(result);
+		}
+		KubernetesListPager.forEach(
+				this.kubernetesClientServicesFunction.apply(this.client),
+				this.properties.getPageSize(), result::add);
+		return Collections.unmodifiableList(result);
+	}
+
+	// 命名空间列表中的服务按namespace和serviceLabels选择
+	private List<Service> loadNamespaceServices(String namespace) {
+		List<Service> result = new ArrayList<>();
+		FilterWatchListDeletable<Service, ServiceList, Boolean, Watch, Watcher<Service>> operation = this.client
+				.services().inNamespace(namespace);
+		if (!this.properties.getServiceLabels().isEmpty()) {
+			operation = operation.withLabels(this.properties.getServiceLabels());
+		}
+		KubernetesListPager.forEach(operation, this.properties.getPageSize(),
+				(Service service) -> result.add(service));
+		return result;
+	}
+
+	private ServiceData loadService(String serviceId) {
+		KubernetesNamespaceQueries queries = namespaceQueries();
+		if (queries != null) {
+			// 每个命名空间并行加载
+			List<Endpoints> endpoints = new ArrayList<>();
+			Map<String, Service> services = new HashMap<>();
+			for (ServiceData data : queries
+					.query(namespace -> loadService(namespace, serviceId))) {
+				endpoints.addAll(data.endpoints);
+				services.putAll(data.services);
+			}
+			return new ServiceData(Collections.unmodifiableList(endpoints), services);
+		}
+		List<Endpoints> endpoints;
+		Map<String, Service> services = new HashMap<>();
+		if (this.properties.isAllNamespaces()) {
+			endpoints = this.properties.isUseEndpointSlices()
+					? endpointsFromSlices(null, serviceId)
+					: this.client.endpoints().inAnyNamespace()
+							.withField("metadata.name", serviceId).list().getItems();
+			// 每个命名空间的服务都要取到
+			this.client.services().inAnyNamespace().withField("metadata.name", serviceId)
+					.list().getItems()
+					.forEach(service -> services.put(namespaceOf(service), service));
+		}
+		else {
+			endpoints = this.properties.isUseEndpointSlices()
+					? endpointsFromSlices(this.client.getNamespace(), serviceId)
+					: Collections.singletonList(
+							this.client.endpoints().withName(serviceId).get());
+			Service service = this.client.services().withName(serviceId).get();
+			if (service != null) {
+				services.put(namespaceOf(service), service);
+			}
+		}
+		List<Endpoints> present = endpoints.stream().filter(e -> e != null)
+				.collect(Collectors.toList());
+		return new ServiceData(Collections.unmodifiableList(present), services);
+	}
+
+	private ServiceData loadService(String namespace, String serviceId) {
+		List<Endpoints> endpoints = this.properties.isUseEndpointSlices()
+				? endpointsFromSlices(namespace, serviceId)
+				: Collections.singletonList(this.client.endpoints()
+						.inNamespace(namespace).withName(serviceId).get());
+		Map<String, Service> services = new HashMap<>();
+		Service service = this.client.services().inNamespace(namespace)
+				.withName(serviceId).get();
+		if (service != null) {
+			services.put(namespace, service);
+		}
+		return new ServiceData(endpoints.stream().filter(e -> e != null)
+				.collect(Collectors.toList()), services);
+	}
+
+	private KubernetesNamespaceQueries namespaceQueries() {
+		KubernetesNamespaceQueries queries = KubernetesNamespaceQueries
+				.of(this.properties, this.namespaceQueries);
+		this.namespaceQueries = queries;
+		return queries;
+	}
+
+	private List<Endpoints> endpointsFromSlices(String namespace, String serviceId) {
+		Map<String, List<KubernetesEndpointSlice>> byNamespace = new KubernetesEndpointSliceClient(
+				this.client).list(namespace, serviceId).stream()
+						.collect(Collectors.groupingBy(
+								slice -> slice.getMetadata().getNamespace(),
+								TreeMap::new, Collectors.toList()));
+		List<Endpoints> result = new ArrayList<>(byNamespace.size());
+		byNamespace.forEach((ns, slices) -> result
+				.add(KubernetesEndpointSliceClient.toEndpoints(ns, serviceId, slices)));
+		return result;
+	}
+
+	private String namespaceOf(Service service) {
+		String namespace = service.getMetadata().getNamespace();
+		if (namespace == null) {
+			namespace = this.client.getNamespace();
+		}
+		return namespace != null ? namespace : NO_NAMESPACE;
+	}
+
+	/**
+	 * The endpoints of a service and the service itself, by namespace.
+	 */
+	private static final class ServiceData {
+
+		private final List<Endpoints> endpoints;
+
+		private final Map<String, Service> services;
+
+		ServiceData(List<Endpoints> endpoints, Map<String, Service> services) {
+			this.endpoints = endpoints;
+			this.services = services;
+		}
+
+	}
+
+	/**
+	 * A cached value, replaced as a whole when it is loaded again.
+	 */
+	private static final class Entry<V> {
+
+		private final AtomicBoolean refreshing = new AtomicBoolean();
+
+		private volatile Loaded<V> loaded;
+
+		private volatile long lastAccess;
+
+	}
+
+	private static final class Loaded<V> {
+
+		private final V value;
+
+		private final long expiresAt;
+
+		Loaded(V value, long expiresAt) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+
+	}
+
+}
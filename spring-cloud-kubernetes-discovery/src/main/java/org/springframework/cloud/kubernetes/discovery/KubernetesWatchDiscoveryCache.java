@@ -0,0 +1,702 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.model.EndpointsList;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.KubernetesResourceList;
+import io.fabric8.kubernetes.api.model.ObjectMeta;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.ServiceList;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.kubernetes.client.dsl.FilterWatchListDeletable;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * {@link KubernetesDiscoveryCache} that keeps every {@link Service} and
+ * {@link Endpoints} in scope in memory. Each resource type is listed once and then
+ * kept up to date from a watch started at the resource version of that list. When a
+ * watch is closed by the API server the resource type is listed again and a new watch
+ * is started, so the store never drifts from the cluster state for long.
+ *
+ * When {@link KubernetesDiscoveryProperties#isUseEndpointSlices()} is set, EndpointSlices
+ * are watched instead of endpoints and the slices of each service are merged into a
+ * single {@link Endpoints}.
+ *
+ * The initial list happens on a background thread; {@link #isSynced()} reports when
+ * both resource types have been loaded.
+ *
+ * When {@link KubernetesDiscoveryProperties.Cache#getSnapshotFile()} is set, the cache
+ * is written to that file periodically and on shutdown. On the next start the snapshot
+ * is loaded first, so the cache serves instances right away, and the watches resume
+ * from the resource versions stored in the snapshot. If the API server no longer has
+ * those versions the watch is closed and the resource type is listed again as usual.
+ */
+public class KubernetesWatchDiscoveryCache implements KubernetesDiscoveryCache {
+
+	private static final Log log = LogFactory.getLog(KubernetesWatchDiscoveryCache.class);
+
+	private static final String NO_NAMESPACE = "";
+
+	private final KubernetesClient client;
+
+	private final KubernetesDiscoveryProperties properties;
+
+	private final ResourceStore<Service, ServiceList> services;
+
+	private final ResourceStore<Endpoints, EndpointsList> endpoints;
+
+	private final SliceStore slices;
+
+	private final ScheduledExecutorService executor;
+
+	private final AtomicLong changes = new AtomicLong();
+
+	private final AtomicLong writtenChanges = new AtomicLong(-1);
+
+	private volatile boolean stopped;
+
+	public KubernetesWatchDiscoveryCache(KubernetesClient client,
+			KubernetesDiscoveryProperties properties,
+			KubernetesClientServicesFunction kubernetesClientServicesFunction) {
+		this.client = client;
+		this.properties = properties;
+		this.services = new ResourceStore<>("services",
+				() -> kubernetesClientServicesFunction.apply(this.client));
+		this.endpoints = new ResourceStore<>("endpoints", this::endpointsOperation);
+		this.slices = properties.isUseEndpointSlices() ? new SliceStore() : null;
+		this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "kubernetes-discovery-cache");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@PostConstruct
+	public void start() {
+		Path snapshotFile = snapshotFile();
+		if (snapshotFile != null) {
+			readSnapshot(snapshotFile);
+		}
+		this.executor.execute(this.services::resume);
+		if (this.slices != null) {
+			this.executor.execute(this.slices::resume);
+		}
+		else {
+			this.executor.execute(this.endpoints::resume);
+		}
+		if (snapshotFile != null) {
+			long interval = this.properties.getCache().getSnapshotInterval().toMillis();
+			this.executor.scheduleWithFixedDelay(() -> writeSnapshot(snapshotFile),
+					interval, interval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@PreDestroy
+	public void stop() {
+		this.stopped = true;
+		this.services.closeWatch();
+		this.endpoints.closeWatch();
+		if (this.slices != null) {
+			this.slices.closeWatch();
+		}
+		this.executor.shutdownNow();
+		Path snapshotFile = snapshotFile();
+		if (snapshotFile != null) {
+			writeSnapshot(snapshotFile);
+		}
+	}
+
+	@Override
+	public boolean isSynced() {
+		return this.services.synced
+				&& (this.slices != null ? this.slices.synced : this.endpoints.synced);
+	}
+
+	@Override
+	public List<Endpoints> getEndpoints(String serviceId) {
+		if (this.slices != null) {
+			return this.slices.get(serviceId);
+		}
+		return this.endpoints.get(serviceId);
+	}
+
+	@Override
+	public Service getService(String namespace, String serviceId) {
+		Map<String, Service> byNamespace = this.services.store.get(serviceId);
+		if (byNamespace == null) {
+			return null;
+		}
+		String ns = namespace != null ? namespace : this.client.getNamespace();
+		if (ns == null) {
+			return byNamespace.values().stream().findFirst().orElse(null);
+		}
+		return byNamespace.get(ns);
+	}
+
+	@Override
+	public List<Service> getServices() {
+		List<Service> result = new ArrayList<>();
+		this.services.store.values().forEach(m -> result.addAll(m.values()));
+		return result;
+	}
+
+	private Path snapshotFile() {
+		String snapshotFile = this.properties.getCache().getSnapshotFile();
+		return snapshotFile != null && !snapshotFile.isEmpty() ? Paths.get(snapshotFile)
+				: null;
+	}
+
+	private void readSnapshot(Path file) {
+		if (!Files.isRegularFile(file)) {
+			return;
+		}
+		try {
+			KubernetesDiscoveryCacheSnapshot snapshot = KubernetesDiscoveryCacheSnapshot
+					.read(file);
+			if (snapshot.getFormatVersion() != KubernetesDiscoveryCacheSnapshot.FORMAT_VERSION) {
+				log.info("Ignoring discovery cache snapshot " + file
+						+ " written in format " + snapshot.getFormatVersion());
+				return;
+			}
+			if (!snapshotScope().equals(snapshot.getScope())) {
+				log.info("Ignoring discovery cache snapshot " + file
+						+ " written for another scope: " + snapshot.getScope());
+				return;
+			}
+			this.services.restore(snapshot.getServices(),
+					snapshot.getServicesResourceVersion());
+			if (this.slices != null) {
+				this.slices.restore(snapshot.getEndpointSlices(),
+						snapshot.getEndpointSlicesResourceVersion());
+			}
+			else {
+				this.endpoints.restore(snapshot.getEndpoints(),
+						snapshot.getEndpointsResourceVersion());
+			}
+			this.writtenChanges.set(this.changes.get());
+			log.info("Loaded the discovery cache snapshot " + file);
+		}
+		catch (Exception e) {
+			log.warn("Failed to read the discovery cache snapshot " + file
+					+ ", listing from the API server", e);
+		}
+	}
+
+	/**
+	 * Writes the cache to the snapshot file if it is synced and changed since the last
+	 * write.
+	 * @param file the snapshot file
+	 */
+	void writeSnapshot(Path file) {
+		long current = this.changes.get();
+		if (!isSynced() || this.writtenChanges.get() == current) {
+			return;
+		}
+		// 先读版本再读内容：内容可能比版本新，恢复后重放的事件是幂等的，
+		// 反过来则会丢失两者之间的事件
+		KubernetesDiscoveryCacheSnapshot snapshot = new KubernetesDiscoveryCacheSnapshot();
+		snapshot.setScope(snapshotScope());
+		snapshot.setServicesResourceVersion(this.services.resourceVersion);
+		snapshot.setServices(this.services.items());
+		if (this.slices != null) {
+			snapshot.setEndpointSlicesResourceVersion(this.slices.resourceVersion);
+			snapshot.setEndpointSlices(this.slices.items());
+		}
+		else {
+			snapshot.setEndpointsResourceVersion(this.endpoints.resourceVersion);
+			snapshot.setEndpoints(this.endpoints.items());
+		}
+		try {
+			snapshot.write(file);
+			this.writtenChanges.set(current);
+		}
+		catch (IOException e) {
+			log.warn("Failed to write the discovery cache snapshot " + file, e);
+		}
+	}
+
+	/**
+	 * Describes what the cache holds: the cluster, the namespace, the service labels
+	 * and whether slices are used. A snapshot written for another scope is not loaded,
+	 * its resources and resource versions would not match what is watched.
+	 * @return the scope of the cache
+	 */
+	String snapshotScope() {
+		String namespace = this.properties.isAllNamespaces() ? "*"
+				: this.client.getNamespace();
+		return "cluster=" + this.client.getMasterUrl() + ",namespace=" + namespace
+				+ ",labels=" + new TreeMap<>(this.properties.getServiceLabels())
+				+ ",slices=" + this.properties.isUseEndpointSlices();
+	}
+
+	private FilterWatchListDeletable<Endpoints, EndpointsList, Boolean, Watch, Watcher<Endpoints>> endpointsOperation() {
+		if (this.properties.isAllNamespaces()) {
+			return this.client.endpoints().inAnyNamespace();
+		}
+		return this.client.endpoints();
+	}
+
+	private String slicesNamespace() {
+		return this.properties.isAllNamespaces() ? null : this.client.getNamespace();
+	}
+
+	private static int size(Map<String, ? extends Map<String, ?>> store) {
+		int size = 0;
+		for (Map<String, ?> byNamespace : store.values()) {
+			size += byNamespace.size();
+		}
+		return size;
+	}
+
+	private static String namespaceOf(HasMetadata resource) {
+		return namespaceOf(resource.getMetadata());
+	}
+
+	private static String namespaceOf(ObjectMeta metadata) {
+		String namespace = metadata.getNamespace();
+		return namespace != null ? namespace : NO_NAMESPACE;
+	}
+
+	/**
+	 * Resources of a single kind indexed by name and then by namespace, kept in sync
+	 * through list and watch.
+	 */
+	private final class ResourceStore<T extends HasMetadata, L extends KubernetesResourceList<T>>
+			implements Watcher<T> {
+
+		private final String kind;
+
+		private final Supplier<FilterWatchListDeletable<T, L, Boolean, Watch, Watcher<T>>> operation;
+
+		private volatile ConcurrentMap<String, ConcurrentMap<String, T>> store = new ConcurrentHashMap<>();
+
+		private volatile Watch watch;
+
+		private volatile boolean synced;
+
+		private volatile String resourceVersion;
+
+		ResourceStore(String kind,
+				Supplier<FilterWatchListDeletable<T, L, Boolean, Watch, Watcher<T>>> operation) {
+			this.kind = kind;
+			this.operation = operation;
+		}
+
+		List<T> get(String name) {
+			Map<String, T> byNamespace = this.store.get(name);
+			if (byNamespace == null) {
+				return Collections.emptyList();
+			}
+			return new ArrayList<>(byNamespace.values());
+		}
+
+		List<T> items() {
+			List<T> result = new ArrayList<>();
+			this.store.values().forEach(byNamespace -> result.addAll(byNamespace.values()));
+			return result;
+		}
+
+		void restore(List<T> items, String resourceVersion) {
+			if (items == null || resourceVersion == null) {
+				return;
+			}
+			ConcurrentMap<String, ConcurrentMap<String, T>> restored = new ConcurrentHashMap<>();
+			for (T item : items) {
+				restored.computeIfAbsent(item.getMetadata().getName(),
+						k -> new ConcurrentHashMap<>()).put(namespaceOf(item), item);
+			}
+			this.store = restored;
+			this.resourceVersion = resourceVersion;
+			this.synced = true;
+		}
+
+		/**
+		 * Watches from the resource version restored from a snapshot, or lists and
+		 * watches if there is none or the watch cannot be started.
+		 */
+		void resume() {
+			String restored = this.resourceVersion;
+			if (restored == null || KubernetesWatchDiscoveryCache.this.stopped) {
+				listAndWatch();
+				return;
+			}
+			try {
+				this.watch = this.operation.get().watch(restored, this);
+				log.debug("Resumed watching " + this.kind
+						+ " from resource version " + restored);
+			}
+			catch (Exception e) {
+				log.info("Could not resume watching " + this.kind
+						+ " from resource version " + restored + ", listing again", e);
+				listAndWatch();
+			}
+		}
+
+		void listAndWatch() {
+			if (KubernetesWatchDiscoveryCache.this.stopped) {
+				return;
+			}
+			try {
+				closeWatch();
+				ConcurrentMap<String, ConcurrentMap<String, T>> fresh = new ConcurrentHashMap<>();
+				String resourceVersion = KubernetesListPager.forEach(
+						this.operation.get(),
+						KubernetesWatchDiscoveryCache.this.properties.getPageSize(),
+						(T item) -> fresh
+								.computeIfAbsent(item.getMetadata().getName(),
+										k -> new ConcurrentHashMap<>())
+								.put(namespaceOf(item), item));
+				this.store = fresh;
+				this.resourceVersion = resourceVersion;
+				KubernetesWatchDiscoveryCache.this.changes.incrementAndGet();
+				this.watch = resourceVersion != null
+						? this.operation.get().watch(resourceVersion, this)
+						: this.operation.get().watch(this);
+				this.synced = true;
+				if (log.isDebugEnabled()) {
+					log.debug("Loaded " + size(fresh) + " " + this.kind
+							+ " into the discovery cache, watching from resource version "
+							+ resourceVersion);
+				}
+			}
+			catch (Exception e) {
+				log.warn("Failed to list and watch " + this.kind
+						+ ", retrying in " + retryDelay() + "ms", e);
+				scheduleRelist();
+			}
+		}
+
+		void closeWatch() {
+			Watch current = this.watch;
+			this.watch = null;
+			if (current != null) {
+				try {
+					current.close();
+				}
+				catch (Exception e) {
+					log.debug("Error while closing the " + this.kind + " watch", e);
+				}
+			}
+		}
+
+		@Override
+		public void eventReceived(Action action, T resource) {
+			String name = resource.getMetadata().getName();
+			String namespace = namespaceOf(resource);
+			switch (action) {
+			case ADDED:
+			case MODIFIED:
+				this.store.computeIfAbsent(name, k -> new ConcurrentHashMap<>())
+						.put(namespace, resource);
+				break;
+			case DELETED:
+				this.store.computeIfPresent(name, (k, byNamespace) -> {
+					byNamespace.remove(namespace);
+					return byNamespace.isEmpty() ? null : byNamespace;
+				});
+				break;
+			default:
+				log.warn("Received " + action + " event for " + this.kind + " "
+						+ namespace + "/" + name);
+				return;
+			}
+			this.resourceVersion = resource.getMetadata().getResourceVersion();
+			KubernetesWatchDiscoveryCache.this.changes.incrementAndGet();
+		}
+
+		@Override
+		public void onClose(KubernetesClientException cause) {
+			if (KubernetesWatchDiscoveryCache.this.stopped) {
+				return;
+			}
+			log.debug("The " + this.kind + " watch was closed, listing again", cause);
+			scheduleRelist();
+		}
+
+		private void scheduleRelist() {
+			if (!KubernetesWatchDiscoveryCache.this.stopped) {
+				KubernetesWatchDiscoveryCache.this.executor.schedule(this::listAndWatch,
+						retryDelay(), TimeUnit.MILLISECONDS);
+			}
+		}
+
+		private long retryDelay() {
+			return KubernetesWatchDiscoveryCache.this.properties.getCache()
+					.getRetryDelay().toMillis();
+		}
+
+	}
+
+	/**
+	 * EndpointSlices indexed by service name, namespace and slice name. A slice event
+	 * only merges the slices of its own service again, the merged {@link Endpoints} of
+	 * every other service are left untouched.
+	 */
+	private final class SliceStore implements Watcher<KubernetesEndpointSlice> {
+
+		private final KubernetesEndpointSliceClient sliceClient = new KubernetesEndpointSliceClient(
+				KubernetesWatchDiscoveryCache.this.client);
+
+		private volatile ConcurrentMap<String, ConcurrentMap<String, ServiceSlices>> store = new ConcurrentHashMap<>();
+
+		private volatile Watch watch;
+
+		private volatile boolean synced;
+
+		private volatile String resourceVersion;
+
+		List<Endpoints> get(String serviceId) {
+			Map<String, ServiceSlices> byNamespace = this.store.get(serviceId);
+			if (byNamespace == null) {
+				return Collections.emptyList();
+			}
+			List<Endpoints> result = new ArrayList<>(byNamespace.size());
+			for (ServiceSlices serviceSlices : byNamespace.values()) {
+				result.add(serviceSlices.merged);
+			}
+			return result;
+		}
+
+		List<KubernetesEndpointSlice> items() {
+			List<KubernetesEndpointSlice> result = new ArrayList<>();
+			this.store.values().forEach(byNamespace -> byNamespace.values()
+					.forEach(serviceSlices -> result.addAll(serviceSlices.slices())));
+			return result;
+		}
+
+		void restore(List<KubernetesEndpointSlice> items, String resourceVersion) {
+			if (items == null || resourceVersion == null) {
+				return;
+			}
+			ConcurrentMap<String, ConcurrentMap<String, ServiceSlices>> restored = new ConcurrentHashMap<>();
+			for (KubernetesEndpointSlice slice : items) {
+				String serviceName = slice.getServiceName();
+				if (serviceName != null) {
+					restored.computeIfAbsent(serviceName, k -> new ConcurrentHashMap<>())
+							.computeIfAbsent(namespaceOf(slice.getMetadata()),
+									ns -> new ServiceSlices(ns, serviceName))
+							.put(slice);
+				}
+			}
+			this.store = restored;
+			this.resourceVersion = resourceVersion;
+			this.synced = true;
+		}
+
+		void resume() {
+			String restored = this.resourceVersion;
+			if (restored == null || KubernetesWatchDiscoveryCache.this.stopped) {
+				listAndWatch();
+				return;
+			}
+			try {
+				this.watch = this.sliceClient.watch(slicesNamespace(), restored, this);
+				log.debug("Resumed watching endpoint slices from resource version "
+						+ restored);
+			}
+			catch (Exception e) {
+				log.info("Could not resume watching endpoint slices from resource version "
+						+ restored + ", listing again", e);
+				listAndWatch();
+			}
+		}
+
+		void listAndWatch() {
+			if (KubernetesWatchDiscoveryCache.this.stopped) {
+				return;
+			}
+			try {
+				closeWatch();
+				String namespace = slicesNamespace();
+				ConcurrentMap<String, ConcurrentMap<String, ServiceSlices>> fresh = new ConcurrentHashMap<>();
+				String resourceVersion = this.sliceClient.forEach(namespace,
+						KubernetesWatchDiscoveryCache.this.properties.getPageSize(),
+						slice -> {
+							String serviceName = slice.getServiceName();
+							if (serviceName != null) {
+								fresh.computeIfAbsent(serviceName,
+										k -> new ConcurrentHashMap<>())
+										.computeIfAbsent(namespaceOf(slice.getMetadata()),
+												ns -> new ServiceSlices(ns, serviceName))
+										.put(slice);
+							}
+						});
+				this.store = fresh;
+				this.resourceVersion = resourceVersion;
+				KubernetesWatchDiscoveryCache.this.changes.incrementAndGet();
+				this.watch = this.sliceClient.watch(namespace, resourceVersion, this);
+				this.synced = true;
+				if (log.isDebugEnabled()) {
+					log.debug("Loaded the endpoint slices of " + size(fresh)
+							+ " services into the discovery cache, watching from resource version "
+							+ resourceVersion);
+				}
+			}
+			catch (Exception e) {
+				log.warn("Failed to list and watch endpoint slices, retrying in "
+						+ retryDelay() + "ms", e);
+				scheduleRelist();
+			}
+		}
+
+		void closeWatch() {
+			Watch current = this.watch;
+			this.watch = null;
+			if (current != null) {
+				try {
+					current.close();
+				}
+				catch (Exception e) {
+					log.debug("Error while closing the endpoint slices watch", e);
+				}
+			}
+		}
+
+		@Override
+		public void eventReceived(Action action, KubernetesEndpointSlice slice) {
+			String serviceName = slice.getServiceName();
+			if (serviceName == null) {
+				return;
+			}
+			String namespace = namespaceOf(slice.getMetadata());
+			switch (action) {
+			case ADDED:
+			case MODIFIED:
+				this.store.computeIfAbsent(serviceName, k -> new ConcurrentHashMap<>())
+						.computeIfAbsent(namespace,
+								ns -> new ServiceSlices(ns, serviceName))
+						.put(slice);
+				break;
+			case DELETED:
+				this.store.computeIfPresent(serviceName, (k, byNamespace) -> {
+					byNamespace.computeIfPresent(namespace,
+							(ns, serviceSlices) -> serviceSlices.remove(slice) ? null
+									: serviceSlices);
+					return byNamespace.isEmpty() ? null : byNamespace;
+				});
+				break;
+			default:
+				log.warn("Received " + action + " event for endpoint slice " + namespace
+						+ "/" + slice.getMetadata().getName());
+				return;
+			}
+			this.resourceVersion = slice.getMetadata().getResourceVersion();
+			KubernetesWatchDiscoveryCache.this.changes.incrementAndGet();
+		}
+
+		@Override
+		public void onClose(KubernetesClientException cause) {
+			if (KubernetesWatchDiscoveryCache.this.stopped) {
+				return;
+			}
+			// API server正常结束watch时从最后的版本继续，过期(410)或出错时重新list
+			if (cause == null) {
+				log.debug("The endpoint slices watch was closed, watching again");
+				resume();
+				return;
+			}
+			log.debug("The endpoint slices watch was closed, listing again", cause);
+			scheduleRelist();
+		}
+
+		private void scheduleRelist() {
+			if (!KubernetesWatchDiscoveryCache.this.stopped) {
+				KubernetesWatchDiscoveryCache.this.executor.schedule(this::listAndWatch,
+						retryDelay(), TimeUnit.MILLISECONDS);
+			}
+		}
+
+		private long retryDelay() {
+			return KubernetesWatchDiscoveryCache.this.properties.getCache()
+					.getRetryDelay().toMillis();
+		}
+
+	}
+
+	/**
+	 * The slices of a service in one namespace, merged into a single {@link Endpoints}.
+	 */
+	private static final class ServiceSlices {
+
+		private final String namespace;
+
+		private final String serviceName;
+
+		private final Map<String, KubernetesEndpointSlice> slices = new HashMap<>();
+
+		private volatile Endpoints merged;
+
+		ServiceSlices(String namespace, String serviceName) {
+			this.namespace = namespace;
+			this.serviceName = serviceName;
+		}
+
+		synchronized List<KubernetesEndpointSlice> slices() {
+			return new ArrayList<>(this.slices.values());
+		}
+
+		synchronized void put(KubernetesEndpointSlice slice) {
+			this.slices.put(slice.getMetadata().getName(), slice);
+			merge();
+		}
+
+		/**
+		 * @param slice the deleted slice
+		 * @return true if the service has no slices left
+		 */
+		synchronized boolean remove(KubernetesEndpointSlice slice) {
+			this.slices.remove(slice.getMetadata().getName());
+			merge();
+			return this.slices.isEmpty();
+		}
+
+		private void merge() {
+			this.merged = KubernetesEndpointSliceClient.toEndpoints(
+					NO_NAMESPACE.equals(this.namespace) ? null : this.namespace,
+					this.serviceName, this.slices.values());
+		}
+
+	}
+
+}
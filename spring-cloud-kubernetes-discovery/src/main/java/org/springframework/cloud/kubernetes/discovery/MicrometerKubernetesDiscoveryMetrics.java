@@ -0,0 +1,167 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * {@link KubernetesDiscoveryMetrics} backed by a Micrometer {@link MeterRegistry}.
+ *
+ * Meters are created once per operation or service and then looked up from a map, so
+ * recording on the lookup path costs a map read and an increment.
+ */
+public class MicrometerKubernetesDiscoveryMetrics implements KubernetesDiscoveryMetrics {
+
+	/**
+	 * Timer of the calls to the Kubernetes API server, tagged by operation.
+	 */
+	public static final String API_REQUESTS = "kubernetes.discovery.api.requests";
+
+	/**
+	 * Counter of the failed calls to the Kubernetes API server, tagged by operation and
+	 * exception.
+	 */
+	public static final String API_ERRORS = "kubernetes.discovery.api.errors";
+
+	/**
+	 * Distribution of the number of instances returned, tagged by service.
+	 */
+	public static final String INSTANCES = "kubernetes.discovery.instances";
+
+	/**
+	 * Counter of the lookups answered from the cache or not, tagged by result.
+	 */
+	public static final String CACHE_LOOKUPS = "kubernetes.discovery.cache.lookups";
+
+	/**
+	 * Gauge of the number of endpoints in the catalog.
+	 */
+	public static final String CATALOG_SIZE = "kubernetes.discovery.catalog.size";
+
+	/**
+	 * Gauge of the time since the catalog was last refreshed successfully.
+	 */
+	public static final String CATALOG_REFRESH_AGE = "kubernetes.discovery.catalog.refresh.age";
+
+	private static final long NEVER = Long.MIN_VALUE;
+
+	private final MeterRegistry registry;
+
+	private final Clock clock;
+
+	private final ConcurrentMap<String, Timer> apiRequests = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<String, DistributionSummary> instances = new ConcurrentHashMap<>();
+
+	private final Counter cacheHits;
+
+	private final Counter cacheMisses;
+
+	private final AtomicInteger catalogSize = new AtomicInteger();
+
+	private volatile long lastCatalogRefresh = NEVER;
+
+	public MicrometerKubernetesDiscoveryMetrics(MeterRegistry registry) {
+		this.registry = registry;
+		this.clock = registry.config().clock();
+		this.cacheHits = Counter.builder(CACHE_LOOKUPS).tag("result", "hit")
+				.description("Instance lookups answered from the discovery cache")
+				.register(registry);
+		this.cacheMisses = Counter.builder(CACHE_LOOKUPS).tag("result", "miss")
+				.description("Instance lookups answered from the discovery cache")
+				.register(registry);
+		Gauge.builder(CATALOG_SIZE, this.catalogSize, AtomicInteger::get)
+				.description("Number of endpoints in the catalog").register(registry);
+		TimeGauge.builder(CATALOG_REFRESH_AGE, this, TimeUnit.NANOSECONDS,
+				MicrometerKubernetesDiscoveryMetrics::catalogRefreshAge)
+				.description("Time since the catalog was last refreshed successfully")
+				.register(registry);
+	}
+
+	@Override
+	public <T> T recordApiCall(String operation, Supplier<T> call) {
+		long start = this.clock.monotonicTime();
+		try {
+			return call.get();
+		}
+		catch (RuntimeException e) {
+			Counter.builder(API_ERRORS).tag("operation", operation)
+					.tag("exception", e.getClass().getSimpleName())
+					.description("Failed calls to the Kubernetes API server")
+					.register(this.registry).increment();
+			throw e;
+		}
+		finally {
+			apiRequests(operation).record(this.clock.monotonicTime() - start,
+					TimeUnit.NANOSECONDS);
+		}
+	}
+
+	@Override
+	public void recordInstances(String serviceId, int count) {
+		DistributionSummary summary = this.instances.get(serviceId);
+		if (summary == null) {
+			summary = this.instances.computeIfAbsent(serviceId,
+					service -> DistributionSummary.builder(INSTANCES)
+							.tag("service", service)
+							.description("Instances returned for a service")
+							.register(this.registry));
+		}
+		summary.record(count);
+	}
+
+	@Override
+	public void recordCacheLookup(boolean hit) {
+		(hit ? this.cacheHits : this.cacheMisses).increment();
+	}
+
+	@Override
+	public void recordCatalogRefresh(int size) {
+		this.catalogSize.set(size);
+		this.lastCatalogRefresh = this.clock.monotonicTime();
+	}
+
+	// 先get再computeIfAbsent，已有的meter不加锁
+	private Timer apiRequests(String operation) {
+		Timer timer = this.apiRequests.get(operation);
+		if (timer == null) {
+			timer = this.apiRequests.computeIfAbsent(operation,
+					op -> Timer.builder(API_REQUESTS).tag("operation", op)
+							.description("Calls to the Kubernetes API server")
+							.register(this.registry));
+		}
+		return timer;
+	}
+
+	private double catalogRefreshAge() {
+		long last = this.lastCatalogRefresh;
+		return last == NEVER ? Double.NaN : this.clock.monotonicTime() - last;
+	}
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.util.Map;
+
+import org.springframework.boot.autoconfigure.condition.ConditionMessage;
+import org.springframework.boot.autoconfigure.condition.ConditionOutcome;
+import org.springframework.boot.autoconfigure.condition.SpringBootCondition;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+
+/**
+ * Condition behind {@link ConditionalOnKubernetesDiscoveryCacheMode}.
+ */
+class OnKubernetesDiscoveryCacheModeCondition extends SpringBootCondition {
+
+	private static final String PROPERTY = "spring.cloud.kubernetes.discovery.cache.mode";
+
+	@Override
+	public ConditionOutcome getMatchOutcome(ConditionContext context,
+			AnnotatedTypeMetadata metadata) {
+		Map<String, Object> attributes = metadata.getAnnotationAttributes(
+				ConditionalOnKubernetesDiscoveryCacheMode.class.getName());
+		KubernetesDiscoveryCacheMode required = (KubernetesDiscoveryCacheMode) attributes
+				.get("value");
+		// 与配置属性相同的宽松绑定
+		KubernetesDiscoveryCacheMode mode = Binder.get(context.getEnvironment())
+				.bind(PROPERTY, KubernetesDiscoveryCacheMode.class)
+				.orElse(KubernetesDiscoveryCacheMode.NONE);
+		ConditionMessage.Builder message = ConditionMessage
+				.forCondition(ConditionalOnKubernetesDiscoveryCacheMode.class, required);
+		if (mode == required) {
+			return ConditionOutcome.match(message.because(PROPERTY + " is " + mode));
+		}
+		return ConditionOutcome.noMatch(message.because(PROPERTY + " is " + mode));
+	}
+
+}
@@ -16,6 +16,7 @@
 
 package org.springframework.cloud.kubernetes.discovery;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -23,14 +24,21 @@ import java.util.stream.Collectors;
 
 import io.fabric8.kubernetes.api.model.DoneableEndpoints;
 import io.fabric8.kubernetes.api.model.EndpointAddress;
+import io.fabric8.kubernetes.api.model.EndpointPort;
 import io.fabric8.kubernetes.api.model.EndpointSubset;
 import io.fabric8.kubernetes.api.model.Endpoints;
 import io.fabric8.kubernetes.api.model.EndpointsList;
+import io.fabric8.kubernetes.api.model.ListMeta;
+import io.fabric8.kubernetes.api.model.ObjectMeta;
 import io.fabric8.kubernetes.api.model.ObjectReference;
 import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
 import io.fabric8.kubernetes.client.dsl.MixedOperation;
 import io.fabric8.kubernetes.client.dsl.Resource;
+import io.fabric8.kubernetes.client.server.mock.KubernetesServer;
 import org.junit.Before;
+import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
@@ -40,11 +48,17 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.cloud.kubernetes.discovery.KubernetesInstancesChangedEvent.ServiceInstancesChange;
+import org.springframework.context.ApplicationEvent;
 import org.springframework.context.ApplicationEventPublisher;
 
 import static java.util.Arrays.stream;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -54,6 +68,11 @@ import static org.mockito.Mockito.when;
 @RunWith(MockitoJUnitRunner.class)
 public class KubernetesCatalogWatchTest {
 
+	private static final String SLICES_PATH = "/apis/discovery.k8s.io/v1/namespaces/test/endpointslices";
+
+	@ClassRule
+	public static KubernetesServer mockServer = new KubernetesServer();
+
 	@Mock
 	private KubernetesClient kubernetesClient;
 
@@ -66,6 +85,9 @@ public class KubernetesCatalogWatchTest {
 	@Captor
 	private ArgumentCaptor<HeartbeatEvent> heartbeatEventArgumentCaptor;
 
+	@Captor
+	private ArgumentCaptor<Watcher<Endpoints>> watcherArgumentCaptor;
+
 	@InjectMocks
 	private KubernetesCatalogWatch underTest;
 
@@ -172,6 +194,222 @@ public class KubernetesCatalogWatchTest {
 		verify(this.applicationEventPublisher).publishEvent(any(HeartbeatEvent.class));
 	}
 
+	@Test
+	public void testEventModePublishesIncreasingStateOnChange() {
+		KubernetesDiscoveryProperties properties = new KubernetesDiscoveryProperties();
+		properties.getCatalogServicesWatch().setMode(KubernetesCatalogWatchMode.EVENT);
+		KubernetesCatalogWatch eventWatch = new KubernetesCatalogWatch(
+				this.kubernetesClient, properties);
+		eventWatch.setApplicationEventPublisher(this.applicationEventPublisher);
+
+		EndpointsList endpoints = createSingleEndpointEndpointListByPodName("api-pod");
+		endpoints.getItems().get(0).setMetadata(createMetadata("api-service"));
+		endpoints.setMetadata(new ListMeta());
+		endpoints.getMetadata().setResourceVersion("1");
+		when(this.endpointsOperation.list()).thenReturn(endpoints);
+		when(this.endpointsOperation.watch(eq("1"),
+				this.watcherArgumentCaptor.capture())).thenReturn(mock(Watch.class));
+		when(this.kubernetesClient.endpoints()).thenReturn(this.endpointsOperation);
+
+		try {
+			eventWatch.start();
+			verify(this.applicationEventPublisher, timeout(5000))
+					.publishEvent(this.heartbeatEventArgumentCaptor.capture());
+			assertThat(this.heartbeatEventArgumentCaptor.getValue().getValue())
+					.isEqualTo(1L);
+
+			Watcher<Endpoints> watcher = this.watcherArgumentCaptor.getValue();
+			Endpoints unchanged = createEndpointsByPodName("api-pod");
+			unchanged.setMetadata(createMetadata("api-service"));
+			watcher.eventReceived(Watcher.Action.MODIFIED, unchanged);
+
+			Endpoints scaled = new Endpoints();
+			scaled.setSubsets(createSubsetsByPodName("api-pod", "api-pod-2"));
+			scaled.setMetadata(createMetadata("api-service"));
+			watcher.eventReceived(Watcher.Action.MODIFIED, scaled);
+
+			verify(this.applicationEventPublisher, times(2))
+					.publishEvent(this.heartbeatEventArgumentCaptor.capture());
+			assertThat(this.heartbeatEventArgumentCaptor.getValue().getValue())
+					.isEqualTo(2L);
+		}
+		finally {
+			eventWatch.stop();
+		}
+	}
+
+	@Test
+	public void testInstancesChangedEventListsAddedRemovedAndChangedInstances() {
+		EndpointsList first = new EndpointsList();
+		first.setItems(Collections.singletonList(createEndpoints("api-service",
+				createAddress("api-pod", "uid-1", "10.0.0.1"),
+				createAddress("other-pod", "uid-2", "10.0.0.2"))));
+		EndpointsList second = new EndpointsList();
+		second.setItems(Collections.singletonList(createEndpoints("api-service",
+				createAddress("api-pod", "uid-1", "10.0.0.1"),
+				createAddress("other-pod", "uid-2", "10.0.0.5"),
+				createAddress("new-pod", "uid-3", "10.0.0.3"))));
+		EndpointsList third = new EndpointsList();
+		third.setItems(Collections.singletonList(createEndpoints("api-service",
+				createAddress("api-pod", "uid-1", "10.0.0.1"),
+				createAddress("new-pod", "uid-3", "10.0.0.3"))));
+		when(this.endpointsOperation.list()).thenReturn(first).thenReturn(second)
+				.thenReturn(third);
+		when(this.kubernetesClient.endpoints()).thenReturn(this.endpointsOperation);
+		ArgumentCaptor<ApplicationEvent> captor = ArgumentCaptor
+				.forClass(ApplicationEvent.class);
+
+		this.underTest.catalogServicesWatch();
+		this.underTest.catalogServicesWatch();
+		this.underTest.catalogServicesWatch();
+
+		// every poll changes the pod names, so each change follows a heartbeat
+		verify(this.applicationEventPublisher, times(6)).publishEvent(captor.capture());
+		List<ServiceInstancesChange> changes = captor.getAllValues().stream()
+				.filter(KubernetesInstancesChangedEvent.class::isInstance)
+				.map(event -> ((KubernetesInstancesChangedEvent) event).getChanges()
+						.get(0))
+				.collect(Collectors.toList());
+		assertThat(changes).hasSize(3);
+		assertThat(changes.get(0).getServiceId()).isEqualTo("api-service");
+		assertThat(changes.get(0).getNamespace()).isEqualTo("test");
+		assertThat(changes.get(0).getAdded()).containsExactly("uid-1", "uid-2");
+		assertThat(changes.get(1).getAdded()).containsExactly("uid-3");
+		assertThat(changes.get(1).getChanged()).containsExactly("uid-2");
+		assertThat(changes.get(1).getRemoved()).isEmpty();
+		assertThat(changes.get(2).getRemoved()).containsExactly("uid-2");
+		assertThat(changes.get(2).getAdded()).isEmpty();
+		assertThat(changes.get(2).getChanged()).isEmpty();
+	}
+
+	@Test
+	public void testEventModeDoesNotPoll() {
+		KubernetesDiscoveryProperties properties = new KubernetesDiscoveryProperties();
+		properties.getCatalogServicesWatch().setMode(KubernetesCatalogWatchMode.EVENT);
+		KubernetesCatalogWatch eventWatch = new KubernetesCatalogWatch(
+				this.kubernetesClient, properties);
+		eventWatch.setApplicationEventPublisher(this.applicationEventPublisher);
+
+		eventWatch.catalogServicesWatch();
+
+		verify(this.kubernetesClient, times(0)).endpoints();
+	}
+
+	@Test
+	public void testEventModeSkipsFqdnSlicesWhenListing() {
+		mockServer.expect().get().withPath(SLICES_PATH).andReturn(200,
+				sliceList(slice("api-ipv4", "IPv4", endpoint("10.0.0.1", true, "api-pod")),
+						slice("api-fqdn", "FQDN",
+								endpoint("api-pod.api.test", true, "api-pod"))))
+				.once();
+		KubernetesDiscoveryProperties properties = new KubernetesDiscoveryProperties();
+		properties.setUseEndpointSlices(true);
+		properties.getCatalogServicesWatch().setMode(KubernetesCatalogWatchMode.EVENT);
+		// the watch is not served, it must not be retried during the test
+		properties.getCatalogServicesWatch().setRetryDelay(Duration.ofMinutes(1));
+		KubernetesCatalogWatch eventWatch = new KubernetesCatalogWatch(
+				mockServer.getClient(), properties);
+		eventWatch.setApplicationEventPublisher(this.applicationEventPublisher);
+		ArgumentCaptor<ApplicationEvent> captor = ArgumentCaptor
+				.forClass(ApplicationEvent.class);
+
+		try {
+			eventWatch.start();
+			// the heartbeat is followed by the instances of the listed slices
+			verify(this.applicationEventPublisher, timeout(5000).times(2))
+					.publishEvent(captor.capture());
+		}
+		finally {
+			eventWatch.stop();
+		}
+
+		List<ServiceInstancesChange> changes = ((KubernetesInstancesChangedEvent) captor
+				.getAllValues().get(1)).getChanges();
+		assertThat(changes).hasSize(1);
+		assertThat(changes.get(0).getServiceId()).isEqualTo("api-service");
+		assertThat(changes.get(0).getAdded()).containsExactly("10.0.0.1");
+	}
+
+	@Test
+	public void testNotReadySliceEndpointsAreNotCatalogPods() {
+		mockServer.expect().get().withPath(SLICES_PATH)
+				.andReturn(200, sliceList(
+						slice("api-1", "IPv4", endpoint("10.0.0.1", true, "api-pod"))))
+				.once();
+		mockServer.expect().get().withPath(SLICES_PATH)
+				.andReturn(200, sliceList(slice("api-1", "IPv4",
+						endpoint("10.0.0.1", true, "api-pod"),
+						endpoint("10.0.0.2", false, "starting-pod"))))
+				.once();
+		KubernetesDiscoveryProperties properties = new KubernetesDiscoveryProperties();
+		properties.setUseEndpointSlices(true);
+		KubernetesCatalogWatch sliceWatch = new KubernetesCatalogWatch(
+				mockServer.getClient(), properties);
+		sliceWatch.setApplicationEventPublisher(this.applicationEventPublisher);
+		ArgumentCaptor<ApplicationEvent> captor = ArgumentCaptor
+				.forClass(ApplicationEvent.class);
+
+		sliceWatch.catalogServicesWatch();
+		// a pod that is not ready yet neither changes the pods nor the instances
+		sliceWatch.catalogServicesWatch();
+
+		verify(this.applicationEventPublisher, times(2)).publishEvent(captor.capture());
+		assertThat(captor.getAllValues().get(0)).isInstanceOf(HeartbeatEvent.class);
+		assertThat(((HeartbeatEvent) captor.getAllValues().get(0)).getValue())
+				.isEqualTo(Collections.singletonList("api-pod"));
+		assertThat(captor.getAllValues().get(1))
+				.isInstanceOf(KubernetesInstancesChangedEvent.class);
+	}
+
+	private static String sliceList(String... slices) {
+		return "{\"kind\":\"EndpointSliceList\",\"metadata\":{\"resourceVersion\":\"100\"},"
+				+ "\"items\":[" + String.join(",", slices) + "]}";
+	}
+
+	private static String slice(String name, String addressType, String... endpoints) {
+		return "{\"metadata\":{\"name\":\"" + name + "\",\"namespace\":\"test\","
+				+ "\"resourceVersion\":\"1\","
+				+ "\"labels\":{\"kubernetes.io/service-name\":\"api-service\"}},"
+				+ "\"addressType\":\"" + addressType + "\",\"endpoints\":["
+				+ String.join(",", endpoints) + "],"
+				+ "\"ports\":[{\"name\":\"http\",\"port\":8080,\"protocol\":\"TCP\"}]}";
+	}
+
+	private static String endpoint(String address, boolean ready, String pod) {
+		return "{\"addresses\":[\"" + address + "\"],\"conditions\":{\"ready\":"
+				+ ready + "},\"targetRef\":{\"kind\":\"Pod\",\"name\":\"" + pod
+				+ "\",\"namespace\":\"test\"}}";
+	}
+
+	private ObjectMeta createMetadata(String name) {
+		ObjectMeta metadata = new ObjectMeta();
+		metadata.setName(name);
+		metadata.setNamespace("test");
+		return metadata;
+	}
+
+	private Endpoints createEndpoints(String serviceName, EndpointAddress... addresses) {
+		EndpointPort port = new EndpointPort();
+		port.setPort(8080);
+		EndpointSubset subset = new EndpointSubset();
+		subset.setAddresses(Arrays.asList(addresses));
+		subset.setPorts(Collections.singletonList(port));
+		Endpoints endpoints = new Endpoints();
+		endpoints.setMetadata(createMetadata(serviceName));
+		endpoints.setSubsets(Collections.singletonList(subset));
+		return endpoints;
+	}
+
+	private EndpointAddress createAddress(String podName, String uid, String ip) {
+		ObjectReference podRef = new ObjectReference();
+		podRef.setName(podName);
+		podRef.setUid(uid);
+		EndpointAddress address = new EndpointAddress();
+		address.setTargetRef(podRef);
+		address.setIp(ip);
+		return address;
+	}
+
 	private EndpointsList createEndpointsListByServiceName(String... serviceNames) {
 		List<Endpoints> endpoints = stream(serviceNames)
 				.map(s -> createEndpointsByPodName(s + "-singlePodUniqueId"))
@@ -73,6 +73,42 @@ public class KubernetesDiscoveryClientAutoConfigurationPropertiesTests {
 				.hasSize(1);
 	}
 
+	@Test
+	public void kubernetesDiscoveryCacheModeIsBoundLeniently() throws Exception {
+		setup("spring.cloud.kubernetes.discovery.cache.mode=ON_DEMAND");
+		assertThat(this.context.getBean(KubernetesDiscoveryCache.class))
+				.isInstanceOf(KubernetesOnDemandDiscoveryCache.class);
+		this.context.close();
+
+		setup("spring.cloud.kubernetes.discovery.cache.mode=on_demand");
+		assertThat(this.context.getBean(KubernetesDiscoveryCache.class))
+				.isInstanceOf(KubernetesOnDemandDiscoveryCache.class);
+		this.context.close();
+
+		setup("spring.cloud.kubernetes.discovery.cache.mode=TTL");
+		assertThat(this.context.getBean(KubernetesDiscoveryCache.class))
+				.isInstanceOf(KubernetesTtlDiscoveryCache.class);
+	}
+
+	@Test
+	public void kubernetesDiscoveryCacheDisabledByDefault() throws Exception {
+		setup("spring.cloud.kubernetes.enabled=true");
+		assertThat(this.context.getBeanNamesForType(KubernetesDiscoveryCache.class))
+				.isEmpty();
+	}
+
+	@Test
+	public void kubernetesTopologyResolverOnlyWhenTopologyIsUsed() throws Exception {
+		setup("spring.cloud.kubernetes.discovery.topology.mode=none");
+		assertThat(this.context.getBeanNamesForType(KubernetesTopologyResolver.class))
+				.isEmpty();
+		this.context.close();
+
+		setup("spring.cloud.kubernetes.discovery.topology.mode=ORDER");
+		assertThat(this.context.getBeanNamesForType(KubernetesTopologyResolver.class))
+				.hasSize(1);
+	}
+
 	private void setup(String... env) {
 		this.context = new SpringApplicationBuilder(
 				PropertyPlaceholderAutoConfiguration.class,
@@ -16,6 +16,7 @@
 
 package org.springframework.cloud.kubernetes.discovery;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -338,6 +339,74 @@ public class KubernetesDiscoveryClientFilterMetadataTest {
 				entry("a_a2", "an2"), entry("l_l1", "la1"), entry("p_http", "80"));
 	}
 
+	@Test
+	public void testExcludedKeys() {
+		final String serviceId = "s";
+
+		when(this.properties.getMetadata()).thenReturn(this.metadata);
+		when(this.metadata.isAddLabels()).thenReturn(true);
+		when(this.metadata.isAddAnnotations()).thenReturn(true);
+		when(this.metadata.isAddPorts()).thenReturn(false);
+		when(this.metadata.getExcludedKeys()).thenReturn(
+				Collections.singleton("kubectl.kubernetes.io/*"));
+
+		setupServiceWithLabelsAndAnnotationsAndPorts(serviceId,
+				new HashMap<String, String>() {
+					{
+						put("l1", "la1");
+					}
+				}, new HashMap<String, String>() {
+					{
+						put("a1", "an1");
+						put("kubectl.kubernetes.io/last-applied-configuration", "{}");
+					}
+				}, new HashMap<Integer, String>() {
+					{
+						put(80, "http");
+					}
+				});
+
+		final List<ServiceInstance> instances = this.underTest.getInstances(serviceId);
+		assertThat(instances).hasSize(1);
+		assertThat(instances.get(0).getMetadata()).containsOnly(entry("l1", "la1"),
+				entry("a1", "an1"));
+	}
+
+	@Test
+	public void testIncludedKeys() {
+		final String serviceId = "s";
+
+		when(this.properties.getMetadata()).thenReturn(this.metadata);
+		when(this.metadata.isAddLabels()).thenReturn(true);
+		when(this.metadata.isAddAnnotations()).thenReturn(true);
+		when(this.metadata.isAddPorts()).thenReturn(false);
+		when(this.metadata.getIncludedKeys())
+				.thenReturn(Collections.singleton("app.example.com/*"));
+
+		setupServiceWithLabelsAndAnnotationsAndPorts(serviceId,
+				new HashMap<String, String>() {
+					{
+						put("l1", "la1");
+						put("app.example.com/version", "1.0");
+					}
+				}, new HashMap<String, String>() {
+					{
+						put("a1", "an1");
+						put("app.example.com/owner", "team");
+					}
+				}, new HashMap<Integer, String>() {
+					{
+						put(80, "http");
+					}
+				});
+
+		final List<ServiceInstance> instances = this.underTest.getInstances(serviceId);
+		assertThat(instances).hasSize(1);
+		assertThat(instances.get(0).getMetadata()).containsOnly(
+				entry("app.example.com/version", "1.0"),
+				entry("app.example.com/owner", "team"));
+	}
+
 	private void setupServiceWithLabelsAndAnnotationsAndPorts(String serviceId,
 			Map<String, String> labels, Map<String, String> annotations,
 			Map<Integer, String> ports) {
@@ -17,12 +17,15 @@
 package org.springframework.cloud.kubernetes.discovery;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import io.fabric8.kubernetes.api.model.Endpoints;
 import io.fabric8.kubernetes.api.model.EndpointsBuilder;
 import io.fabric8.kubernetes.api.model.EndpointsList;
+import io.fabric8.kubernetes.api.model.EndpointsListBuilder;
 import io.fabric8.kubernetes.api.model.Service;
 import io.fabric8.kubernetes.api.model.ServiceBuilder;
 import io.fabric8.kubernetes.api.model.ServiceList;
@@ -38,6 +41,8 @@ import org.springframework.cloud.client.ServiceInstance;
 import org.springframework.cloud.client.discovery.DiscoveryClient;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class KubernetesDiscoveryClientTest {
 
@@ -233,6 +238,44 @@ public class KubernetesDiscoveryClientTest {
 				.extracting(ServiceInstance::getHost).containsOnly("ip1", "ip2");
 	}
 
+	@Test
+	public void getInstancesShouldReuseInstancesWhileResourceVersionsAreUnchanged() {
+		mockServer.expect().get().withPath("/api/v1/namespaces/test/endpoints/snapshot")
+				.andReturn(200, new EndpointsBuilder().withNewMetadata()
+						.withName("snapshot").withNamespace("test")
+						.withResourceVersion("1").endMetadata().addNewSubset()
+						.addNewAddress().withIp("ip1").endAddress()
+						.addNewPort("http", 80, "TCP").endSubset().build())
+				.times(2);
+		mockServer.expect().get().withPath("/api/v1/namespaces/test/endpoints/snapshot")
+				.andReturn(200, new EndpointsBuilder().withNewMetadata()
+						.withName("snapshot").withNamespace("test")
+						.withResourceVersion("2").endMetadata().addNewSubset()
+						.addNewAddress().withIp("ip2").endAddress()
+						.addNewPort("http", 80, "TCP").endSubset().build())
+				.once();
+
+		mockServer.expect().get().withPath("/api/v1/namespaces/test/services/snapshot")
+				.andReturn(200, new ServiceBuilder().withNewMetadata()
+						.withName("snapshot").withNamespace("test")
+						.withResourceVersion("1").endMetadata().build())
+				.times(3);
+
+		final KubernetesDiscoveryProperties properties = new KubernetesDiscoveryProperties();
+		final DiscoveryClient discoveryClient = new KubernetesDiscoveryClient(mockClient,
+				properties, KubernetesClient::services,
+				new DefaultIsServicePortSecureResolver(properties));
+
+		final List<ServiceInstance> first = discoveryClient.getInstances("snapshot");
+		final List<ServiceInstance> second = discoveryClient.getInstances("snapshot");
+		final List<ServiceInstance> third = discoveryClient.getInstances("snapshot");
+
+		assertThat(first).hasSize(1);
+		assertThat(second).isSameAs(first);
+		assertThat(third).isNotSameAs(first).extracting(ServiceInstance::getHost)
+				.containsOnly("ip2");
+	}
+
 	@Test
 	public void getServicesShouldReturnAllServicesWhenNoLabelsAreAppliedToTheClient() {
 		mockServer.expect().get().withPath("/api/v1/namespaces/test/services")
@@ -293,4 +336,221 @@ public class KubernetesDiscoveryClientTest {
 		assertThat(services).containsOnly("s1", "s2");
 	}
 
+	@Test
+	public void getServicesShouldListOnlyMetadataWhenTheFilterOnlyReadsMetadata() {
+		mockServer.expect().get()
+				.withPath("/api/v1/namespaces/test/services?labelSelector=label%3Dvalue")
+				.andReturn(200,
+						"{\"kind\":\"PartialObjectMetadataList\",\"apiVersion\":\"meta.k8s.io/v1\","
+								+ "\"metadata\":{\"resourceVersion\":\"7\"},\"items\":["
+								+ "{\"metadata\":{\"name\":\"s1\",\"namespace\":\"test\",\"uid\":\"u1\"}},"
+								+ "{\"metadata\":{\"name\":\"other\",\"namespace\":\"test\",\"uid\":\"u2\"}}]}")
+				.once();
+
+		final KubernetesDiscoveryProperties properties = new KubernetesDiscoveryProperties();
+		properties.setMetadataOnlyListing(true);
+		properties.setFilter("metadata.name.startsWith('s')");
+		properties.getServiceLabels().put("label", "value");
+		final DiscoveryClient discoveryClient = new KubernetesDiscoveryClient(mockClient,
+				properties, client -> {
+					throw new IllegalStateException("full services should not be listed");
+				}, new DefaultIsServicePortSecureResolver(properties));
+
+		final List<String> services = discoveryClient.getServices();
+
+		assertThat(services).containsOnly("s1");
+	}
+
+	@Test
+	public void getInstancesShouldPutInstancesCloseToTheCurrentPodFirst() {
+		expectTopologyService("ordered");
+
+		final KubernetesDiscoveryProperties properties = new KubernetesDiscoveryProperties();
+		properties.getTopology().setMode(KubernetesTopologyMode.ORDER);
+		final DiscoveryClient discoveryClient = new KubernetesDiscoveryClient(mockClient,
+				properties, KubernetesClient::services,
+				new DefaultIsServicePortSecureResolver(properties), null,
+				topologyResolver());
+
+		final List<ServiceInstance> instances = discoveryClient.getInstances("ordered");
+
+		assertThat(instances).extracting(ServiceInstance::getHost)
+				.containsExactly("ip2", "ip1", "ip3");
+		assertThat(instances.get(0).getMetadata())
+				.containsEntry(KubernetesTopologyResolver.NODE_METADATA_KEY, "n2")
+				.containsEntry(KubernetesTopologyResolver.ZONE_METADATA_KEY, "z1");
+	}
+
+	@Test
+	public void getInstancesShouldOnlyReturnInstancesInTheCurrentZoneWhenFiltering() {
+		expectTopologyService("filtered");
+
+		final KubernetesDiscoveryProperties properties = new KubernetesDiscoveryProperties();
+		properties.getTopology().setMode(KubernetesTopologyMode.FILTER);
+		final DiscoveryClient discoveryClient = new KubernetesDiscoveryClient(mockClient,
+				properties, KubernetesClient::services,
+				new DefaultIsServicePortSecureResolver(properties), null,
+				topologyResolver());
+
+		final List<ServiceInstance> instances = discoveryClient.getInstances("filtered");
+
+		assertThat(instances).extracting(ServiceInstance::getHost)
+				.containsExactly("ip2", "ip1");
+	}
+
+	@Test
+	public void getInstancesShouldLookUpZonesAgainOnceTheNodeCacheExpires() {
+		mockServer.expect().get().withPath("/api/v1/namespaces/test/endpoints/zoned")
+				.andReturn(200, new EndpointsBuilder().withNewMetadata().withName("zoned")
+						.withResourceVersion("1").endMetadata().addNewSubset()
+						.addNewAddress().withIp("ip1").withNodeName("n1").endAddress()
+						.addNewPort("http", 80, "TCP").endSubset().build())
+				.times(3);
+		mockServer.expect().get().withPath("/api/v1/namespaces/test/services/zoned")
+				.andReturn(200, new ServiceBuilder().withNewMetadata().withName("zoned")
+						.withResourceVersion("1").endMetadata().build())
+				.times(3);
+
+		final KubernetesDiscoveryProperties properties = new KubernetesDiscoveryProperties();
+		properties.getTopology().setMode(KubernetesTopologyMode.ORDER);
+		KubernetesTopologyResolver resolver = mock(KubernetesTopologyResolver.class);
+		when(resolver.getCurrentNodeName()).thenReturn("n2");
+		// the first lookup of the zone fails, the next node cache generation finds it
+		when(resolver.getZone("n1")).thenReturn(null, "z1");
+		when(resolver.getGeneration()).thenReturn(0L, 0L, 1L);
+		final DiscoveryClient discoveryClient = new KubernetesDiscoveryClient(mockClient,
+				properties, KubernetesClient::services,
+				new DefaultIsServicePortSecureResolver(properties), null, resolver);
+
+		final List<ServiceInstance> first = discoveryClient.getInstances("zoned");
+		final List<ServiceInstance> reused = discoveryClient.getInstances("zoned");
+		final List<ServiceInstance> rebuilt = discoveryClient.getInstances("zoned");
+
+		assertThat(reused).isSameAs(first);
+		assertThat(first.get(0).getMetadata())
+				.doesNotContainKey(KubernetesTopologyResolver.ZONE_METADATA_KEY);
+		assertThat(rebuilt.get(0).getMetadata())
+				.containsEntry(KubernetesTopologyResolver.ZONE_METADATA_KEY, "z1");
+	}
+
+	@Test
+	public void getInstancesOfManyServicesShouldListEndpointsAndServicesOnce() {
+		mockServer.expect().get().withPath("/api/v1/namespaces/test/endpoints")
+				.andReturn(200, new EndpointsListBuilder()
+						.addToItems(batchEndpoints("batch1", "ip1"),
+								batchEndpoints("batch2", "ip2"),
+								batchEndpoints("other", "ip3"))
+						.build())
+				.once();
+		mockServer.expect().get().withPath("/api/v1/namespaces/test/services")
+				.andReturn(200, new ServiceListBuilder().addNewItem().withNewMetadata()
+						.withName("batch1").withNamespace("test").endMetadata().endItem()
+						.addNewItem().withNewMetadata().withName("batch2")
+						.withNamespace("test").endMetadata().endItem().build())
+				.once();
+
+		final KubernetesDiscoveryProperties properties = new KubernetesDiscoveryProperties();
+		final KubernetesDiscoveryClient discoveryClient = new KubernetesDiscoveryClient(
+				mockClient, properties, KubernetesClient::services,
+				new DefaultIsServicePortSecureResolver(properties));
+
+		final Map<String, List<ServiceInstance>> instances = discoveryClient
+				.getInstances(Arrays.asList("batch1", "batch2", "missing"));
+
+		assertThat(instances).containsOnlyKeys("batch1", "batch2", "missing");
+		assertThat(instances.get("batch1")).extracting(ServiceInstance::getHost)
+				.containsExactly("ip1");
+		assertThat(instances.get("batch2")).extracting(ServiceInstance::getHost)
+				.containsExactly("ip2");
+		assertThat(instances.get("missing")).isEmpty();
+	}
+
+	@Test
+	public void getInstancesShouldQueryEveryConfiguredNamespace() {
+		for (String namespace : Arrays.asList("ns1", "ns2")) {
+			mockServer.expect().get()
+					.withPath("/api/v1/namespaces/" + namespace + "/endpoints/multi")
+					.andReturn(200, new EndpointsBuilder().withNewMetadata()
+							.withName("multi").withNamespace(namespace).endMetadata()
+							.addNewSubset().addNewAddress().withIp("ip-" + namespace)
+							.endAddress().addNewPort("http", 80, "TCP").endSubset()
+							.build())
+					.once();
+			mockServer.expect().get()
+					.withPath("/api/v1/namespaces/" + namespace + "/services/multi")
+					.andReturn(200, new ServiceBuilder().withNewMetadata()
+							.withName("multi").withNamespace(namespace)
+							.addToLabels("owner", namespace).endMetadata().build())
+					.once();
+		}
+
+		final KubernetesDiscoveryProperties properties = new KubernetesDiscoveryProperties();
+		properties.getNamespaces().addAll(Arrays.asList("ns1", "ns2"));
+		final DiscoveryClient discoveryClient = new KubernetesDiscoveryClient(mockClient,
+				properties, KubernetesClient::services,
+				new DefaultIsServicePortSecureResolver(properties));
+
+		final List<ServiceInstance> instances = discoveryClient.getInstances("multi");
+
+		assertThat(instances).extracting(ServiceInstance::getHost)
+				.containsExactly("ip-ns1", "ip-ns2");
+		// the metadata of each instance comes from the service in its own namespace
+		assertThat(instances).extracting(instance -> instance.getMetadata().get("owner"))
+				.containsExactly("ns1", "ns2");
+	}
+
+	@Test
+	public void getServicesShouldListEveryConfiguredNamespace() {
+		mockServer.expect().get().withPath("/api/v1/namespaces/ns3/services")
+				.andReturn(200, new ServiceListBuilder().addNewItem().withNewMetadata()
+						.withName("s1").withNamespace("ns3").endMetadata().endItem()
+						.build())
+				.once();
+		mockServer.expect().get().withPath("/api/v1/namespaces/ns4/services")
+				.andReturn(200, new ServiceListBuilder().addNewItem().withNewMetadata()
+						.withName("s2").withNamespace("ns4").endMetadata().endItem()
+						.build())
+				.once();
+
+		final KubernetesDiscoveryProperties properties = new KubernetesDiscoveryProperties();
+		properties.getNamespaces().addAll(Arrays.asList("ns3", "ns4"));
+		final DiscoveryClient discoveryClient = new KubernetesDiscoveryClient(mockClient,
+				properties, KubernetesClient::services,
+				new DefaultIsServicePortSecureResolver(properties));
+
+		assertThat(discoveryClient.getServices()).containsExactly("s1", "s2");
+	}
+
+	private static Endpoints batchEndpoints(String name, String ip) {
+		return new EndpointsBuilder().withNewMetadata().withName(name)
+				.withNamespace("test").endMetadata().addNewSubset().addNewAddress()
+				.withIp(ip).endAddress().addNewPort("http", 80, "TCP").endSubset()
+				.build();
+	}
+
+	private static void expectTopologyService(String name) {
+		mockServer.expect().get().withPath("/api/v1/namespaces/test/endpoints/" + name)
+				.andReturn(200, new EndpointsBuilder().withNewMetadata().withName(name)
+						.endMetadata().addNewSubset().addNewAddress().withIp("ip1")
+						.withNodeName("n1").endAddress().addNewAddress().withIp("ip2")
+						.withNodeName("n2").endAddress().addNewAddress().withIp("ip3")
+						.withNodeName("n3").endAddress().addNewPort("http", 80, "TCP")
+						.endSubset().build())
+				.once();
+		mockServer.expect().get().withPath("/api/v1/namespaces/test/services/" + name)
+				.andReturn(200, new ServiceBuilder().withNewMetadata().withName(name)
+						.endMetadata().build())
+				.once();
+	}
+
+	private static KubernetesTopologyResolver topologyResolver() {
+		KubernetesTopologyResolver resolver = mock(KubernetesTopologyResolver.class);
+		when(resolver.getCurrentNodeName()).thenReturn("n2");
+		when(resolver.getCurrentZone()).thenReturn("z1");
+		when(resolver.getZone("n1")).thenReturn("z1");
+		when(resolver.getZone("n2")).thenReturn("z1");
+		when(resolver.getZone("n3")).thenReturn("z2");
+		return resolver;
+	}
+
 }
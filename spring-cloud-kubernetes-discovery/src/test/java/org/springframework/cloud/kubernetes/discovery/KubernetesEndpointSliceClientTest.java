@@ -0,0 +1,204 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.model.ServiceBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.kubernetes.client.server.mock.KubernetesServer;
+import io.fabric8.kubernetes.client.utils.Serialization;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import org.springframework.cloud.client.ServiceInstance;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KubernetesEndpointSliceClientTest {
+
+	private static final String SLICES = "{\"kind\":\"EndpointSliceList\",\"metadata\":{\"resourceVersion\":\"100\"},"
+			+ "\"items\":[" + slice("svc-a", "1", "10.0.0.1", true, "pod-1") + ","
+			+ slice("svc-b", "2", "10.0.0.2", false, "pod-2") + "]}";
+
+	@ClassRule
+	public static KubernetesServer mockServer = new KubernetesServer();
+
+	private KubernetesClient client;
+
+	@Before
+	public void setUp() {
+		this.client = mockServer.getClient();
+	}
+
+	@Test
+	public void listsTheSlicesOfAService() {
+		mockServer.expect().get().withPath(
+				"/apis/discovery.k8s.io/v1/namespaces/test/endpointslices?labelSelector=kubernetes.io%2Fservice-name%3Dsvc")
+				.andReturn(200, SLICES).once();
+
+		List<KubernetesEndpointSlice> slices = new KubernetesEndpointSliceClient(
+				this.client).list("test", "svc");
+
+		assertThat(slices).hasSize(2);
+		assertThat(slices.get(0).getServiceName()).isEqualTo("svc");
+		assertThat(slices.get(0).getEndpoints().get(0).getAddresses())
+				.containsExactly("10.0.0.1");
+		assertThat(slices.get(1).getEndpoints().get(0).isReady()).isFalse();
+	}
+
+	@Test
+	public void mergesSlicesIntoEndpoints() {
+		mockServer.expect().get().withPath(
+				"/apis/discovery.k8s.io/v1/namespaces/test/endpointslices?labelSelector=kubernetes.io%2Fservice-name%3Dsvc")
+				.andReturn(200, SLICES).once();
+
+		Endpoints endpoints = KubernetesEndpointSliceClient.toEndpoints("test", "svc",
+				new KubernetesEndpointSliceClient(this.client).list("test", "svc"));
+
+		assertThat(endpoints.getMetadata().getName()).isEqualTo("svc");
+		assertThat(endpoints.getMetadata().getResourceVersion())
+				.isEqualTo("svc-a:1,svc-b:2");
+		assertThat(endpoints.getSubsets()).hasSize(2);
+		assertThat(endpoints.getSubsets().get(0).getAddresses()).hasSize(1);
+		assertThat(endpoints.getSubsets().get(0).getAddresses().get(0).getTargetRef()
+				.getName()).isEqualTo("pod-1");
+		assertThat(endpoints.getSubsets().get(1).getAddresses()).isEmpty();
+		assertThat(endpoints.getSubsets().get(1).getNotReadyAddresses()).hasSize(1);
+	}
+
+	@Test
+	public void usesASingleAddressFamilyPerService() throws Exception {
+		List<KubernetesEndpointSlice> slices = Serialization.jsonMapper().readValue(
+				"[" + slice("svc-v6", "1", "IPv6", "fd00::1", true, "pod-1") + ","
+						+ slice("svc-v4", "2", "IPv4", "10.0.0.1", true, "pod-1") + ","
+						+ slice("svc-dns", "3", "FQDN", "pod-1.svc.test", true, "pod-1")
+						+ "]",
+				new TypeReference<List<KubernetesEndpointSlice>>() {
+				});
+
+		Endpoints dualStack = KubernetesEndpointSliceClient.toEndpoints("test", "svc",
+				slices);
+		Endpoints ipv6Only = KubernetesEndpointSliceClient.toEndpoints("test", "svc",
+				Arrays.asList(slices.get(0), slices.get(2)));
+
+		assertThat(dualStack.getSubsets()).hasSize(1);
+		assertThat(dualStack.getSubsets().get(0).getAddresses().get(0).getIp())
+				.isEqualTo("10.0.0.1");
+		assertThat(ipv6Only.getSubsets()).hasSize(1);
+		assertThat(ipv6Only.getSubsets().get(0).getAddresses().get(0).getIp())
+				.isEqualTo("fd00::1");
+	}
+
+	@Test
+	public void closesTheWatchWithTheStatusOfAnError() throws Exception {
+		mockServer.expect().get().withPath(
+				"/apis/discovery.k8s.io/v1/namespaces/test/endpointslices?watch=true&resourceVersion=1")
+				.andReturn(200,
+						"{\"type\":\"ADDED\",\"object\":"
+								+ slice("svc-a", "2", "10.0.0.1", true, "pod-1") + "}\n")
+				.once();
+		mockServer.expect().get().withPath(
+				"/apis/discovery.k8s.io/v1/namespaces/test/endpointslices?watch=true&resourceVersion=2")
+				.andReturn(200,
+						"{\"type\":\"ERROR\",\"object\":{\"kind\":\"Status\",\"code\":410}}\n")
+				.once();
+		KubernetesEndpointSliceClient sliceClient = new KubernetesEndpointSliceClient(
+				this.client);
+
+		// the API server ending a watch is not an error, it is resumed from there
+		RecordingWatcher ended = new RecordingWatcher();
+		sliceClient.watch("test", "1", ended);
+		assertThat(ended.closed.get(10, TimeUnit.SECONDS)).isNull();
+		assertThat(ended.resourceVersion).isEqualTo("2");
+
+		RecordingWatcher expired = new RecordingWatcher();
+		sliceClient.watch("test", "2", expired);
+		assertThat(expired.closed.get(10, TimeUnit.SECONDS).getCode()).isEqualTo(410);
+	}
+
+	@Test
+	public void discoveryClientReadsInstancesFromSlices() {
+		mockServer.expect().get().withPath(
+				"/apis/discovery.k8s.io/v1/namespaces/test/endpointslices?labelSelector=kubernetes.io%2Fservice-name%3Dsvc")
+				.andReturn(200, SLICES).once();
+		mockServer.expect().get().withPath("/api/v1/namespaces/test/services/svc")
+				.andReturn(200, new ServiceBuilder().withNewMetadata().withName("svc")
+						.withNamespace("test").endMetadata().build())
+				.once();
+
+		KubernetesDiscoveryProperties properties = new KubernetesDiscoveryProperties();
+		properties.setUseEndpointSlices(true);
+		KubernetesDiscoveryClient discoveryClient = new KubernetesDiscoveryClient(
+				this.client, properties, KubernetesClient::services);
+
+		List<ServiceInstance> instances = discoveryClient.getInstances("svc");
+
+		assertThat(instances).hasSize(1);
+		assertThat(instances.get(0).getHost()).isEqualTo("10.0.0.1");
+		assertThat(instances.get(0).getPort()).isEqualTo(8080);
+	}
+
+	private static final class RecordingWatcher
+			implements Watcher<KubernetesEndpointSlice> {
+
+		private final CompletableFuture<KubernetesClientException> closed = new CompletableFuture<>();
+
+		private volatile String resourceVersion;
+
+		@Override
+		public void eventReceived(Action action, KubernetesEndpointSlice slice) {
+			this.resourceVersion = slice.getMetadata().getResourceVersion();
+		}
+
+		@Override
+		public void onClose(KubernetesClientException cause) {
+			this.closed.complete(cause);
+		}
+
+	}
+
+	private static String slice(String name, String resourceVersion, String ip,
+			boolean ready, String pod) {
+		return slice(name, resourceVersion, "IPv4", ip, ready, pod);
+	}
+
+	private static String slice(String name, String resourceVersion,
+			String addressType, String ip, boolean ready, String pod) {
+		return "{\"metadata\":{\"name\":\"" + name + "\",\"namespace\":\"test\","
+				+ "\"resourceVersion\":\"" + resourceVersion + "\","
+				+ "\"labels\":{\"kubernetes.io/service-name\":\"svc\"},"
+				+ "\"managedFields\":[{\"manager\":\"kube-controller-manager\"}]},"
+				+ "\"addressType\":\"" + addressType
+				+ "\",\"endpoints\":[{\"addresses\":[\"" + ip
+				+ "\"],\"conditions\":{\"ready\":" + ready + ",\"serving\":" + ready
+				+ "},\"nodeName\":\"node-1\",\"zone\":\"zone-a\","
+				+ "\"targetRef\":{\"kind\":\"Pod\",\"name\":\"" + pod
+				+ "\",\"namespace\":\"test\"}}],"
+				+ "\"ports\":[{\"name\":\"http\",\"port\":8080,\"protocol\":\"TCP\"}]}";
+	}
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class KubernetesFederatedDiscoveryClientTest {
+
+	private static final ServiceInstance LOCAL = new DefaultServiceInstance("i1", "s",
+			"10.0.0.1", 80, false);
+
+	private static final ServiceInstance REMOTE = new DefaultServiceInstance("i2", "s",
+			"10.1.0.1", 80, false);
+
+	@Mock
+	private KubernetesDiscoveryClient localClient;
+
+	@Mock
+	private KubernetesDiscoveryClient remoteClient;
+
+	private final KubernetesDiscoveryProperties properties = new KubernetesDiscoveryProperties();
+
+	@Test
+	public void mergesInstancesAndServicesOfAllClusters() {
+		when(this.localClient.getInstances("s"))
+				.thenReturn(Collections.singletonList(LOCAL));
+		when(this.remoteClient.getInstances("s"))
+				.thenReturn(Collections.singletonList(REMOTE));
+		when(this.localClient.getServices()).thenReturn(Arrays.asList("s", "a"));
+		when(this.remoteClient.getServices()).thenReturn(Arrays.asList("s", "b"));
+		KubernetesFederatedDiscoveryClient client = federatedClient();
+
+		try {
+			assertThat(client.getInstances("s")).containsExactly(LOCAL, REMOTE);
+			assertThat(client.getServices()).containsExactly("s", "a", "b");
+			// the cluster names are set where the discovery clients are created
+			verify(this.localClient, never()).setClusterName(any());
+			verify(this.remoteClient, never()).setClusterName(any());
+		}
+		finally {
+			client.stop();
+		}
+	}
+
+	@Test
+	public void slowClusterDoesNotStallTheOthers() throws Exception {
+		this.properties.getFederation().setTimeout(Duration.ofMillis(200));
+		CountDownLatch firstLookup = new CountDownLatch(1);
+		CountDownLatch laterLookups = new CountDownLatch(1);
+		when(this.localClient.getInstances("s"))
+				.thenReturn(Collections.singletonList(LOCAL));
+		when(this.remoteClient.getInstances("s")).thenAnswer(invocation -> {
+			firstLookup.await();
+			return Collections.singletonList(REMOTE);
+		}).thenAnswer(invocation -> {
+			laterLookups.await();
+			return Collections.emptyList();
+		});
+		KubernetesFederatedDiscoveryClient client = federatedClient();
+
+		try {
+			long start = System.nanoTime();
+			assertThat(client.getInstances("s")).containsExactly(LOCAL);
+			assertThat(System.nanoTime() - start)
+					.isLessThan(TimeUnit.SECONDS.toNanos(2));
+
+			// the late answer of the slow cluster is used the next time it times out
+			firstLookup.countDown();
+			List<ServiceInstance> instances = Collections.emptyList();
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (instances.size() < 2 && System.nanoTime() < deadline) {
+				instances = client.getInstances("s");
+			}
+			assertThat(instances).hasSize(2);
+			assertThat(instances.get(0)).isEqualTo(LOCAL);
+			assertThat(instances.get(1).getHost()).isEqualTo(REMOTE.getHost());
+			assertThat(instances.get(1).getMetadata()).containsKey(
+					KubernetesFederatedDiscoveryClient.STALE_SINCE_METADATA_KEY);
+		}
+		finally {
+			laterLookups.countDown();
+			client.stop();
+		}
+	}
+
+	@Test
+	public void previousAnswersAreNotUsedOnceTooOld() throws Exception {
+		this.properties.getFederation().setTimeout(Duration.ofMillis(200));
+		this.properties.getFederation().setMaxStaleness(Duration.ZERO);
+		CountDownLatch laterLookups = new CountDownLatch(1);
+		when(this.localClient.getInstances("s"))
+				.thenReturn(Collections.singletonList(LOCAL));
+		when(this.remoteClient.getInstances("s"))
+				.thenReturn(Collections.singletonList(REMOTE))
+				.thenAnswer(invocation -> {
+					laterLookups.await();
+					return Collections.emptyList();
+				});
+		KubernetesFederatedDiscoveryClient client = federatedClient();
+
+		try {
+			assertThat(client.getInstances("s")).containsExactly(LOCAL, REMOTE);
+			Thread.sleep(10);
+
+			assertThat(client.getInstances("s")).containsExactly(LOCAL);
+		}
+		finally {
+			laterLookups.countDown();
+			client.stop();
+		}
+	}
+
+	@Test
+	public void preferredLocalClusterIsTheOnlyOneQueriedWhileItHasInstances() {
+		this.properties.getFederation().setPreferLocalCluster(true);
+		when(this.localClient.getInstances("s"))
+				.thenReturn(Collections.singletonList(LOCAL))
+				.thenReturn(Collections.emptyList());
+		KubernetesFederatedDiscoveryClient client = federatedClient();
+
+		try {
+			assertThat(client.getInstances("s")).containsExactly(LOCAL);
+			verify(this.remoteClient, never()).getInstances("s");
+
+			when(this.remoteClient.getInstances("s"))
+					.thenReturn(Collections.singletonList(REMOTE));
+			assertThat(client.getInstances("s")).containsExactly(REMOTE);
+		}
+		finally {
+			client.stop();
+		}
+	}
+
+	private KubernetesFederatedDiscoveryClient federatedClient() {
+		Map<String, KubernetesDiscoveryClient> remoteClients = new LinkedHashMap<>();
+		remoteClients.put("east", this.remoteClient);
+		return new KubernetesFederatedDiscoveryClient(this.localClient, remoteClients,
+				this.properties.getFederation());
+	}
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.ServiceBuilder;
+import io.fabric8.kubernetes.api.model.ServiceList;
+import io.fabric8.kubernetes.api.model.ServiceListBuilder;
+import io.fabric8.kubernetes.client.dsl.Listable;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class KubernetesListPagerTest {
+
+	@Mock
+	private Listable<ServiceList> operation;
+
+	@Test
+	public void followsContinueTokensUntilTheLastPage() {
+		when(this.operation.list(2, null)).thenReturn(page("10", "next", "s1", "s2"));
+		when(this.operation.list(2, "next")).thenReturn(page("10", null, "s3"));
+
+		List<String> names = new ArrayList<>();
+		String resourceVersion = KubernetesListPager.forEach(this.operation, 2,
+				(Service service) -> names.add(service.getMetadata().getName()));
+
+		assertThat(names).containsExactly("s1", "s2", "s3");
+		assertThat(resourceVersion).isEqualTo("10");
+		verify(this.operation, never()).list();
+	}
+
+	@Test
+	public void listsEverythingAtOnceWithoutPageSize() {
+		when(this.operation.list()).thenReturn(page("10", null, "s1", "s2"));
+
+		List<String> names = new ArrayList<>();
+		KubernetesListPager.forEach(this.operation, 0,
+				(Service service) -> names.add(service.getMetadata().getName()));
+
+		assertThat(names).containsExactly("s1", "s2");
+		verify(this.operation, never()).list(anyInt(), anyString());
+	}
+
+	private static ServiceList page(String resourceVersion, String continueToken,
+			String... names) {
+		ServiceListBuilder builder = new ServiceListBuilder().withNewMetadata()
+				.withResourceVersion(resourceVersion).withContinue(continueToken)
+				.endMetadata();
+		for (String name : names) {
+			builder.addToItems(new ServiceBuilder().withNewMetadata().withName(name)
+					.endMetadata().build());
+		}
+		return builder.build();
+	}
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import io.fabric8.kubernetes.api.model.DoneableEndpoints;
+import io.fabric8.kubernetes.api.model.DoneableService;
+import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.model.EndpointsBuilder;
+import io.fabric8.kubernetes.api.model.EndpointsList;
+import io.fabric8.kubernetes.api.model.EndpointsListBuilder;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.ServiceList;
+import io.fabric8.kubernetes.api.model.ServiceListBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.kubernetes.client.dsl.FilterWatchListDeletable;
+import io.fabric8.kubernetes.client.dsl.MixedOperation;
+import io.fabric8.kubernetes.client.dsl.Resource;
+import io.fabric8.kubernetes.client.dsl.ServiceResource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class KubernetesOnDemandDiscoveryCacheTest {
+
+	@Mock
+	private KubernetesClient kubernetesClient;
+
+	@Mock
+	private MixedOperation<Service, ServiceList, DoneableService, ServiceResource<Service, DoneableService>> serviceOperation;
+
+	@Mock
+	private MixedOperation<Endpoints, EndpointsList, DoneableEndpoints, Resource<Endpoints, DoneableEndpoints>> endpointsOperation;
+
+	@Captor
+	private ArgumentCaptor<Watcher<Endpoints>> endpointsWatcher;
+
+	private KubernetesDiscoveryProperties properties = new KubernetesDiscoveryProperties();
+
+	private KubernetesOnDemandDiscoveryCache underTest;
+
+	@Before
+	public void setUp() {
+		when(this.kubernetesClient.services()).thenReturn(this.serviceOperation);
+		when(this.kubernetesClient.endpoints()).thenReturn(this.endpointsOperation);
+		this.underTest = new KubernetesOnDemandDiscoveryCache(this.kubernetesClient,
+				this.properties);
+	}
+
+	@After
+	public void tearDown() {
+		this.underTest.stop();
+	}
+
+	@Test
+	public void servesRepeatedLookupsFromTheWatch() {
+		FilterWatchListDeletable<Endpoints, EndpointsList, Boolean, Watch, Watcher<Endpoints>> endpoints = expect(
+				"s1", mock(Watch.class));
+
+		assertThat(this.underTest.isSynced()).isFalse();
+		assertThat(this.underTest.isSynced("s1")).isTrue();
+		assertThat(this.underTest.isCached("s1")).isFalse();
+		assertThat(this.underTest.getEndpoints("s1")).hasSize(1);
+		assertThat(this.underTest.isCached("s1")).isTrue();
+		assertThat(this.underTest.getService("test", "s1")).isNotNull();
+		assertThat(this.underTest.getEndpoints("s1")).hasSize(1);
+		verify(endpoints, times(1)).list();
+
+		this.endpointsWatcher.getValue().eventReceived(Watcher.Action.DELETED,
+				endpoints("s1"));
+		assertThat(this.underTest.getEndpoints("s1")).isEmpty();
+	}
+
+	@Test
+	public void evictsTheLeastRecentlyUsedServiceBeyondMaxServices() {
+		this.properties.getCache().setMaxServices(1);
+		Watch firstWatch = mock(Watch.class);
+		expect("s1", firstWatch);
+		expect("s2", mock(Watch.class));
+
+		this.underTest.getEndpoints("s1");
+		this.underTest.getEndpoints("s2");
+
+		assertThat(this.underTest.size()).isEqualTo(1);
+		verify(firstWatch).close();
+	}
+
+	@SuppressWarnings("unchecked")
+	private FilterWatchListDeletable<Endpoints, EndpointsList, Boolean, Watch, Watcher<Endpoints>> expect(
+			String name, Watch endpointsWatch) {
+		FilterWatchListDeletable<Endpoints, EndpointsList, Boolean, Watch, Watcher<Endpoints>> endpoints = mock(
+				FilterWatchListDeletable.class);
+		FilterWatchListDeletable<Service, ServiceList, Boolean, Watch, Watcher<Service>> services = mock(
+				FilterWatchListDeletable.class);
+		when(this.endpointsOperation.withField("metadata.name", name))
+				.thenReturn(endpoints);
+		when(this.serviceOperation.withField("metadata.name", name)).thenReturn(services);
+		when(endpoints.list()).thenReturn(new EndpointsListBuilder().withNewMetadata()
+				.withResourceVersion("1").endMetadata().addToItems(endpoints(name))
+				.build());
+		when(services.list()).thenReturn(new ServiceListBuilder().withNewMetadata()
+				.withResourceVersion("1").endMetadata()
+				.addNewItem().withNewMetadata().withName(name).withNamespace("test")
+				.endMetadata().endItem().build());
+		when(endpoints.watch(eq("1"), this.endpointsWatcher.capture()))
+				.thenReturn(endpointsWatch);
+		when(services.watch(eq("1"), any())).thenReturn(mock(Watch.class));
+		return endpoints;
+	}
+
+	private static Endpoints endpoints(String name) {
+		return new EndpointsBuilder().withNewMetadata().withName(name)
+				.withNamespace("test").endMetadata().addNewSubset().addNewAddress()
+				.withIp("ip1").endAddress().addNewPort("http", 80, "TCP").endSubset()
+				.build();
+	}
+
+}
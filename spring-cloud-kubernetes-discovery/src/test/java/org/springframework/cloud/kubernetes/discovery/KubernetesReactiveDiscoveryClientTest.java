@@ -0,0 +1,115 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class KubernetesReactiveDiscoveryClientTest {
+
+	@Mock
+	private KubernetesDiscoveryClient discoveryClient;
+
+	@Mock
+	private KubernetesDiscoveryCache cache;
+
+	@Test
+	public void getServicesShouldDelegateToDiscoveryClient() {
+		when(this.discoveryClient.getServices()).thenReturn(Arrays.asList("s1", "s2"));
+		KubernetesReactiveDiscoveryClient underTest = new KubernetesReactiveDiscoveryClient(
+				this.discoveryClient, null);
+
+		StepVerifier.create(underTest.getServices()).expectNext("s1", "s2")
+				.verifyComplete();
+	}
+
+	@Test
+	public void getInstancesShouldNotBlockTheCallerWithoutCache() {
+		ServiceInstance instance = new DefaultServiceInstance("uid", "s1", "ip1", 80,
+				false);
+		when(this.discoveryClient.getInstances("s1")).thenAnswer(invocation -> {
+			assertThat(Thread.currentThread().getName()).startsWith("boundedElastic");
+			return Collections.singletonList(instance);
+		});
+		KubernetesReactiveDiscoveryClient underTest = new KubernetesReactiveDiscoveryClient(
+				this.discoveryClient, null);
+
+		StepVerifier.create(underTest.getInstances("s1")).expectNext(instance)
+				.verifyComplete();
+	}
+
+	@Test
+	public void getInstancesShouldBeServedInlineWhenCached() {
+		String caller = Thread.currentThread().getName();
+		ServiceInstance instance = new DefaultServiceInstance("uid", "s1", "ip1", 80,
+				false);
+		when(this.cache.isCached("s1")).thenReturn(true);
+		when(this.discoveryClient.getInstances("s1")).thenAnswer(invocation -> {
+			assertThat(Thread.currentThread().getName()).isEqualTo(caller);
+			return Collections.singletonList(instance);
+		});
+		KubernetesReactiveDiscoveryClient underTest = new KubernetesReactiveDiscoveryClient(
+				this.discoveryClient, this.cache);
+
+		StepVerifier.create(underTest.getInstances("s1")).expectNext(instance)
+				.verifyComplete();
+	}
+
+	@Test
+	public void getInstancesShouldCheckTheCacheWhenSubscribed() {
+		String caller = Thread.currentThread().getName();
+		ServiceInstance instance = new DefaultServiceInstance("uid", "s1", "ip1", 80,
+				false);
+		when(this.cache.isCached("s1")).thenReturn(false, true);
+		when(this.discoveryClient.getInstances("s1"))
+				.thenReturn(Collections.singletonList(instance));
+		KubernetesReactiveDiscoveryClient underTest = new KubernetesReactiveDiscoveryClient(
+				this.discoveryClient, this.cache);
+		Flux<String> threads = underTest.getInstances("s1")
+				.map(i -> Thread.currentThread().getName());
+
+		// not cached on the first subscription, cached on the second
+		StepVerifier.create(threads)
+				.assertNext(thread -> assertThat(thread).startsWith("boundedElastic"))
+				.verifyComplete();
+		StepVerifier.create(threads).expectNext(caller).verifyComplete();
+	}
+
+	@Test
+	public void getServicesShouldBeEmptyWhenThereAreNoServices() {
+		when(this.discoveryClient.getServices()).thenReturn(Collections.emptyList());
+		KubernetesReactiveDiscoveryClient underTest = new KubernetesReactiveDiscoveryClient(
+				this.discoveryClient, null);
+
+		StepVerifier.create(underTest.getServices()).verifyComplete();
+	}
+
+}
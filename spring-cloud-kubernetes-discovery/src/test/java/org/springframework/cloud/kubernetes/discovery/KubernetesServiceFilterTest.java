@@ -0,0 +1,88 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.util.Collections;
+
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.ServiceBuilder;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KubernetesServiceFilterTest {
+
+	@Test
+	public void evaluatesUnversionedServicesEveryTime() {
+		KubernetesServiceFilter filter = new KubernetesServiceFilter(
+				"metadata.name.startsWith('service')");
+
+		for (int i = 0; i < 200; i++) {
+			assertThat(filter.test(service("serviceA", null, null))).isTrue();
+			assertThat(filter.test(service("other", null, null))).isFalse();
+		}
+	}
+
+	@Test
+	public void remembersOutcomeUntilResourceVersionChanges() {
+		KubernetesServiceFilter filter = new KubernetesServiceFilter(
+				"metadata.name.startsWith('service')");
+
+		assertThat(filter.test(service("serviceA", "uid", "1"))).isTrue();
+		// same uid and resource version, the outcome is not evaluated again
+		assertThat(filter.test(service("other", "uid", "1"))).isTrue();
+		assertThat(filter.test(service("other", "uid", "2"))).isFalse();
+	}
+
+	@Test
+	public void retainOnlyForgetsRemovedServices() {
+		KubernetesServiceFilter filter = new KubernetesServiceFilter(
+				"metadata.name.startsWith('service')");
+		filter.test(service("serviceA", "uid1", "1"));
+		filter.test(service("serviceB", "uid2", "1"));
+
+		filter.retainOnly(Collections.singleton("uid1"));
+
+		assertThat(filter.test(service("other", "uid1", "1"))).isTrue();
+		assertThat(filter.test(service("other", "uid2", "1"))).isFalse();
+	}
+
+	@Test
+	public void detectsExpressionsThatOnlyReadMetadata() {
+		assertThat(new KubernetesServiceFilter("metadata.name.startsWith('service')")
+				.isMetadataOnly()).isTrue();
+		assertThat(new KubernetesServiceFilter(
+				"metadata.labels['app'] == 'web' && metadata.namespace != 'kube-system'")
+						.isMetadataOnly()).isTrue();
+		assertThat(new KubernetesServiceFilter("spec.type == 'ClusterIP'")
+				.isMetadataOnly()).isFalse();
+		assertThat(new KubernetesServiceFilter("metadata.name == spec.externalName")
+				.isMetadataOnly()).isFalse();
+		assertThat(new KubernetesServiceFilter("['metadata']['name'] == 'service'")
+				.isMetadataOnly()).isTrue();
+		assertThat(new KubernetesServiceFilter("['spec']['type'] == 'ClusterIP'")
+				.isMetadataOnly()).isFalse();
+		assertThat(new KubernetesServiceFilter("['spec'] != null").isMetadataOnly())
+				.isFalse();
+	}
+
+	private static Service service(String name, String uid, String resourceVersion) {
+		return new ServiceBuilder().withNewMetadata().withName(name).withUid(uid)
+				.withResourceVersion(resourceVersion).endMetadata().build();
+	}
+
+}
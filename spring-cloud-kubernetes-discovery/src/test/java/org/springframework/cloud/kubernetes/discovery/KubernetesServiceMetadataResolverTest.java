@@ -0,0 +1,76 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.fabric8.kubernetes.api.model.EndpointSubset;
+import io.fabric8.kubernetes.api.model.EndpointSubsetBuilder;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.ServiceBuilder;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KubernetesServiceMetadataResolverTest {
+
+	private final AtomicLong now = new AtomicLong();
+
+	private final KubernetesServiceMetadataResolver resolver = new KubernetesServiceMetadataResolver(
+			new KubernetesDiscoveryProperties(), this.now::get);
+
+	private final EndpointSubset subset = new EndpointSubsetBuilder()
+			.addNewPort("http", 8080, "TCP").build();
+
+	@Test
+	public void sharesTheMetadataOfAServiceVersion() {
+		Map<String, String> first = this.resolver.resolve(service("a", "1"),
+				this.subset);
+
+		assertThat(this.resolver.resolve(service("a", "1"), this.subset))
+				.isSameAs(first);
+		assertThat(this.resolver.resolve(service("a", "2"), this.subset))
+				.isNotSameAs(first).containsEntry("app", "a");
+	}
+
+	@Test
+	public void dropsTheMetadataOfServicesThatAreNoLongerResolved() {
+		this.resolver.resolve(service("deleted", "1"), this.subset);
+		this.resolver.resolve(service("a", "1"), this.subset);
+
+		this.now.addAndGet(TimeUnit.MINUTES
+				.toNanos(KubernetesServiceMetadataResolver.IDLE_TIMEOUT_MINUTES) / 2);
+		Map<String, String> a = this.resolver.resolve(service("a", "1"), this.subset);
+		this.now.addAndGet(TimeUnit.MINUTES
+				.toNanos(KubernetesServiceMetadataResolver.IDLE_TIMEOUT_MINUTES) * 3 / 4);
+		this.resolver.resolve(service("b", "1"), this.subset);
+
+		// a was resolved within the timeout, the deleted service was not
+		assertThat(this.resolver.size()).isEqualTo(2);
+		assertThat(this.resolver.resolve(service("a", "1"), this.subset)).isSameAs(a);
+	}
+
+	private static Service service(String name, String resourceVersion) {
+		return new ServiceBuilder().withNewMetadata().withName(name)
+				.withNamespace("test").withResourceVersion(resourceVersion)
+				.addToLabels("app", name).endMetadata().build();
+	}
+
+}
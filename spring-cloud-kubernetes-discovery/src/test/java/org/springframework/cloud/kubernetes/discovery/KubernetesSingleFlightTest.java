@@ -0,0 +1,114 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class KubernetesSingleFlightTest {
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+	@After
+	public void tearDown() {
+		this.executor.shutdownNow();
+	}
+
+	@Test
+	public void concurrentCallsShareOneLoad() throws Exception {
+		KubernetesSingleFlight<String, List<String>> singleFlight = new KubernetesSingleFlight<>(
+				ArrayList::new);
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger loads = new AtomicInteger();
+
+		Future<List<String>> first = this.executor
+				.submit(() -> singleFlight.execute("svc", () -> {
+					loads.incrementAndGet();
+					loading.countDown();
+					await(release);
+					return new ArrayList<>(Collections.singletonList("instance"));
+				}));
+		assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+
+		List<Future<List<String>>> waiters = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			waiters.add(this.executor.submit(() -> singleFlight.execute("svc", () -> {
+				loads.incrementAndGet();
+				return Collections.emptyList();
+			})));
+		}
+		long deadline = System.currentTimeMillis() + 5000;
+		while (singleFlight.getCoalescedCount() < 3
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		release.countDown();
+
+		assertThat(first.get(5, TimeUnit.SECONDS)).containsExactly("instance");
+		for (Future<List<String>> waiter : waiters) {
+			assertThat(waiter.get(5, TimeUnit.SECONDS)).containsExactly("instance");
+		}
+		assertThat(loads.get()).isEqualTo(1);
+		assertThat(singleFlight.getExecutedCount()).isEqualTo(1);
+		assertThat(singleFlight.getCoalescedCount()).isEqualTo(3);
+	}
+
+	@Test
+	public void nothingIsCachedOnceTheLoadCompleted() {
+		KubernetesSingleFlight<String, String> singleFlight = new KubernetesSingleFlight<>(
+				v -> v);
+
+		assertThat(singleFlight.execute("svc", () -> "a")).isEqualTo("a");
+		assertThat(singleFlight.execute("svc", () -> "b")).isEqualTo("b");
+		assertThat(singleFlight.getExecutedCount()).isEqualTo(2);
+	}
+
+	@Test
+	public void failuresAreNotRemembered() {
+		KubernetesSingleFlight<String, String> singleFlight = new KubernetesSingleFlight<>(
+				v -> v);
+
+		assertThatThrownBy(() -> singleFlight.execute("svc", () -> {
+			throw new IllegalStateException("boom");
+		})).isInstanceOf(IllegalStateException.class);
+		assertThat(singleFlight.execute("svc", () -> "a")).isEqualTo("a");
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
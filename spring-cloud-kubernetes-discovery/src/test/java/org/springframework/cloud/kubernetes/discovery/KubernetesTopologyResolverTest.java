@@ -0,0 +1,44 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KubernetesTopologyResolverTest {
+
+	private final AtomicLong now = new AtomicLong(42);
+
+	private final KubernetesTopologyResolver resolver = new KubernetesTopologyResolver(
+			null, null, Duration.ofMinutes(5), this.now::get);
+
+	@Test
+	public void changesGenerationOncePerNodeCacheTtl() {
+		long first = this.resolver.getGeneration();
+
+		this.now.addAndGet(Duration.ofMinutes(4).toNanos());
+		assertThat(this.resolver.getGeneration()).isEqualTo(first);
+
+		this.now.addAndGet(Duration.ofMinutes(1).toNanos());
+		assertThat(this.resolver.getGeneration()).isEqualTo(first + 1);
+	}
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.fabric8.kubernetes.api.model.DoneableEndpoints;
+import io.fabric8.kubernetes.api.model.DoneableService;
+import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.model.EndpointsBuilder;
+import io.fabric8.kubernetes.api.model.EndpointsList;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.ServiceBuilder;
+import io.fabric8.kubernetes.api.model.ServiceList;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.dsl.MixedOperation;
+import io.fabric8.kubernetes.client.dsl.Resource;
+import io.fabric8.kubernetes.client.dsl.ServiceResource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class KubernetesTtlDiscoveryCacheTest {
+
+	@Mock
+	private KubernetesClient kubernetesClient;
+
+	@Mock
+	private MixedOperation<Service, ServiceList, DoneableService, ServiceResource<Service, DoneableService>> serviceOperation;
+
+	@Mock
+	private MixedOperation<Endpoints, EndpointsList, DoneableEndpoints, Resource<Endpoints, DoneableEndpoints>> endpointsOperation;
+
+	@Mock
+	private ServiceResource<Service, DoneableService> serviceResource;
+
+	@Mock
+	private Resource<Endpoints, DoneableEndpoints> endpointsResource;
+
+	private final AtomicLong now = new AtomicLong();
+
+	private KubernetesDiscoveryProperties properties = new KubernetesDiscoveryProperties();
+
+	private KubernetesTtlDiscoveryCache underTest;
+
+	@Before
+	public void setUp() {
+		when(this.kubernetesClient.services()).thenReturn(this.serviceOperation);
+		when(this.kubernetesClient.endpoints()).thenReturn(this.endpointsOperation);
+		when(this.serviceOperation.withName("s1")).thenReturn(this.serviceResource);
+		when(this.endpointsOperation.withName("s1")).thenReturn(this.endpointsResource);
+		when(this.serviceResource.get()).thenReturn(new ServiceBuilder()
+				.withNewMetadata().withName("s1").withNamespace("test").endMetadata()
+				.build());
+		when(this.endpointsResource.get()).thenReturn(endpoints("ip1"),
+				endpoints("ip2"));
+
+		this.underTest = new KubernetesTtlDiscoveryCache(this.kubernetesClient,
+				this.properties, KubernetesClient::services, this.now::get);
+	}
+
+	@After
+	public void tearDown() {
+		this.underTest.stop();
+	}
+
+	@Test
+	public void servesFreshEntriesFromMemory() {
+		assertThat(ip(this.underTest)).isEqualTo("ip1");
+		advance(20);
+		assertThat(ip(this.underTest)).isEqualTo("ip1");
+		assertThat(this.underTest.getService("test", "s1")).isNotNull();
+
+		verify(this.endpointsResource, times(1)).get();
+	}
+
+	@Test
+	public void servesStaleEntriesWhileRefreshingInBackground() {
+		assertThat(ip(this.underTest)).isEqualTo("ip1");
+		advance(60);
+
+		// 过期的条目立即返回，后台刷新
+		assertThat(ip(this.underTest)).isEqualTo("ip1");
+		verify(this.endpointsResource, timeout(5000).times(2)).get();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!"ip2".equals(ip(this.underTest))
+				&& System.currentTimeMillis() < deadline) {
+			Thread.yield();
+		}
+		assertThat(ip(this.underTest)).isEqualTo("ip2");
+	}
+
+	@Test
+	public void reloadsEntriesOlderThanMaxStalenessBeforeAnswering() {
+		assertThat(ip(this.underTest)).isEqualTo("ip1");
+		advance(600);
+
+		assertThat(ip(this.underTest)).isEqualTo("ip2");
+	}
+
+	@Test
+	public void isOnlyCachedWhileLookupsDoNotWaitForTheApiServer() {
+		assertThat(this.underTest.isSynced("s1")).isTrue();
+		assertThat(this.underTest.isCached("s1")).isFalse();
+
+		assertThat(ip(this.underTest)).isEqualTo("ip1");
+		assertThat(this.underTest.isCached("s1")).isTrue();
+
+		advance(600);
+		assertThat(this.underTest.isCached("s1")).isFalse();
+		assertThat(this.underTest.isCached("other")).isFalse();
+	}
+
+	private void advance(long seconds) {
+		this.now.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+	}
+
+	private static String ip(KubernetesTtlDiscoveryCache cache) {
+		return cache.getEndpoints("s1").get(0).getSubsets().get(0).getAddresses().get(0)
+				.getIp();
+	}
+
+	private static Endpoints endpoints(String ip) {
+		return new EndpointsBuilder().withNewMetadata().withName("s1")
+				.withNamespace("test").endMetadata().addNewSubset().addNewAddress()
+				.withIp(ip).endAddress().addNewPort("http", 80, "TCP").endSubset()
+				.build();
+	}
+
+}
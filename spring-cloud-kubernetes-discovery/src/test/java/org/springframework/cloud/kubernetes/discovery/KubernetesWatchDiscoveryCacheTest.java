@@ -0,0 +1,230 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.io.File;
+import java.util.List;
+
+import io.fabric8.kubernetes.api.model.DoneableEndpoints;
+import io.fabric8.kubernetes.api.model.DoneableService;
+import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.model.EndpointsBuilder;
+import io.fabric8.kubernetes.api.model.EndpointsList;
+import io.fabric8.kubernetes.api.model.EndpointsListBuilder;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.ServiceBuilder;
+import io.fabric8.kubernetes.api.model.ServiceList;
+import io.fabric8.kubernetes.api.model.ServiceListBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.kubernetes.client.dsl.MixedOperation;
+import io.fabric8.kubernetes.client.dsl.Resource;
+import io.fabric8.kubernetes.client.dsl.ServiceResource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import org.springframework.cloud.client.ServiceInstance;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class KubernetesWatchDiscoveryCacheTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Mock
+	private KubernetesClient kubernetesClient;
+
+	@Mock
+	private MixedOperation<Service, ServiceList, DoneableService, ServiceResource<Service, DoneableService>> serviceOperation;
+
+	@Mock
+	private MixedOperation<Endpoints, EndpointsList, DoneableEndpoints, Resource<Endpoints, DoneableEndpoints>> endpointsOperation;
+
+	@Mock
+	private Watch servicesWatch;
+
+	@Mock
+	private Watch endpointsWatch;
+
+	@Captor
+	private ArgumentCaptor<Watcher<Endpoints>> endpointsWatcher;
+
+	private KubernetesDiscoveryProperties properties = new KubernetesDiscoveryProperties();
+
+	private KubernetesWatchDiscoveryCache underTest;
+
+	@Before
+	public void setUp() {
+		when(this.kubernetesClient.services()).thenReturn(this.serviceOperation);
+		when(this.kubernetesClient.endpoints()).thenReturn(this.endpointsOperation);
+		when(this.serviceOperation.list()).thenReturn(new ServiceListBuilder()
+				.withNewMetadata().withResourceVersion("10").endMetadata()
+				.addToItems(service("s1")).build());
+		when(this.endpointsOperation.list()).thenReturn(new EndpointsListBuilder()
+				.withNewMetadata().withResourceVersion("20").endMetadata()
+				.addToItems(endpoints("s1", "ip1")).build());
+		when(this.serviceOperation.watch(eq("10"), any()))
+				.thenReturn(this.servicesWatch);
+		when(this.endpointsOperation.watch(eq("20"), this.endpointsWatcher.capture()))
+				.thenReturn(this.endpointsWatch);
+
+		this.underTest = new KubernetesWatchDiscoveryCache(this.kubernetesClient,
+				this.properties, KubernetesClient::services);
+	}
+
+	@After
+	public void tearDown() {
+		this.underTest.stop();
+	}
+
+	@Test
+	public void servesServicesAndEndpointsOnceSynced() throws Exception {
+		assertThat(this.underTest.isSynced()).isFalse();
+
+		startAndAwaitSync();
+
+		assertThat(this.underTest.getServices()).extracting(s -> s.getMetadata().getName())
+				.containsOnly("s1");
+		assertThat(this.underTest.getService("test", "s1")).isNotNull();
+		assertThat(this.underTest.getService("other", "s1")).isNull();
+		assertThat(this.underTest.getEndpoints("s1")).hasSize(1);
+		assertThat(this.underTest.getEndpoints("s2")).isEmpty();
+	}
+
+	@Test
+	public void appliesWatchEvents() throws Exception {
+		startAndAwaitSync();
+		Watcher<Endpoints> watcher = this.endpointsWatcher.getValue();
+
+		watcher.eventReceived(Watcher.Action.MODIFIED, endpoints("s1", "ip2"));
+		assertThat(this.underTest.getEndpoints("s1")).hasSize(1);
+		assertThat(this.underTest.getEndpoints("s1").get(0).getSubsets().get(0)
+				.getAddresses().get(0).getIp()).isEqualTo("ip2");
+
+		watcher.eventReceived(Watcher.Action.DELETED, endpoints("s1", "ip2"));
+		assertThat(this.underTest.getEndpoints("s1")).isEmpty();
+	}
+
+	@Test
+	public void discoveryClientAnswersFromCache() throws Exception {
+		startAndAwaitSync();
+
+		KubernetesDiscoveryClient discoveryClient = new KubernetesDiscoveryClient(
+				this.kubernetesClient, this.properties, KubernetesClient::services,
+				new DefaultIsServicePortSecureResolver(this.properties), this.underTest);
+
+		List<ServiceInstance> instances = discoveryClient.getInstances("s1");
+		assertThat(instances).hasSize(1);
+		assertThat(instances.get(0).getHost()).isEqualTo("ip1");
+		assertThat(discoveryClient.getServices()).containsOnly("s1");
+	}
+
+	@Test
+	public void stopClosesWatches() throws Exception {
+		startAndAwaitSync();
+
+		this.underTest.stop();
+
+		verify(this.servicesWatch).close();
+		verify(this.endpointsWatch).close();
+	}
+
+	@Test
+	public void resumesFromSnapshot() throws Exception {
+		File snapshotFile = new File(this.temporaryFolder.getRoot(), "discovery.json.gz");
+		this.properties.getCache().setSnapshotFile(snapshotFile.getPath());
+		when(this.endpointsOperation.watch(eq("21"), any()))
+				.thenReturn(this.endpointsWatch);
+		startAndAwaitSync();
+		Endpoints modified = endpoints("s1", "ip2");
+		modified.getMetadata().setResourceVersion("21");
+		this.endpointsWatcher.getValue().eventReceived(Watcher.Action.MODIFIED,
+				modified);
+		this.underTest.stop();
+		assertThat(snapshotFile).exists();
+
+		this.underTest = new KubernetesWatchDiscoveryCache(this.kubernetesClient,
+				this.properties, KubernetesClient::services);
+		this.underTest.start();
+
+		// 快照加载后立即可用，无需等待list
+		assertThat(this.underTest.isSynced()).isTrue();
+		assertThat(this.underTest.getEndpoints("s1").get(0).getSubsets().get(0)
+				.getAddresses().get(0).getIp()).isEqualTo("ip2");
+		verify(this.serviceOperation, timeout(5000).times(2)).watch(eq("10"), any());
+		verify(this.endpointsOperation, timeout(5000)).watch(eq("21"), any());
+		verify(this.serviceOperation, times(1)).list();
+		verify(this.endpointsOperation, times(1)).list();
+	}
+
+	@Test
+	public void ignoresSnapshotOfAnotherScope() throws Exception {
+		File snapshotFile = new File(this.temporaryFolder.getRoot(), "discovery.json.gz");
+		this.properties.getCache().setSnapshotFile(snapshotFile.getPath());
+		startAndAwaitSync();
+		this.underTest.stop();
+		assertThat(snapshotFile).exists();
+
+		this.properties.getServiceLabels().put("app", "other");
+		this.underTest = new KubernetesWatchDiscoveryCache(this.kubernetesClient,
+				this.properties, KubernetesClient::services);
+		startAndAwaitSync();
+
+		// the snapshot was written for other labels, so everything is listed again
+		verify(this.serviceOperation, times(2)).list();
+		verify(this.endpointsOperation, times(2)).list();
+	}
+
+	private void startAndAwaitSync() throws InterruptedException {
+		this.underTest.start();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!this.underTest.isSynced() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertThat(this.underTest.isSynced()).isTrue();
+	}
+
+	private static Service service(String name) {
+		return new ServiceBuilder().withNewMetadata().withName(name)
+				.withNamespace("test").endMetadata().build();
+	}
+
+	private static Endpoints endpoints(String name, String ip) {
+		return new EndpointsBuilder().withNewMetadata().withName(name)
+				.withNamespace("test").endMetadata().addNewSubset().addNewAddress()
+				.withIp(ip).endAddress().addNewPort("http", 80, "TCP").endSubset()
+				.build();
+	}
+
+}
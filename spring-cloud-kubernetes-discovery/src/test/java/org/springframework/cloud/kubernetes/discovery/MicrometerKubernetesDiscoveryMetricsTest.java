@@ -0,0 +1,92 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.kubernetes.discovery;
+
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.MockClock;
+import io.micrometer.core.instrument.simple.SimpleConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MicrometerKubernetesDiscoveryMetricsTest {
+
+	private final MockClock clock = new MockClock();
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry(
+			SimpleConfig.DEFAULT, this.clock);
+
+	private final MicrometerKubernetesDiscoveryMetrics metrics = new MicrometerKubernetesDiscoveryMetrics(
+			this.registry);
+
+	@Test
+	public void timesApiCallsAndCountsErrors() {
+		assertThat(this.metrics.recordApiCall("getEndpoints", () -> {
+			this.clock.add(20, TimeUnit.MILLISECONDS);
+			return "endpoints";
+		})).isEqualTo("endpoints");
+		assertThatThrownBy(() -> this.metrics.recordApiCall("getEndpoints", () -> {
+			throw new IllegalStateException("boom");
+		})).isInstanceOf(IllegalStateException.class);
+
+		assertThat(this.registry.get(MicrometerKubernetesDiscoveryMetrics.API_REQUESTS)
+				.tag("operation", "getEndpoints").timer().count()).isEqualTo(2);
+		assertThat(this.registry.get(MicrometerKubernetesDiscoveryMetrics.API_REQUESTS)
+				.tag("operation", "getEndpoints").timer()
+				.totalTime(TimeUnit.MILLISECONDS)).isEqualTo(20);
+		assertThat(this.registry.get(MicrometerKubernetesDiscoveryMetrics.API_ERRORS)
+				.tag("operation", "getEndpoints")
+				.tag("exception", "IllegalStateException").counter().count())
+						.isEqualTo(1);
+	}
+
+	@Test
+	public void recordsInstancesAndCacheLookups() {
+		this.metrics.recordInstances("service", 3);
+		this.metrics.recordInstances("service", 5);
+		this.metrics.recordCacheLookup(true);
+		this.metrics.recordCacheLookup(true);
+		this.metrics.recordCacheLookup(false);
+
+		assertThat(this.registry.get(MicrometerKubernetesDiscoveryMetrics.INSTANCES)
+				.tag("service", "service").summary().totalAmount()).isEqualTo(8);
+		assertThat(this.registry.get(MicrometerKubernetesDiscoveryMetrics.CACHE_LOOKUPS)
+				.tag("result", "hit").counter().count()).isEqualTo(2);
+		assertThat(this.registry.get(MicrometerKubernetesDiscoveryMetrics.CACHE_LOOKUPS)
+				.tag("result", "miss").counter().count()).isEqualTo(1);
+	}
+
+	@Test
+	public void tracksCatalogSizeAndRefreshAge() {
+		assertThat(this.registry
+				.get(MicrometerKubernetesDiscoveryMetrics.CATALOG_REFRESH_AGE).timeGauge()
+				.value(TimeUnit.SECONDS)).isNaN();
+
+		this.metrics.recordCatalogRefresh(42);
+		this.clock.add(30, TimeUnit.SECONDS);
+
+		assertThat(this.registry.get(MicrometerKubernetesDiscoveryMetrics.CATALOG_SIZE)
+				.gauge().value()).isEqualTo(42);
+		assertThat(this.registry
+				.get(MicrometerKubernetesDiscoveryMetrics.CATALOG_REFRESH_AGE).timeGauge()
+				.value(TimeUnit.SECONDS)).isEqualTo(30);
+	}
+
+}
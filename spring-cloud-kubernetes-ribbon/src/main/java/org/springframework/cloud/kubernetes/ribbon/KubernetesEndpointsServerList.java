@@ -17,19 +17,27 @@
 package org.springframework.cloud.kubernetes.ribbon;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 import com.netflix.loadbalancer.Server;
 import io.fabric8.kubernetes.api.model.EndpointAddress;
 import io.fabric8.kubernetes.api.model.EndpointPort;
 import io.fabric8.kubernetes.api.model.EndpointSubset;
 import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.model.ObjectReference;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.kubernetes.client.utils.Utils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import org.springframework.cloud.kubernetes.discovery.KubernetesEndpointSliceClient;
+import org.springframework.cloud.kubernetes.discovery.KubernetesTopologyResolver;
+
 /**
  * the KubernetesEndpointsServerList description.
  *
@@ -39,6 +47,12 @@ public class KubernetesEndpointsServerList extends KubernetesServerList {
 
 	private static final Log LOG = LogFactory.getLog(KubernetesEndpointsServerList.class);
 
+	private final KubernetesTopologyResolver topologyResolver;
+
+	private volatile Map<ServerKey, Server> servers = Collections.emptyMap();
+
+	private volatile List<Server> serverList = Collections.emptyList();
+
 	/**
 	 * Instantiates a new Kubernetes endpoints server list.
 	 * @param client the client
@@ -46,16 +60,51 @@ public class KubernetesEndpointsServerList extends KubernetesServerList {
 	 */
 	KubernetesEndpointsServerList(KubernetesClient client,
 			KubernetesRibbonProperties properties) {
-		super(client, properties);
+		this(client, properties, null, null);
+	}
+
+	/**
+	 * Instantiates a new Kubernetes endpoints server list reading from a shared cache.
+	 * @param client the client
+	 * @param properties the properties
+	 * @param cache the shared cache, or null
+	 */
+	KubernetesEndpointsServerList(KubernetesClient client,
+			KubernetesRibbonProperties properties, KubernetesRibbonCache cache) {
+		this(client, properties, cache, null);
+	}
+
+	/**
+	 * Instantiates a new Kubernetes endpoints server list with zone aware servers.
+	 * @param client the client
+	 * @param properties the properties
+	 * @param cache the shared cache, or null
+	 * @param topologyResolver resolves the zone of servers, or null
+	 */
+	KubernetesEndpointsServerList(KubernetesClient client,
+			KubernetesRibbonProperties properties, KubernetesRibbonCache cache,
+			KubernetesTopologyResolver topologyResolver) {
+		super(client, properties, cache);
+		this.topologyResolver = topologyResolver;
 	}
 
 	@Override
 	public List<Server> getUpdatedListOfServers() {
-		List<Server> result = new ArrayList<>();
-		Endpoints endpoints = StringUtils.isNotBlank(this.getNamespace())
-				? this.getClient().endpoints().inNamespace(this.getNamespace())
-						.withName(this.getServiceId()).get()
-				: this.getClient().endpoints().withName(this.getServiceId()).get();
+		Map<ServerKey, Server> current = new LinkedHashMap<>();
+		Endpoints endpoints;
+		if (this.getCache() != null) {
+			endpoints = this.getCache().getEndpoints(this.getNamespace(),
+					this.getServiceId());
+		}
+		else if (this.getProperties().isUseEndpointSlices()) {
+			endpoints = getEndpointsFromSlices();
+		}
+		else {
+			endpoints = StringUtils.isNotBlank(this.getNamespace())
+					? this.getClient().endpoints().inNamespace(this.getNamespace())
+							.withName(this.getServiceId()).get()
+					: this.getClient().endpoints().withName(this.getServiceId()).get();
+		}
 		if (endpoints != null) {
 			if (LOG.isDebugEnabled()) {
 				LOG.debug(String.format(
@@ -69,7 +118,7 @@ public class KubernetesEndpointsServerList extends KubernetesServerList {
 				if (subset.getPorts().size() == 1) {
 					EndpointPort port = subset.getPorts().get(getFIRST());
 					for (EndpointAddress address : subset.getAddresses()) {
-						result.add(new Server(address.getIp(), port.getPort()));
+						addServer(current, address, port);
 					}
 				}
 				else {
@@ -77,20 +126,111 @@ public class KubernetesEndpointsServerList extends KubernetesServerList {
 						if (Utils.isNullOrEmpty(this.getPortName())
 								|| this.getPortName().endsWith(port.getName())) {
 							for (EndpointAddress address : subset.getAddresses()) {
-								result.add(new Server(address.getIp(), port.getPort()));
+								addServer(current, address, port);
 							}
 						}
 					}
 				}
 			}
 		}
-		if (result.isEmpty()) {
+		if (current.isEmpty()) {
 			LOG.warn(String.format(
 					"Did not find any endpoints in ribbon in namespace [%s] for name [%s] and portName [%s]",
 					this.getNamespace(), this.getServiceId(), this.getPortName()));
 		}
 
-		return result;
+		return update(current);
+	}
+
+	// 地址、端口和pod都没变的server沿用原来的对象，负载均衡器的统计信息得以保留
+	private void addServer(Map<ServerKey, Server> current, EndpointAddress address,
+			EndpointPort port) {
+		ObjectReference targetRef = address.getTargetRef();
+		String podUid = targetRef != null ? targetRef.getUid() : null;
+		ServerKey key = new ServerKey(address.getIp(), port.getPort(), podUid);
+		if (current.containsKey(key)) {
+			return;
+		}
+		Server server = this.servers.get(key);
+		if (server == null) {
+			server = new KubernetesPodServer(address.getIp(), port.getPort(), podUid,
+					targetRef != null ? targetRef.getName() : null);
+		}
+		if (this.topologyResolver != null
+				&& Server.UNKNOWN_ZONE.equals(server.getZone())) {
+			// 查不到zone的server下次刷新时再试
+			String zone = this.topologyResolver.getZone(address.getNodeName());
+			if (zone != null) {
+				server.setZone(zone);
+			}
+		}
+		current.put(key, server);
+	}
+
+	private synchronized List<Server> update(Map<ServerKey, Server> current) {
+		if (current.keySet().equals(this.servers.keySet())) {
+			return this.serverList;
+		}
+		if (LOG.isDebugEnabled()) {
+			int added = 0;
+			for (ServerKey key : current.keySet()) {
+				if (!this.servers.containsKey(key)) {
+					added++;
+				}
+			}
+			LOG.debug(String.format(
+					"Servers of name [%s] changed, [%d] added and [%d] removed",
+					this.getServiceId(), added,
+					this.servers.size() - (current.size() - added)));
+		}
+		this.servers = current;
+		this.serverList = new ArrayList<>(current.values());
+		return this.serverList;
+	}
+
+	private Endpoints getEndpointsFromSlices() {
+		String namespace = StringUtils.isNotBlank(this.getNamespace())
+				? this.getNamespace() : this.getClient().getNamespace();
+		return KubernetesEndpointSliceClient.toEndpoints(namespace, this.getServiceId(),
+				new KubernetesEndpointSliceClient(this.getClient()).list(namespace,
+						this.getServiceId()));
+	}
+
+	/**
+	 * The identity of a server: its address, port and pod.
+	 */
+	private static final class ServerKey {
+
+		private final String ip;
+
+		private final int port;
+
+		private final String podUid;
+
+		ServerKey(String ip, int port, String podUid) {
+			this.ip = ip;
+			this.port = port;
+			this.podUid = podUid;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (o == null || getClass() != o.getClass()) {
+				return false;
+			}
+			ServerKey that = (ServerKey) o;
+			return this.port == that.port && Objects.equals(this.ip, that.ip)
+					&& Objects.equals(this.podUid, that.podUid);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(this.ip, this.port, this.podUid);
+		}
+
 	}
 
 }
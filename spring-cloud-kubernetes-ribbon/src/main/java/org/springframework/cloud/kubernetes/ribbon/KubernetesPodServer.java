@@ -0,0 +1,84 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.cloud.kubernetes.ribbon;
+
+import java.util.Objects;
+
+import com.netflix.loadbalancer.Server;
+
+/**
+ * A {@link Server} backed by a pod.
+ *
+ * Two servers are only equal if they also belong to the same pod, so that a new pod
+ * reusing the address of a deleted one does not inherit its statistics in the load
+ * balancer. A pod server is never equal to a server of another class.
+ */
+public class KubernetesPodServer extends Server {
+
+	private final String podUid;
+
+	private final String podName;
+
+	/**
+	 * Instantiates a new Kubernetes pod server.
+	 * @param host the pod ip
+	 * @param port the port
+	 * @param podUid the uid of the pod, or null if unknown
+	 * @param podName the name of the pod, or null if unknown
+	 */
+	public KubernetesPodServer(String host, int port, String podUid, String podName) {
+		super(host, port);
+		this.podUid = podUid;
+		this.podName = podName;
+	}
+
+	/**
+	 * Gets pod uid.
+	 * @return the uid of the pod, or null
+	 */
+	public String getPodUid() {
+		return podUid;
+	}
+
+	/**
+	 * Gets pod name.
+	 * @return the name of the pod, or null
+	 */
+	public String getPodName() {
+		return podName;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		KubernetesPodServer other = (KubernetesPodServer) obj;
+		return Objects.equals(getId(), other.getId())
+				&& Objects.equals(this.podUid, other.podUid);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * super.hashCode() + Objects.hashCode(this.podUid);
+	}
+
+}
@@ -0,0 +1,491 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.cloud.kubernetes.ribbon;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.model.EndpointsList;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.KubernetesResourceList;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.ServiceList;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.kubernetes.client.dsl.FilterWatchListDeletable;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.cloud.kubernetes.discovery.KubernetesEndpointSlice;
+import org.springframework.cloud.kubernetes.discovery.KubernetesEndpointSliceClient;
+import org.springframework.cloud.kubernetes.discovery.KubernetesEndpointSliceList;
+
+/**
+ * Endpoints and services shared by the server lists of every Ribbon client.
+ *
+ * The endpoints, or the EndpointSlices if
+ * {@link KubernetesRibbonProperties#isUseEndpointSlices()} is set, and the services of
+ * a namespace are listed once, on the first lookup in that namespace, and then kept up
+ * to date with a single watch per namespace and kind. The number of API calls therefore
+ * depends on the number of namespaces the clients look up, not on the number of
+ * clients or on how often they refresh their server list.
+ *
+ * When a watch is closed the namespace is listed and watched again in the background,
+ * lookups made meanwhile list it themselves.
+ */
+public class KubernetesRibbonCache {
+
+	private static final Log LOG = LogFactory.getLog(KubernetesRibbonCache.class);
+
+	private static final long RESYNC_DELAY_MS = 1000;
+
+	private static final String NO_NAMESPACE = "";
+
+	private final KubernetesClient client;
+
+	private final KubernetesRibbonProperties properties;
+
+	private final ConcurrentMap<String, ResourceCache<Endpoints>> endpoints = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<String, ResourceCache<Service>> services = new ConcurrentHashMap<>();
+
+	private final ScheduledExecutorService executor;
+
+	private volatile boolean stopped;
+
+	public KubernetesRibbonCache(KubernetesClient client,
+			KubernetesRibbonProperties properties) {
+		this.client = client;
+		this.properties = properties;
+		this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "kubernetes-ribbon-cache");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@PreDestroy
+	public void stop() {
+		this.stopped = true;
+		this.executor.shutdownNow();
+		this.endpoints.values().forEach(ResourceCache::close);
+		this.services.values().forEach(ResourceCache::close);
+	}
+
+	/**
+	 * @param namespace the namespace, or null for the namespace of the client
+	 * @param name the service name
+	 * @return the endpoints of the service, or null if there are none
+	 */
+	public Endpoints getEndpoints(String namespace, String name) {
+		return endpointsOf(namespace).get(name);
+	}
+
+	/**
+	 * @param namespace the namespace, or null for the namespace of the client
+	 * @param name the service name
+	 * @return the service, or null if it does not exist
+	 */
+	public Service getService(String namespace, String name) {
+		return servicesOf(namespace).get(name);
+	}
+
+	/**
+	 * Calls a listener whenever the endpoints of a service may have changed. The
+	 * listener is called on the thread of the watch and must not block.
+	 * @param namespace the namespace, or null for the namespace of the client
+	 * @param name the service name
+	 * @param listener the listener
+	 * @return closing it removes the listener
+	 */
+	public Watch watchEndpoints(String namespace, String name, Runnable listener) {
+		return endpointsOf(namespace).addListener(name, listener);
+	}
+
+	private ResourceCache<Endpoints> endpointsOf(String namespace) {
+		return this.endpoints.computeIfAbsent(namespace(namespace),
+				ns -> this.properties.isUseEndpointSlices() ? new SliceCache(ns)
+						: new NamedResourceCache<Endpoints, EndpointsList>(ns,
+								() -> endpointsOperation(ns)));
+	}
+
+	private ResourceCache<Service> servicesOf(String namespace) {
+		return this.services.computeIfAbsent(namespace(namespace),
+				ns -> new NamedResourceCache<Service, ServiceList>(ns,
+						() -> servicesOperation(ns)));
+	}
+
+	private String namespace(String namespace) {
+		if (StringUtils.isNotBlank(namespace)) {
+			return namespace;
+		}
+		String current = this.client.getNamespace();
+		return current != null ? current : NO_NAMESPACE;
+	}
+
+	private FilterWatchListDeletable<Endpoints, EndpointsList, Boolean, Watch, Watcher<Endpoints>> endpointsOperation(
+			String namespace) {
+		if (NO_NAMESPACE.equals(namespace)) {
+			return this.client.endpoints();
+		}
+		return this.client.endpoints().inNamespace(namespace);
+	}
+
+	private FilterWatchListDeletable<Service, ServiceList, Boolean, Watch, Watcher<Service>> servicesOperation(
+			String namespace) {
+		if (NO_NAMESPACE.equals(namespace)) {
+			return this.client.services();
+		}
+		return this.client.services().inNamespace(namespace);
+	}
+
+	/**
+	 * The resources of a single kind and namespace.
+	 *
+	 * @param <T> the type returned by lookups
+	 */
+	private abstract class ResourceCache<T> {
+
+		final String namespace;
+
+		private final ConcurrentMap<String, Set<Runnable>> listeners = new ConcurrentHashMap<>();
+
+		private volatile boolean synced;
+
+		private volatile String resourceVersion;
+
+		private Watch watch;
+
+		ResourceCache(String namespace) {
+			this.namespace = namespace;
+		}
+
+		/**
+		 * Lists the resources of the namespace into a new store.
+		 * @return the resource version of the list, or null
+		 */
+		abstract String list();
+
+		abstract Watch watch(String resourceVersion);
+
+		abstract T lookup(String name);
+
+		T get(String name) {
+			sync();
+			return lookup(name);
+		}
+
+		Watch addListener(String name, Runnable listener) {
+			this.listeners.computeIfAbsent(name, key -> new CopyOnWriteArraySet<>())
+					.add(listener);
+			sync();
+			return () -> {
+				Set<Runnable> registered = this.listeners.get(name);
+				if (registered != null) {
+					registered.remove(listener);
+				}
+			};
+		}
+
+		void sync() {
+			if (!this.synced) {
+				syncNow();
+			}
+		}
+
+		private synchronized void syncNow() {
+			if (this.synced) {
+				return;
+			}
+			String resourceVersion = list();
+			this.resourceVersion = resourceVersion;
+			if (!KubernetesRibbonCache.this.stopped) {
+				this.watch = watch(resourceVersion);
+			}
+			this.synced = true;
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Listed and watching " + getClass().getSimpleName()
+						+ " in namespace [" + this.namespace + "]");
+			}
+		}
+
+		synchronized void close() {
+			Watch current = this.watch;
+			this.watch = null;
+			if (current != null) {
+				current.close();
+			}
+		}
+
+		void changed(String name, String resourceVersion) {
+			if (resourceVersion != null) {
+				this.resourceVersion = resourceVersion;
+			}
+			Set<Runnable> registered = name != null ? this.listeners.get(name) : null;
+			if (registered != null) {
+				registered.forEach(Runnable::run);
+			}
+		}
+
+		void closed(KubernetesClientException cause) {
+			synchronized (this) {
+				if (KubernetesRibbonCache.this.stopped) {
+					return;
+				}
+				this.watch = null;
+				// API server正常结束watch时从最后的版本继续，不丢事件
+				if (cause == null && rewatch()) {
+					return;
+				}
+				this.synced = false;
+			}
+			LOG.debug("A watch in namespace [" + this.namespace
+					+ "] was closed, listing again", cause);
+			resyncLater();
+		}
+
+		private boolean rewatch() {
+			String current = this.resourceVersion;
+			if (current == null) {
+				return false;
+			}
+			try {
+				this.watch = watch(current);
+				LOG.debug("Watching again in namespace [" + this.namespace
+						+ "] from resource version " + current);
+				return true;
+			}
+			catch (Exception e) {
+				LOG.debug("Could not watch again in namespace [" + this.namespace
+						+ "] from resource version " + current, e);
+				return false;
+			}
+		}
+
+		// watch关闭期间的变化已经丢失，重新list后通知所有监听者
+		private void resyncLater() {
+			if (KubernetesRibbonCache.this.stopped) {
+				return;
+			}
+			KubernetesRibbonCache.this.executor.schedule(() -> {
+				try {
+					sync();
+					this.listeners.values()
+							.forEach(registered -> registered.forEach(Runnable::run));
+				}
+				catch (Exception e) {
+					LOG.warn("Could not list again in namespace [" + this.namespace
+							+ "], retrying", e);
+					resyncLater();
+				}
+			}, RESYNC_DELAY_MS, TimeUnit.MILLISECONDS);
+		}
+
+	}
+
+	/**
+	 * Endpoints or services, indexed by name.
+	 */
+	private final class NamedResourceCache<T extends HasMetadata, L extends KubernetesResourceList<T>>
+			extends ResourceCache<T> implements Watcher<T> {
+
+		private final Supplier<FilterWatchListDeletable<T, L, Boolean, Watch, Watcher<T>>> operation;
+
+		private volatile ConcurrentMap<String, T> store = new ConcurrentHashMap<>();
+
+		NamedResourceCache(String namespace,
+				Supplier<FilterWatchListDeletable<T, L, Boolean, Watch, Watcher<T>>> operation) {
+			super(namespace);
+			this.operation = operation;
+		}
+
+		@Override
+		String list() {
+			L list = this.operation.get().list();
+			ConcurrentMap<String, T> listed = new ConcurrentHashMap<>();
+			if (list.getItems() != null) {
+				for (T item : list.getItems()) {
+					listed.put(item.getMetadata().getName(), item);
+				}
+			}
+			this.store = listed;
+			return list.getMetadata() != null ? list.getMetadata().getResourceVersion()
+					: null;
+		}
+
+		@Override
+		Watch watch(String resourceVersion) {
+			return resourceVersion != null
+					? this.operation.get().watch(resourceVersion, this)
+					: this.operation.get().watch(this);
+		}
+
+		@Override
+		T lookup(String name) {
+			return this.store.get(name);
+		}
+
+		@Override
+		public void eventReceived(Action action, T resource) {
+			String name = resource.getMetadata().getName();
+			switch (action) {
+			case ADDED:
+			case MODIFIED:
+				this.store.put(name, resource);
+				break;
+			case DELETED:
+				this.store.remove(name);
+				break;
+			default:
+				return;
+			}
+			changed(name, resource.getMetadata().getResourceVersion());
+		}
+
+		@Override
+		public void onClose(KubernetesClientException cause) {
+			closed(cause);
+		}
+
+	}
+
+	/**
+	 * EndpointSlices indexed by service name, namespace and slice name, merged into
+	 * endpoints on lookup. Without a namespace the slices of every namespace are
+	 * watched, and a service is only found if a single namespace has it.
+	 */
+	private final class SliceCache extends ResourceCache<Endpoints>
+			implements Watcher<KubernetesEndpointSlice> {
+
+		private final KubernetesEndpointSliceClient sliceClient = new KubernetesEndpointSliceClient(
+				KubernetesRibbonCache.this.client);
+
+		// 服务名 -> 命名空间 -> slice名
+		private volatile ConcurrentMap<String, ConcurrentMap<String, ConcurrentMap<String, KubernetesEndpointSlice>>> store = new ConcurrentHashMap<>();
+
+		SliceCache(String namespace) {
+			super(namespace);
+		}
+
+		@Override
+		String list() {
+			KubernetesEndpointSliceList list = this.sliceClient.list(sliceNamespace());
+			ConcurrentMap<String, ConcurrentMap<String, ConcurrentMap<String, KubernetesEndpointSlice>>> listed = new ConcurrentHashMap<>();
+			if (list.getItems() != null) {
+				for (KubernetesEndpointSlice slice : list.getItems()) {
+					put(listed, slice);
+				}
+			}
+			this.store = listed;
+			return list.getMetadata() != null ? list.getMetadata().getResourceVersion()
+					: null;
+		}
+
+		@Override
+		Watch watch(String resourceVersion) {
+			return this.sliceClient.watch(sliceNamespace(), resourceVersion, this);
+		}
+
+		@Override
+		Endpoints lookup(String name) {
+			Map<String, ConcurrentMap<String, KubernetesEndpointSlice>> byNamespace = this.store
+					.get(name);
+			if (byNamespace == null || byNamespace.isEmpty()) {
+				return null;
+			}
+			// 不同命名空间的同名服务不能合并
+			if (byNamespace.size() > 1) {
+				LOG.warn("Service [" + name + "] exists in namespaces "
+						+ byNamespace.keySet() + ", set the namespace of the client");
+				return null;
+			}
+			Map.Entry<String, ConcurrentMap<String, KubernetesEndpointSlice>> slices = byNamespace
+					.entrySet().iterator().next();
+			return KubernetesEndpointSliceClient.toEndpoints(slices.getKey(), name,
+					new ArrayList<>(slices.getValue().values()));
+		}
+
+		@Override
+		public void eventReceived(Action action, KubernetesEndpointSlice slice) {
+			String serviceName = slice.getServiceName();
+			switch (action) {
+			case ADDED:
+			case MODIFIED:
+				put(this.store, slice);
+				break;
+			case DELETED:
+				if (serviceName != null) {
+					this.store.computeIfPresent(serviceName, (k, byNamespace) -> {
+						byNamespace.computeIfPresent(namespaceOf(slice), (ns, slices) -> {
+							slices.remove(slice.getMetadata().getName());
+							return slices.isEmpty() ? null : slices;
+						});
+						return byNamespace.isEmpty() ? null : byNamespace;
+					});
+				}
+				break;
+			default:
+				return;
+			}
+			changed(serviceName, slice.getMetadata().getResourceVersion());
+		}
+
+		@Override
+		public void onClose(KubernetesClientException cause) {
+			closed(cause);
+		}
+
+		private String sliceNamespace() {
+			return NO_NAMESPACE.equals(this.namespace) ? null : this.namespace;
+		}
+
+		private String namespaceOf(KubernetesEndpointSlice slice) {
+			String sliceNamespace = slice.getMetadata().getNamespace();
+			return sliceNamespace != null ? sliceNamespace : this.namespace;
+		}
+
+		// 没有服务名标签的slice不属于任何服务
+		private void put(
+				ConcurrentMap<String, ConcurrentMap<String, ConcurrentMap<String, KubernetesEndpointSlice>>> store,
+				KubernetesEndpointSlice slice) {
+			String serviceName = slice.getServiceName();
+			if (serviceName != null) {
+				store.computeIfAbsent(serviceName, k -> new ConcurrentHashMap<>())
+						.computeIfAbsent(namespaceOf(slice),
+								k -> new ConcurrentHashMap<>())
+						.put(slice.getMetadata().getName(), slice);
+			}
+		}
+
+	}
+
+}
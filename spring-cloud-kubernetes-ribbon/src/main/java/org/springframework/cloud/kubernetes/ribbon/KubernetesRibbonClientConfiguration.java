@@ -16,12 +16,23 @@
 
 package org.springframework.cloud.kubernetes.ribbon;
 
+import javax.annotation.PostConstruct;
+
 import com.netflix.client.config.IClientConfig;
+import com.netflix.config.ConfigurationManager;
+import com.netflix.config.DeploymentContext.ContextKey;
+import com.netflix.loadbalancer.IRule;
+import com.netflix.loadbalancer.PollingServerListUpdater;
 import com.netflix.loadbalancer.ServerList;
+import com.netflix.loadbalancer.ServerListUpdater;
 import io.fabric8.kubernetes.client.KubernetesClient;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.kubernetes.discovery.KubernetesTopologyResolver;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -34,22 +45,74 @@ import org.springframework.context.annotation.Configuration;
 @EnableConfigurationProperties(KubernetesRibbonProperties.class)
 public class KubernetesRibbonClientConfiguration {
 
+	@Autowired
+	private KubernetesRibbonProperties properties;
+
+	@Autowired
+	private ObjectProvider<KubernetesTopologyResolver> topologyResolver;
+
 	public KubernetesRibbonClientConfiguration() {
 	}
 
+	/**
+	 * Sets the zone of the client, read by the zone aware load balancer and server list
+	 * filters, to the zone of the current pod unless it is already set.
+	 */
+	@PostConstruct
+	public void preprocess() {
+		if (!this.properties.isZoneAware()
+				|| this.properties.getMode() == KubernetesRibbonMode.SERVICE) {
+			return;
+		}
+		KubernetesTopologyResolver resolver = this.topologyResolver.getIfAvailable();
+		String zone = resolver != null ? resolver.getCurrentZone() : null;
+		if (zone != null && ConfigurationManager.getDeploymentContext()
+				.getValue(ContextKey.zone) == null) {
+			ConfigurationManager.getDeploymentContext().setValue(ContextKey.zone, zone);
+		}
+	}
+
 	@Bean
 	@ConditionalOnMissingBean
 	public ServerList<?> ribbonServerList(KubernetesClient client, IClientConfig config,
-			KubernetesRibbonProperties properties) {
+			KubernetesRibbonProperties properties,
+			ObjectProvider<KubernetesRibbonCache> cache) {
 		KubernetesServerList serverList;
 		if (properties.getMode() == KubernetesRibbonMode.SERVICE) {
-			serverList = new KubernetesServicesServerList(client, properties);
+			serverList = new KubernetesServicesServerList(client, properties,
+					cache.getIfAvailable());
 		}
 		else {
-			serverList = new KubernetesEndpointsServerList(client, properties);
+			serverList = new KubernetesEndpointsServerList(client, properties,
+					cache.getIfAvailable(), properties.isZoneAware()
+							? this.topologyResolver.getIfAvailable() : null);
 		}
 		serverList.initWithNiwsConfig(config);
 		return serverList;
 	}
 
+	@Bean
+	@ConditionalOnMissingBean
+	@ConditionalOnProperty("spring.cloud.kubernetes.ribbon.watch-endpoints")
+	public ServerListUpdater ribbonServerListUpdater(KubernetesClient client,
+			IClientConfig config, KubernetesRibbonProperties properties,
+			ObjectProvider<KubernetesRibbonCache> cache) {
+		if (properties.getMode() == KubernetesRibbonMode.SERVICE) {
+			// service的地址不随pod变化，没有可watch的内容
+			return new PollingServerListUpdater(config);
+		}
+		return new KubernetesWatchServerListUpdater(client, config, properties,
+				cache.getIfAvailable());
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	@ConditionalOnProperty("spring.cloud.kubernetes.ribbon.slow-start")
+	public IRule ribbonRule(KubernetesClient client, IClientConfig config,
+			KubernetesRibbonProperties properties) {
+		KubernetesSlowStartRule rule = new KubernetesSlowStartRule(client, properties);
+		rule.initWithNiwsConfig(config);
+		return rule;
+	}
+
 }
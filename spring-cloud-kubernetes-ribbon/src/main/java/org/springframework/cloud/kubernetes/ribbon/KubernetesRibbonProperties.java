@@ -16,6 +16,8 @@
 
 package org.springframework.cloud.kubernetes.ribbon;
 
+import java.time.Duration;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 /**
@@ -40,6 +42,61 @@ public class KubernetesRibbonProperties {
 	 */
 	private String clusterDomain = "cluster.local";
 
+	/**
+	 * read the pods of a service from discovery.k8s.io/v1 EndpointSlices instead of
+	 * Endpoints, only used in POD mode. default value is false.
+	 */
+	private boolean useEndpointSlices = false;
+
+	/**
+	 * update the server list of a client as soon as the endpoints of its service change,
+	 * instead of polling them, only used in POD mode. default value is false.
+	 */
+	private boolean watchEndpoints = false;
+
+	/**
+	 * changes received within this time of each other are applied in a single update
+	 * when watching endpoints. default value is 0, every change is applied at once.
+	 */
+	private Duration watchDebounce = Duration.ZERO;
+
+	/**
+	 * interval of the updates made in case a change was missed when watching endpoints.
+	 * default value is 5 minutes, 0 disables them.
+	 */
+	private Duration watchFallbackInterval = Duration.ofMinutes(5);
+
+	/**
+	 * read the endpoints and services of every client from a single cache, kept up to
+	 * date with one watch per namespace. default value is false.
+	 */
+	private boolean sharedCache = false;
+
+	/**
+	 * set the zone of every server from the topology.kubernetes.io/zone label of its
+	 * node, and the zone of the client from the node of the current pod, only used in
+	 * POD mode. default value is false.
+	 */
+	private boolean zoneAware = false;
+
+	/**
+	 * how long the zone of a node is remembered when zone aware. default value is 5
+	 * minutes.
+	 */
+	private Duration zoneNodeCacheTtl = Duration.ofMinutes(5);
+
+	/**
+	 * choose servers with a rule that ramps up the traffic of a pod after it became
+	 * ready. default value is false.
+	 */
+	private boolean slowStart = false;
+
+	/**
+	 * time after becoming ready in which the traffic of a pod ramps up to its full
+	 * share. default value is 1 minute.
+	 */
+	private Duration slowStartWindow = Duration.ofMinutes(1);
+
 	/**
 	 * Get cluster domain.
 	 * @return the cluster domain
@@ -56,6 +113,150 @@ public class KubernetesRibbonProperties {
 		this.clusterDomain = clusterDomain;
 	}
 
+	/**
+	 * Is use endpoint slices.
+	 * @return true if endpoint slices are used
+	 */
+	public boolean isUseEndpointSlices() {
+		return useEndpointSlices;
+	}
+
+	/**
+	 * Sets use endpoint slices.
+	 * @param useEndpointSlices the use endpoint slices
+	 */
+	public void setUseEndpointSlices(boolean useEndpointSlices) {
+		this.useEndpointSlices = useEndpointSlices;
+	}
+
+	/**
+	 * Is watch endpoints.
+	 * @return true if the endpoints are watched
+	 */
+	public boolean isWatchEndpoints() {
+		return watchEndpoints;
+	}
+
+	/**
+	 * Sets watch endpoints.
+	 * @param watchEndpoints the watch endpoints
+	 */
+	public void setWatchEndpoints(boolean watchEndpoints) {
+		this.watchEndpoints = watchEndpoints;
+	}
+
+	/**
+	 * Gets watch debounce.
+	 * @return the watch debounce
+	 */
+	public Duration getWatchDebounce() {
+		return watchDebounce;
+	}
+
+	/**
+	 * Sets watch debounce.
+	 * @param watchDebounce the watch debounce
+	 */
+	public void setWatchDebounce(Duration watchDebounce) {
+		this.watchDebounce = watchDebounce;
+	}
+
+	/**
+	 * Gets watch fallback interval.
+	 * @return the watch fallback interval
+	 */
+	public Duration getWatchFallbackInterval() {
+		return watchFallbackInterval;
+	}
+
+	/**
+	 * Sets watch fallback interval.
+	 * @param watchFallbackInterval the watch fallback interval
+	 */
+	public void setWatchFallbackInterval(Duration watchFallbackInterval) {
+		this.watchFallbackInterval = watchFallbackInterval;
+	}
+
+	/**
+	 * Is shared cache.
+	 * @return true if the shared cache is used
+	 */
+	public boolean isSharedCache() {
+		return sharedCache;
+	}
+
+	/**
+	 * Sets shared cache.
+	 * @param sharedCache the shared cache
+	 */
+	public void setSharedCache(boolean sharedCache) {
+		this.sharedCache = sharedCache;
+	}
+
+	/**
+	 * Is zone aware.
+	 * @return true if servers are zone aware
+	 */
+	public boolean isZoneAware() {
+		return zoneAware;
+	}
+
+	/**
+	 * Sets zone aware.
+	 * @param zoneAware the zone aware
+	 */
+	public void setZoneAware(boolean zoneAware) {
+		this.zoneAware = zoneAware;
+	}
+
+	/**
+	 * Gets zone node cache ttl.
+	 * @return the zone node cache ttl
+	 */
+	public Duration getZoneNodeCacheTtl() {
+		return zoneNodeCacheTtl;
+	}
+
+	/**
+	 * Sets zone node cache ttl.
+	 * @param zoneNodeCacheTtl the zone node cache ttl
+	 */
+	public void setZoneNodeCacheTtl(Duration zoneNodeCacheTtl) {
+		this.zoneNodeCacheTtl = zoneNodeCacheTtl;
+	}
+
+	/**
+	 * Is slow start.
+	 * @return true if the slow start rule is used
+	 */
+	public boolean isSlowStart() {
+		return slowStart;
+	}
+
+	/**
+	 * Sets slow start.
+	 * @param slowStart the slow start
+	 */
+	public void setSlowStart(boolean slowStart) {
+		this.slowStart = slowStart;
+	}
+
+	/**
+	 * Gets slow start window.
+	 * @return the slow start window
+	 */
+	public Duration getSlowStartWindow() {
+		return slowStartWindow;
+	}
+
+	/**
+	 * Sets slow start window.
+	 * @param slowStartWindow the slow start window
+	 */
+	public void setSlowStartWindow(Duration slowStartWindow) {
+		this.slowStartWindow = slowStartWindow;
+	}
+
 	/**
 	 * Gets mode.
 	 * @return the mode
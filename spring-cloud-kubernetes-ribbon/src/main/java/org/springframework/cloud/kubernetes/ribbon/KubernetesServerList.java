@@ -46,6 +46,8 @@ public abstract class KubernetesServerList extends AbstractServerList<Server>
 
 	private KubernetesRibbonProperties properties;
 
+	private final KubernetesRibbonCache cache;
+
 	/**
 	 * Instantiates a new Kubernetes server list.
 	 * @param client the client
@@ -53,8 +55,20 @@ public abstract class KubernetesServerList extends AbstractServerList<Server>
 	 */
 	public KubernetesServerList(KubernetesClient client,
 			KubernetesRibbonProperties properties) {
+		this(client, properties, null);
+	}
+
+	/**
+	 * Instantiates a new Kubernetes server list reading from a shared cache.
+	 * @param client the client
+	 * @param properties the properties
+	 * @param cache the shared cache, or null to read from the API server
+	 */
+	public KubernetesServerList(KubernetesClient client,
+			KubernetesRibbonProperties properties, KubernetesRibbonCache cache) {
 		this.client = client;
 		this.properties = properties;
+		this.cache = cache;
 	}
 
 	public void initWithNiwsConfig(IClientConfig clientConfig) {
@@ -117,4 +131,12 @@ public abstract class KubernetesServerList extends AbstractServerList<Server>
 		return properties;
 	}
 
+	/**
+	 * Gets cache.
+	 * @return the shared cache, or null
+	 */
+	KubernetesRibbonCache getCache() {
+		return cache;
+	}
+
 }
@@ -47,6 +47,17 @@ public class KubernetesServicesServerList extends KubernetesServerList {
 		super(client, properties);
 	}
 
+	/**
+	 * Instantiates a new Kubernetes services server list reading from a shared cache.
+	 * @param client the client
+	 * @param properties the properties
+	 * @param cache the shared cache, or null
+	 */
+	KubernetesServicesServerList(KubernetesClient client,
+			KubernetesRibbonProperties properties, KubernetesRibbonCache cache) {
+		super(client, properties, cache);
+	}
+
 	/**
 	 * Concat service fully qualified domain name.
 	 * @param service Service model
@@ -62,10 +73,17 @@ public class KubernetesServicesServerList extends KubernetesServerList {
 	@Override
 	public List<Server> getUpdatedListOfServers() {
 		List<Server> result = new ArrayList<>();
-		Service service = StringUtils.isNotBlank(this.getNamespace())
-				? this.getClient().services().inNamespace(this.getNamespace())
-						.withName(this.getServiceId()).get()
-				: this.getClient().services().withName(this.getServiceId()).get();
+		Service service;
+		if (this.getCache() != null) {
+			service = this.getCache().getService(this.getNamespace(),
+					this.getServiceId());
+		}
+		else {
+			service = StringUtils.isNotBlank(this.getNamespace())
+					? this.getClient().services().inNamespace(this.getNamespace())
+							.withName(this.getServiceId()).get()
+					: this.getClient().services().withName(this.getServiceId()).get();
+		}
 		if (service != null) {
 			if (LOG.isDebugEnabled()) {
 				LOG.debug("Found Service[" + service.getMetadata().getName() + "]");
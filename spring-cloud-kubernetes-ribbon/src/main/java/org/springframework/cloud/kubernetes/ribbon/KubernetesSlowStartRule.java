@@ -0,0 +1,300 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.cloud.kubernetes.ribbon;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.netflix.client.config.IClientConfig;
+import com.netflix.loadbalancer.BaseLoadBalancer;
+import com.netflix.loadbalancer.ILoadBalancer;
+import com.netflix.loadbalancer.Server;
+import com.netflix.loadbalancer.ZoneAvoidanceRule;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodCondition;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Ribbon rule that sends less traffic to pods that just became ready.
+ *
+ * Servers are filtered like {@link ZoneAvoidanceRule} does and, as long as none of
+ * them is warming up, picked round robin like it does. Otherwise they are picked at
+ * random with a weight that depends on how long ago their pod became ready. The weight
+ * of a pod grows linearly from {@value #MIN_SLOW_START_FACTOR} of its full share when
+ * it becomes ready to its full share once
+ * {@link KubernetesRibbonProperties#getSlowStartWindow()} has elapsed, so freshly
+ * started JVMs warm up before they receive their share of traffic.
+ *
+ * The ready time is read from the {@code Ready} condition of the pod of each
+ * {@link KubernetesPodServer}, in the background. Pods that are not ready yet get the
+ * minimum share and are read again a few seconds later. Servers whose pod is unknown
+ * or cannot be read get their full share. The ready time of a pod is forgotten once
+ * its window has elapsed, and when the pod leaves the server list of the load
+ * balancer.
+ */
+public class KubernetesSlowStartRule extends ZoneAvoidanceRule {
+
+	/**
+	 * The share of traffic a pod gets right after becoming ready.
+	 */
+	static final double MIN_SLOW_START_FACTOR = 0.1;
+
+	private static final Log LOG = LogFactory.getLog(KubernetesSlowStartRule.class);
+
+	private static final String READY_CONDITION = "Ready";
+
+	private static final long NOT_READY_RECHECK_MS = 5000;
+
+	private static final long PENDING = -1L;
+
+	private static final long UNKNOWN = 0L;
+
+	private final KubernetesClient client;
+
+	private final Duration window;
+
+	// 就绪时间；PENDING表示正在读取，小于PENDING表示未就绪，值的相反数为再次读取的时间
+	private final ConcurrentMap<String, Long> readyTimes = new ConcurrentHashMap<>();
+
+	private final AtomicInteger nextIndex = new AtomicInteger();
+
+	private String namespace;
+
+	private ILoadBalancer listenedTo;
+
+	public KubernetesSlowStartRule(KubernetesClient client,
+			KubernetesRibbonProperties properties) {
+		this.client = client;
+		this.window = properties.getSlowStartWindow();
+	}
+
+	@Override
+	public void initWithNiwsConfig(IClientConfig clientConfig) {
+		super.initWithNiwsConfig(clientConfig);
+		this.namespace = clientConfig.getPropertyAsString(KubernetesConfigKey.Namespace,
+				this.client.getNamespace());
+	}
+
+	@Override
+	public void setLoadBalancer(ILoadBalancer lb) {
+		super.setLoadBalancer(lb);
+		// 在server列表更新时清理，而不是每次选择时
+		synchronized (this) {
+			if (lb instanceof BaseLoadBalancer && lb != this.listenedTo) {
+				((BaseLoadBalancer) lb).addServerListChangeListener(
+						(oldList, newList) -> retainPods(newList));
+				this.listenedTo = lb;
+			}
+		}
+	}
+
+	@Override
+	public Server choose(Object key) {
+		ILoadBalancer lb = getLoadBalancer();
+		if (lb == null) {
+			return null;
+		}
+		List<Server> eligible = getPredicate().getEligibleServers(lb.getAllServers(),
+				key);
+		if (eligible.isEmpty()) {
+			return null;
+		}
+		if (eligible.size() == 1) {
+			return eligible.get(0);
+		}
+		double[] weights = weights(eligible, System.currentTimeMillis());
+		double total = 0;
+		for (double weight : weights) {
+			total += weight;
+		}
+		// 没有pod在预热时与ZoneAvoidanceRule一样轮询
+		if (total == weights.length) {
+			return eligible.get(
+					Math.floorMod(this.nextIndex.getAndIncrement(), eligible.size()));
+		}
+		double random = ThreadLocalRandom.current().nextDouble(total);
+		for (int i = 0; i < weights.length; i++) {
+			random -= weights[i];
+			if (random < 0) {
+				return eligible.get(i);
+			}
+		}
+		return eligible.get(eligible.size() - 1);
+	}
+
+	/**
+	 * @param servers the eligible servers
+	 * @param now the current time in milliseconds
+	 * @return the weight of each server, 1 for a full share
+	 */
+	double[] weights(List<Server> servers, long now) {
+		double[] weights = new double[servers.size()];
+		for (int i = 0; i < servers.size(); i++) {
+			weights[i] = slowStartFactor(servers.get(i), now);
+		}
+		return weights;
+	}
+
+	/**
+	 * @param server the server
+	 * @param now the current time in milliseconds
+	 * @return the share of traffic the server gets given when its pod became ready
+	 */
+	double slowStartFactor(Server server, long now) {
+		long windowMs = this.window.toMillis();
+		if (windowMs <= 0 || !(server instanceof KubernetesPodServer)) {
+			return 1;
+		}
+		String key = podKey((KubernetesPodServer) server);
+		if (key == null) {
+			return 1;
+		}
+		long readyAt = readyTime(key, (KubernetesPodServer) server, now);
+		if (readyAt == UNKNOWN) {
+			return 1;
+		}
+		if (readyAt == PENDING) {
+			return MIN_SLOW_START_FACTOR;
+		}
+		double elapsed = (double) (now - readyAt) / windowMs;
+		if (elapsed >= 1) {
+			// 窗口已过，不再需要就绪时间
+			this.readyTimes.replace(key, readyAt, UNKNOWN);
+			return 1;
+		}
+		return Math.max(MIN_SLOW_START_FACTOR, elapsed);
+	}
+
+	private long readyTime(String key, KubernetesPodServer server, long now) {
+		Long readyAt = this.readyTimes.get(key);
+		if (readyAt == null) {
+			readyAt = this.readyTimes.putIfAbsent(key, PENDING);
+			if (readyAt == null) {
+				lookupLater(key, server);
+				return PENDING;
+			}
+		}
+		if (readyAt < PENDING) {
+			// 未就绪的pod到时间后再读一次
+			if (now >= -readyAt && this.readyTimes.replace(key, readyAt, PENDING)) {
+				lookupLater(key, server);
+			}
+			return PENDING;
+		}
+		return readyAt;
+	}
+
+	// 在请求线程之外读取pod
+	private void lookupLater(String key, KubernetesPodServer server) {
+		Lookups.EXECUTOR.execute(() -> {
+			long readyAt = lookupReadyTime(server.getPodName());
+			if (readyAt == PENDING) {
+				readyAt = -(System.currentTimeMillis() + NOT_READY_RECHECK_MS);
+			}
+			this.readyTimes.replace(key, PENDING, readyAt);
+		});
+	}
+
+	/**
+	 * Forgets the ready time of pods that are no longer in the server list, so a pod
+	 * that becomes ready again is read again.
+	 * @param servers all servers of the load balancer
+	 */
+	void retainPods(List<Server> servers) {
+		if (this.readyTimes.isEmpty()) {
+			return;
+		}
+		Set<String> keys = new HashSet<>();
+		for (Server server : servers) {
+			if (server instanceof KubernetesPodServer) {
+				keys.add(podKey((KubernetesPodServer) server));
+			}
+		}
+		this.readyTimes.keySet().retainAll(keys);
+	}
+
+	private long lookupReadyTime(String podName) {
+		try {
+			Pod pod = StringUtils.isNotBlank(this.namespace)
+					? this.client.pods().inNamespace(this.namespace).withName(podName)
+							.get()
+					: this.client.pods().withName(podName).get();
+			if (pod == null) {
+				return UNKNOWN;
+			}
+			if (pod.getStatus() == null || pod.getStatus().getConditions() == null) {
+				return PENDING;
+			}
+			for (PodCondition condition : pod.getStatus().getConditions()) {
+				if (READY_CONDITION.equals(condition.getType())
+						&& "True".equals(condition.getStatus())) {
+					return condition.getLastTransitionTime() != null
+							? Instant.parse(condition.getLastTransitionTime())
+									.toEpochMilli()
+							: UNKNOWN;
+				}
+			}
+			// 还未就绪，正是需要慢启动的时候
+			return PENDING;
+		}
+		catch (DateTimeParseException e) {
+			LOG.debug("Could not parse the ready time of pod " + podName, e);
+			return UNKNOWN;
+		}
+		catch (Exception e) {
+			// 没有读取pod的权限时不做慢启动
+			LOG.debug("Could not read the ready time of pod " + podName, e);
+			return UNKNOWN;
+		}
+	}
+
+	private static String podKey(KubernetesPodServer server) {
+		if (server.getPodName() == null) {
+			return null;
+		}
+		return server.getPodUid() != null ? server.getPodUid() : server.getPodName();
+	}
+
+	/**
+	 * The executor reading pods for every rule, created on first use.
+	 */
+	private static final class Lookups {
+
+		private static final ExecutorService EXECUTOR = Executors
+				.newSingleThreadExecutor(runnable -> {
+					Thread thread = new Thread(runnable, "kubernetes-ribbon-slow-start");
+					thread.setDaemon(true);
+					return thread;
+				});
+
+	}
+
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.cloud.kubernetes.ribbon;
+
+import java.util.Date;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.netflix.client.config.IClientConfig;
+import com.netflix.loadbalancer.ServerListUpdater;
+import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.cloud.kubernetes.discovery.KubernetesEndpointSlice;
+import org.springframework.cloud.kubernetes.discovery.KubernetesEndpointSliceClient;
+
+/**
+ * {@link ServerListUpdater} that updates the server list of a Ribbon client as soon as
+ * the endpoints of its service change, instead of polling them.
+ *
+ * The endpoints, or the EndpointSlices if
+ * {@link KubernetesRibbonProperties#isUseEndpointSlices()} is set, of the service are
+ * watched. Every event triggers an update, events received within
+ * {@link KubernetesRibbonProperties#getWatchDebounce()} of each other are coalesced
+ * into a single update. The list is also updated every
+ * {@link KubernetesRibbonProperties#getWatchFallbackInterval()} in case an event was
+ * missed, and the watch is opened again when it is closed.
+ *
+ * Updates run on a small scheduler shared by all Ribbon clients, never on the thread
+ * of the watch. With a {@link KubernetesRibbonCache} the updater listens to the watch
+ * of the cache instead of opening its own.
+ */
+public class KubernetesWatchServerListUpdater implements ServerListUpdater {
+
+	private static final Log LOG = LogFactory
+			.getLog(KubernetesWatchServerListUpdater.class);
+
+	private static final long REWATCH_DELAY_MS = 1000;
+
+	private final KubernetesClient client;
+
+	private final KubernetesRibbonProperties properties;
+
+	private final KubernetesRibbonCache cache;
+
+	private final String serviceId;
+
+	private final String namespace;
+
+	private final AtomicBoolean updatePending = new AtomicBoolean();
+
+	private volatile UpdateAction updateAction;
+
+	private volatile Watch watch;
+
+	private volatile ScheduledFuture<?> fallbackPoll;
+
+	private volatile boolean stopped;
+
+	private volatile long lastUpdated = System.currentTimeMillis();
+
+	public KubernetesWatchServerListUpdater(KubernetesClient client,
+			IClientConfig clientConfig, KubernetesRibbonProperties properties) {
+		this(client, clientConfig, properties, null);
+	}
+
+	public KubernetesWatchServerListUpdater(KubernetesClient client,
+			IClientConfig clientConfig, KubernetesRibbonProperties properties,
+			KubernetesRibbonCache cache) {
+		this.client = client;
+		this.properties = properties;
+		this.cache = cache;
+		this.serviceId = clientConfig.getClientName();
+		String namespace = clientConfig.getPropertyAsString(
+				KubernetesConfigKey.Namespace, client.getNamespace());
+		this.namespace = StringUtils.isNotBlank(namespace) ? namespace
+				: client.getNamespace();
+	}
+
+	@Override
+	public synchronized void start(UpdateAction updateAction) {
+		if (this.updateAction != null) {
+			return;
+		}
+		this.updateAction = updateAction;
+		this.stopped = false;
+		// 首次更新由负载均衡器自己完成，这里只负责后续的变化
+		openWatch();
+		long interval = this.properties.getWatchFallbackInterval().toMillis();
+		if (interval > 0) {
+			this.fallbackPoll = Scheduler.EXECUTOR.scheduleWithFixedDelay(
+					this::update, interval, interval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Override
+	public synchronized void stop() {
+		this.stopped = true;
+		this.updateAction = null;
+		if (this.fallbackPoll != null) {
+			this.fallbackPoll.cancel(false);
+			this.fallbackPoll = null;
+		}
+		closeWatch();
+	}
+
+	@Override
+	public String getLastUpdate() {
+		return new Date(this.lastUpdated).toString();
+	}
+
+	@Override
+	public long getDurationSinceLastUpdateMs() {
+		return System.currentTimeMillis() - this.lastUpdated;
+	}
+
+	@Override
+	public int getNumberMissedCycles() {
+		long interval = this.properties.getWatchFallbackInterval().toMillis();
+		if (interval <= 0 || this.updateAction == null) {
+			return 0;
+		}
+		return (int) (getDurationSinceLastUpdateMs() / interval);
+	}
+
+	@Override
+	public int getCoreThreads() {
+		return Scheduler.EXECUTOR.getCorePoolSize();
+	}
+
+	/**
+	 * @return true while the endpoints of the service are watched
+	 */
+	boolean isWatching() {
+		return this.watch != null;
+	}
+
+	private synchronized void openWatch() {
+		if (this.stopped || this.watch != null) {
+			return;
+		}
+		try {
+			if (this.cache != null) {
+				// 共享缓存的watch关闭后由缓存负责恢复并通知
+				this.watch = this.cache.watchEndpoints(this.namespace, this.serviceId,
+						this::onChange);
+			}
+			else if (this.properties.isUseEndpointSlices()) {
+				this.watch = new KubernetesEndpointSliceClient(this.client).watch(
+						this.namespace, this.serviceId, null,
+						new ChangeWatcher<KubernetesEndpointSlice>());
+			}
+			else if (StringUtils.isNotBlank(this.namespace)) {
+				this.watch = this.client.endpoints().inNamespace(this.namespace)
+						.withName(this.serviceId).watch(new ChangeWatcher<Endpoints>());
+			}
+			else {
+				this.watch = this.client.endpoints().withName(this.serviceId)
+						.watch(new ChangeWatcher<Endpoints>());
+			}
+			if (LOG.isDebugEnabled()) {
+				LOG.debug(String.format(
+						"Watching endpoints in namespace [%s] for name [%s]",
+						this.namespace, this.serviceId));
+			}
+		}
+		catch (Exception e) {
+			LOG.warn(String.format(
+					"Could not watch endpoints in namespace [%s] for name [%s], retrying",
+					this.namespace, this.serviceId), e);
+			rewatchLater();
+		}
+	}
+
+	private synchronized void closeWatch() {
+		Watch current = this.watch;
+		this.watch = null;
+		if (current != null) {
+			current.close();
+		}
+	}
+
+	private void rewatchLater() {
+		if (this.stopped) {
+			return;
+		}
+		Scheduler.EXECUTOR.schedule(() -> {
+			openWatch();
+			// 重新watch之前的变化可能已经丢失
+			update();
+		}, REWATCH_DELAY_MS, TimeUnit.MILLISECONDS);
+	}
+
+	private void onChange() {
+		long debounce = this.properties.getWatchDebounce().toMillis();
+		if (debounce <= 0) {
+			Scheduler.EXECUTOR.execute(this::update);
+		}
+		else if (this.updatePending.compareAndSet(false, true)) {
+			// 窗口内的其他事件合并为同一次更新
+			Scheduler.EXECUTOR.schedule(() -> {
+				this.updatePending.set(false);
+				update();
+			}, debounce, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void update() {
+		UpdateAction action = this.updateAction;
+		if (action == null || this.stopped) {
+			return;
+		}
+		try {
+			action.doUpdate();
+			this.lastUpdated = System.currentTimeMillis();
+		}
+		catch (Exception e) {
+			LOG.warn(String.format(
+					"Failed to update the servers in namespace [%s] for name [%s]",
+					this.namespace, this.serviceId), e);
+		}
+	}
+
+	/**
+	 * Triggers an update on every event and watches again when the watch is closed.
+	 */
+	private final class ChangeWatcher<T> implements Watcher<T> {
+
+		@Override
+		public void eventReceived(Action action, T resource) {
+			onChange();
+		}
+
+		@Override
+		public void onClose(KubernetesClientException cause) {
+			synchronized (KubernetesWatchServerListUpdater.this) {
+				if (KubernetesWatchServerListUpdater.this.stopped) {
+					return;
+				}
+				KubernetesWatchServerListUpdater.this.watch = null;
+			}
+			LOG.debug("The watch of endpoints in namespace ["
+					+ KubernetesWatchServerListUpdater.this.namespace + "] for name ["
+					+ KubernetesWatchServerListUpdater.this.serviceId
+					+ "] was closed, watching again", cause);
+			rewatchLater();
+		}
+
+	}
+
+	/**
+	 * The scheduler shared by every updater, created on first use.
+	 */
+	private static final class Scheduler {
+
+		private static final ScheduledThreadPoolExecutor EXECUTOR = create();
+
+		private static ScheduledThreadPoolExecutor create() {
+			ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(2,
+					runnable -> {
+						Thread thread = new Thread(runnable,
+								"kubernetes-ribbon-watch-updater");
+						thread.setDaemon(true);
+						return thread;
+					});
+			executor.setRemoveOnCancelPolicy(true);
+			return executor;
+		}
+
+	}
+
+}
@@ -16,13 +16,21 @@
 
 package org.springframework.cloud.kubernetes.ribbon;
 
+import io.fabric8.kubernetes.client.KubernetesClient;
+
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.kubernetes.PodUtils;
+import org.springframework.cloud.kubernetes.discovery.KubernetesDiscoveryClientAutoConfiguration;
+import org.springframework.cloud.kubernetes.discovery.KubernetesTopologyResolver;
 import org.springframework.cloud.netflix.ribbon.RibbonAutoConfiguration;
 import org.springframework.cloud.netflix.ribbon.RibbonClients;
 import org.springframework.cloud.netflix.ribbon.SpringClientFactory;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 /**
@@ -31,12 +39,32 @@ import org.springframework.context.annotation.Configuration;
  * @author Ioannis Canellos
  */
 @Configuration
-@EnableConfigurationProperties
+@EnableConfigurationProperties(KubernetesRibbonProperties.class)
 @ConditionalOnBean(SpringClientFactory.class)
 @ConditionalOnProperty(value = "spring.cloud.kubernetes.ribbon.enabled",
 		matchIfMissing = true)
-@AutoConfigureAfter(RibbonAutoConfiguration.class)
+@AutoConfigureAfter({ RibbonAutoConfiguration.class,
+		KubernetesDiscoveryClientAutoConfiguration.class })
 @RibbonClients(defaultConfiguration = KubernetesRibbonClientConfiguration.class)
 public class RibbonKubernetesAutoConfiguration {
 
+	@Bean
+	@ConditionalOnMissingBean
+	@ConditionalOnProperty("spring.cloud.kubernetes.ribbon.shared-cache")
+	public KubernetesRibbonCache kubernetesRibbonCache(KubernetesClient client,
+			KubernetesRibbonProperties properties) {
+		return new KubernetesRibbonCache(client, properties);
+	}
+
+	// 服务发现已经提供了resolver时共用它的节点缓存
+	@Bean
+	@ConditionalOnMissingBean
+	@ConditionalOnProperty("spring.cloud.kubernetes.ribbon.zone-aware")
+	public KubernetesTopologyResolver kubernetesRibbonTopologyResolver(
+			KubernetesClient client, ObjectProvider<PodUtils> podUtils,
+			KubernetesRibbonProperties properties) {
+		return new KubernetesTopologyResolver(client, podUtils.getIfAvailable(),
+				properties.getZoneNodeCacheTtl());
+	}
+
 }
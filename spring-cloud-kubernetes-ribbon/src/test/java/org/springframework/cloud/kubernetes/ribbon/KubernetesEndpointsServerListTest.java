@@ -0,0 +1,127 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.cloud.kubernetes.ribbon;
+
+import java.time.Duration;
+import java.util.List;
+
+import com.netflix.client.config.DefaultClientConfigImpl;
+import com.netflix.loadbalancer.Server;
+import io.fabric8.kubernetes.api.model.EndpointAddress;
+import io.fabric8.kubernetes.api.model.EndpointAddressBuilder;
+import io.fabric8.kubernetes.api.model.EndpointsBuilder;
+import io.fabric8.kubernetes.api.model.NodeBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.server.mock.KubernetesServer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import org.springframework.cloud.kubernetes.discovery.KubernetesTopologyResolver;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KubernetesEndpointsServerListTest {
+
+	@Rule
+	public KubernetesServer server = new KubernetesServer(true, true);
+
+	private KubernetesClient client;
+
+	private DefaultClientConfigImpl config;
+
+	private KubernetesEndpointsServerList serverList;
+
+	@Before
+	public void setUp() {
+		this.client = this.server.getClient();
+		this.config = new DefaultClientConfigImpl();
+		this.config.setClientName("testapp");
+		this.config.set(KubernetesConfigKey.Namespace, "test");
+		this.serverList = new KubernetesEndpointsServerList(this.client,
+				new KubernetesRibbonProperties());
+		this.serverList.initWithNiwsConfig(this.config);
+	}
+
+	@Test
+	public void reusesServersThatDidNotChange() {
+		replaceEndpoints(address("10.0.0.1", "uid1"));
+		List<Server> first = this.serverList.getUpdatedListOfServers();
+
+		assertThat(this.serverList.getUpdatedListOfServers()).isSameAs(first);
+
+		replaceEndpoints(address("10.0.0.1", "uid1"),
+				address("10.0.0.2", "uid2"));
+		List<Server> second = this.serverList.getUpdatedListOfServers();
+
+		assertThat(second).hasSize(2);
+		assertThat(second.get(0)).isSameAs(first.get(0));
+		assertThat(((KubernetesPodServer) second.get(1)).getPodName())
+				.isEqualTo("pod-uid2");
+	}
+
+	@Test
+	public void replacesServersOfANewPodAtTheSameAddress() {
+		replaceEndpoints(address("10.0.0.1", "uid1"));
+		Server before = this.serverList.getUpdatedListOfServers().get(0);
+
+		replaceEndpoints(address("10.0.0.1", "uid2"));
+		Server after = this.serverList.getUpdatedListOfServers().get(0);
+
+		assertThat(after).isNotSameAs(before);
+		assertThat(after).isNotEqualTo(before);
+		assertThat(after.getId()).isEqualTo(before.getId());
+	}
+
+	@Test
+	public void setsTheZoneOfServersFromTheirNode() {
+		this.client.nodes().create(new NodeBuilder().withNewMetadata()
+				.withName("node1")
+				.addToLabels(KubernetesTopologyResolver.ZONE_LABEL, "zone-a")
+				.endMetadata().build());
+		KubernetesEndpointsServerList zoneAware = new KubernetesEndpointsServerList(
+				this.client, new KubernetesRibbonProperties(), null,
+				new KubernetesTopologyResolver(this.client, null,
+						Duration.ofMinutes(5)));
+		zoneAware.initWithNiwsConfig(this.config);
+		EndpointAddress onNode = address("10.0.0.1", "uid1");
+		onNode.setNodeName("node1");
+		replaceEndpoints(onNode, address("10.0.0.2", "uid2"));
+
+		List<Server> servers = zoneAware.getUpdatedListOfServers();
+
+		assertThat(servers.get(0).getZone()).isEqualTo("zone-a");
+		assertThat(servers.get(1).getZone()).isEqualTo(Server.UNKNOWN_ZONE);
+	}
+
+	private void replaceEndpoints(EndpointAddress... addresses) {
+		this.client.endpoints().inNamespace("test").withName("testapp").delete();
+		this.client.endpoints().inNamespace("test")
+				.create(new EndpointsBuilder().withNewMetadata()
+						.withName("testapp").withNamespace("test").endMetadata()
+						.addNewSubset().withAddresses(addresses)
+						.addNewPort("http", 8080, "TCP").endSubset().build());
+	}
+
+	private static EndpointAddress address(String ip, String podUid) {
+		return new EndpointAddressBuilder().withIp(ip).withNewTargetRef()
+				.withKind("Pod").withName("pod-" + podUid).withUid(podUid)
+				.endTargetRef().build();
+	}
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.cloud.kubernetes.ribbon;
+import com.netflix.loadbalancer.Server;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KubernetesPodServerTest {
+
+	@Test
+	public void equalOnlyToServersOfTheSamePod() {
+		Server pod = new KubernetesPodServer("10.0.0.1", 8080, "uid1", "a");
+
+		assertThat(pod).isEqualTo(new KubernetesPodServer("10.0.0.1", 8080, "uid1", "a"));
+		assertThat(pod.hashCode()).isEqualTo(
+				new KubernetesPodServer("10.0.0.1", 8080, "uid1", "a").hashCode());
+		assertThat(pod).isNotEqualTo(new KubernetesPodServer("10.0.0.1", 8080, "uid2", "b"));
+		assertThat(pod).isNotEqualTo(new KubernetesPodServer("10.0.0.2", 8080, "uid1", "a"));
+	}
+
+	@Test
+	public void neverEqualToPlainServers() {
+		Server pod = new KubernetesPodServer("10.0.0.1", 8080, null, null);
+
+		assertThat(pod).isNotEqualTo(new Server("10.0.0.1", 8080));
+	}
+
+}
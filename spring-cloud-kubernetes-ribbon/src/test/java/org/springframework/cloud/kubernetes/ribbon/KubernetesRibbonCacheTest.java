@@ -0,0 +1,144 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.cloud.kubernetes.ribbon;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.model.EndpointsBuilder;
+import io.fabric8.kubernetes.api.model.ServiceBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.server.mock.KubernetesServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KubernetesRibbonCacheTest {
+
+	@Rule
+	public KubernetesServer server = new KubernetesServer(true, true);
+
+	private KubernetesClient client;
+
+	private KubernetesRibbonCache cache;
+
+	@Before
+	public void setUp() {
+		this.client = this.server.getClient();
+		this.cache = new KubernetesRibbonCache(this.client,
+				new KubernetesRibbonProperties());
+	}
+
+	@After
+	public void tearDown() {
+		this.cache.stop();
+	}
+
+	@Test
+	public void keepsTheEndpointsOfANamespaceUpToDate() throws Exception {
+		createEndpoints("a");
+
+		assertThat(this.cache.getEndpoints("test", "a")).isNotNull();
+		assertThat(this.cache.getEndpoints("test", "b")).isNull();
+
+		CountDownLatch changed = new CountDownLatch(1);
+		Watch watch = this.cache.watchEndpoints("test", "b", changed::countDown);
+		createEndpoints("b");
+
+		assertThat(changed.await(10, TimeUnit.SECONDS)).isTrue();
+		assertThat(this.cache.getEndpoints("test", "b").getSubsets()).hasSize(1);
+		watch.close();
+	}
+
+	@Test
+	public void keepsTheServicesOfANamespaceUpToDate() throws Exception {
+		this.client.services().inNamespace("test")
+				.create(new ServiceBuilder().withNewMetadata().withName("a")
+						.withNamespace("test").endMetadata().build());
+
+		assertThat(this.cache.getService("test", "a")).isNotNull();
+		assertThat(this.cache.getService("other", "a")).isNull();
+
+		this.client.services().inNamespace("test").withName("a").delete();
+
+		long deadline = System.currentTimeMillis() + 10000;
+		while (this.cache.getService("test", "a") != null
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		assertThat(this.cache.getService("test", "a")).isNull();
+	}
+
+	@Test
+	public void doesNotMergeSlicesOfServicesInDifferentNamespaces() {
+		KubernetesServer slicesServer = new KubernetesServer();
+		slicesServer.before();
+		KubernetesRibbonCache anyNamespaceCache = null;
+		try {
+			slicesServer.expect().get()
+					.withPath("/apis/discovery.k8s.io/v1/endpointslices")
+					.andReturn(200, "{\"kind\":\"EndpointSliceList\","
+							+ "\"metadata\":{\"resourceVersion\":\"10\"},\"items\":["
+							+ slice("svc-1", "a", "svc", "10.0.0.1") + ","
+							+ slice("svc-2", "b", "svc", "10.0.0.2") + ","
+							+ slice("solo-1", "a", "solo", "10.0.0.3") + "]}")
+					.once();
+			KubernetesRibbonProperties properties = new KubernetesRibbonProperties();
+			properties.setUseEndpointSlices(true);
+			anyNamespaceCache = new KubernetesRibbonCache(
+					slicesServer.getClient().inAnyNamespace(), properties);
+
+			Endpoints solo = anyNamespaceCache.getEndpoints(null, "solo");
+
+			assertThat(solo.getMetadata().getNamespace()).isEqualTo("a");
+			assertThat(solo.getSubsets().get(0).getAddresses()).hasSize(1);
+			// the same name in two namespaces is two different services
+			assertThat(anyNamespaceCache.getEndpoints(null, "svc")).isNull();
+		}
+		finally {
+			if (anyNamespaceCache != null) {
+				anyNamespaceCache.stop();
+			}
+			slicesServer.after();
+		}
+	}
+
+	private static String slice(String name, String namespace, String service,
+			String ip) {
+		return "{\"metadata\":{\"name\":\"" + name + "\",\"namespace\":\""
+				+ namespace + "\",\"resourceVersion\":\"1\","
+				+ "\"labels\":{\"kubernetes.io/service-name\":\"" + service + "\"}},"
+				+ "\"addressType\":\"IPv4\",\"endpoints\":[{\"addresses\":[\"" + ip
+				+ "\"],\"conditions\":{\"ready\":true}}],"
+				+ "\"ports\":[{\"name\":\"http\",\"port\":8080,\"protocol\":\"TCP\"}]}";
+	}
+
+	private void createEndpoints(String name) {
+		this.client.endpoints().inNamespace("test")
+				.create(new EndpointsBuilder().withNewMetadata().withName(name)
+						.withNamespace("test").endMetadata().addNewSubset()
+						.addNewAddress().withIp("10.0.0.1").endAddress()
+						.addNewPort("http", 8080, "TCP").endSubset().build());
+	}
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.cloud.kubernetes.ribbon;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.netflix.client.config.DefaultClientConfigImpl;
+import com.netflix.loadbalancer.BaseLoadBalancer;
+import com.netflix.loadbalancer.Server;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.server.mock.KubernetesServer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class KubernetesSlowStartRuleTest {
+
+	@Rule
+	public KubernetesServer server = new KubernetesServer(true, true);
+
+	private KubernetesClient client;
+
+	private KubernetesSlowStartRule rule;
+
+	@Before
+	public void setUp() {
+		this.client = this.server.getClient();
+		DefaultClientConfigImpl config = new DefaultClientConfigImpl();
+		config.setClientName("testapp");
+		config.set(KubernetesConfigKey.Namespace, "test");
+		this.rule = new KubernetesSlowStartRule(this.client,
+				new KubernetesRibbonProperties());
+		this.rule.initWithNiwsConfig(config);
+	}
+
+	@Test
+	public void rampsUpPodsThatJustBecameReady() throws Exception {
+		long now = System.currentTimeMillis();
+		createPod("fresh", now - 30000);
+		createPod("warm", now - 600000);
+		Server fresh = new KubernetesPodServer("10.0.0.1", 8080, "uid1", "fresh");
+		Server warm = new KubernetesPodServer("10.0.0.2", 8080, "uid2", "warm");
+
+		// the pods are read in the background, meanwhile new pods get the minimum
+		assertThat(this.rule.slowStartFactor(fresh, now))
+				.isEqualTo(KubernetesSlowStartRule.MIN_SLOW_START_FACTOR);
+		awaitLookup(fresh, now);
+		awaitLookup(warm, now);
+
+		assertThat(this.rule.slowStartFactor(fresh, now)).isCloseTo(0.5,
+				within(0.01));
+		assertThat(this.rule.slowStartFactor(warm, now)).isEqualTo(1.0);
+	}
+
+	@Test
+	public void givesServersWithoutPodTheirFullShare() throws Exception {
+		Server plain = new Server("10.0.0.1", 8080);
+		Server unknownPod = new KubernetesPodServer("10.0.0.2", 8080, "uid", "gone");
+		long now = System.currentTimeMillis();
+		awaitLookup(unknownPod, now);
+
+		assertThat(this.rule.slowStartFactor(plain, now)).isEqualTo(1.0);
+		assertThat(this.rule.slowStartFactor(unknownPod, now)).isEqualTo(1.0);
+		double[] weights = this.rule.weights(Arrays.asList(plain, unknownPod), now);
+		assertThat(weights[0]).isEqualTo(weights[1]);
+	}
+
+	@Test
+	public void forgetsTheReadyTimeOnceTheWindowHasElapsed() throws Exception {
+		long now = System.currentTimeMillis();
+		createPod("fresh", now - 30000);
+		Server fresh = new KubernetesPodServer("10.0.0.1", 8080, "uid1", "fresh");
+		awaitLookup(fresh, now);
+
+		assertThat(this.rule.slowStartFactor(fresh, now + 60000)).isEqualTo(1.0);
+		// the pod is not read again, it keeps its full share
+		assertThat(this.rule.slowStartFactor(fresh, now)).isEqualTo(1.0);
+	}
+
+	@Test
+	public void forgetsPodsThatLeaveTheServerList() throws Exception {
+		long now = System.currentTimeMillis();
+		createPod("fresh", now - 30000);
+		Server fresh = new KubernetesPodServer("10.0.0.1", 8080, "uid1", "fresh");
+		BaseLoadBalancer loadBalancer = new BaseLoadBalancer();
+		try {
+			loadBalancer.setRule(this.rule);
+			loadBalancer.setServersList(Collections.singletonList(fresh));
+			awaitLookup(fresh, now);
+			assertThat(this.rule.slowStartFactor(fresh, now)).isCloseTo(0.5,
+					within(0.01));
+
+			loadBalancer.setServersList(Collections.emptyList());
+
+			// the pod is read again when it comes back
+			assertThat(this.rule.slowStartFactor(fresh, now))
+					.isEqualTo(KubernetesSlowStartRule.MIN_SLOW_START_FACTOR);
+		}
+		finally {
+			loadBalancer.shutdown();
+		}
+	}
+
+	@Test
+	public void throttlesPodsThatAreNotReadyYetAndReadsThemAgain() throws Exception {
+		this.client.pods().inNamespace("test").create(new PodBuilder()
+				.withNewMetadata().withName("starting").withNamespace("test")
+				.endMetadata().withNewStatus().addNewCondition().withType("Ready")
+				.withStatus("False").endCondition().endStatus().build());
+		Server starting = new KubernetesPodServer("10.0.0.1", 8080, "uid1",
+				"starting");
+		long now = System.currentTimeMillis();
+
+		assertThat(this.rule.slowStartFactor(starting, now))
+				.isEqualTo(KubernetesSlowStartRule.MIN_SLOW_START_FACTOR);
+		Thread.sleep(500);
+		assertThat(this.rule.slowStartFactor(starting, now))
+				.isEqualTo(KubernetesSlowStartRule.MIN_SLOW_START_FACTOR);
+
+		long readyAt = now - 30000;
+		this.client.pods().inNamespace("test").withName("starting").delete();
+		createPod("starting", readyAt);
+		// the pod is read again once the recheck delay has elapsed
+		awaitLookup(starting, now + 10000);
+
+		assertThat(this.rule.slowStartFactor(starting, now)).isCloseTo(0.5,
+				within(0.01));
+	}
+
+	@Test
+	public void picksServersRoundRobinWhenNoPodIsWarmingUp() {
+		Server first = new Server("10.0.0.1", 8080);
+		Server second = new Server("10.0.0.2", 8080);
+		BaseLoadBalancer loadBalancer = new BaseLoadBalancer();
+		try {
+			loadBalancer.setRule(this.rule);
+			loadBalancer.setServersList(Arrays.asList(first, second));
+
+			assertThat(Arrays.asList(this.rule.choose(null), this.rule.choose(null),
+					this.rule.choose(null), this.rule.choose(null)))
+							.containsExactly(first, second, first, second);
+		}
+		finally {
+			loadBalancer.shutdown();
+		}
+	}
+
+	private void awaitLookup(Server server, long now) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (this.rule.slowStartFactor(server,
+				now) == KubernetesSlowStartRule.MIN_SLOW_START_FACTOR
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+	}
+
+	private void createPod(String name, long readyAt) {
+		this.client.pods().inNamespace("test").create(new PodBuilder()
+				.withNewMetadata().withName(name).withNamespace("test").endMetadata()
+				.withNewStatus().addNewCondition().withType("Ready").withStatus("True")
+				.withLastTransitionTime(Instant.ofEpochMilli(readyAt).toString())
+				.endCondition().endStatus().build());
+	}
+
+}
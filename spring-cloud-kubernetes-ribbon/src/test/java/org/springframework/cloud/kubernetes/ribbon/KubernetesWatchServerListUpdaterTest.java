@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.cloud.kubernetes.ribbon;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.netflix.client.config.DefaultClientConfigImpl;
+import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.model.EndpointsBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.server.mock.KubernetesServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KubernetesWatchServerListUpdaterTest {
+
+	@Rule
+	public KubernetesServer server = new KubernetesServer(true, true);
+
+	private KubernetesClient client;
+
+	private DefaultClientConfigImpl config;
+
+	private KubernetesRibbonProperties properties;
+
+	private KubernetesWatchServerListUpdater updater;
+
+	@Before
+	public void setUp() {
+		this.client = this.server.getClient();
+		this.config = new DefaultClientConfigImpl();
+		this.config.setClientName("testapp");
+		this.config.set(KubernetesConfigKey.Namespace, "test");
+		this.properties = new KubernetesRibbonProperties();
+		this.properties.setWatchEndpoints(true);
+	}
+
+	@After
+	public void tearDown() {
+		if (this.updater != null) {
+			this.updater.stop();
+		}
+	}
+
+	@Test
+	public void updatesWhenTheEndpointsOfTheServiceChange() throws Exception {
+		CountDownLatch updated = new CountDownLatch(1);
+		this.updater = new KubernetesWatchServerListUpdater(this.client, this.config,
+				this.properties);
+		this.updater.start(updated::countDown);
+		assertThat(this.updater.isWatching()).isTrue();
+
+		// endpoints of another service are ignored
+		this.client.endpoints().inNamespace("test").create(endpoints("other"));
+		this.client.endpoints().inNamespace("test").create(endpoints("testapp"));
+
+		assertThat(updated.await(10, TimeUnit.SECONDS)).isTrue();
+	}
+
+	@Test
+	public void coalescesChangesWithinTheDebounceWindow() throws Exception {
+		this.properties.setWatchDebounce(Duration.ofMillis(500));
+		AtomicInteger updates = new AtomicInteger();
+		CountDownLatch updated = new CountDownLatch(1);
+		this.updater = new KubernetesWatchServerListUpdater(this.client, this.config,
+				this.properties);
+		this.updater.start(() -> {
+			updates.incrementAndGet();
+			updated.countDown();
+		});
+
+		this.client.endpoints().inNamespace("test").create(endpoints("testapp"));
+		this.client.endpoints().inNamespace("test").withName("testapp").edit()
+				.editMetadata().addToLabels("changed", "true").endMetadata().done();
+
+		assertThat(updated.await(10, TimeUnit.SECONDS)).isTrue();
+		Thread.sleep(1000);
+		assertThat(updates.get()).isEqualTo(1);
+	}
+
+	@Test
+	public void stopClosesTheWatch() {
+		this.updater = new KubernetesWatchServerListUpdater(this.client, this.config,
+				this.properties);
+		this.updater.start(() -> {
+		});
+
+		this.updater.stop();
+
+		assertThat(this.updater.isWatching()).isFalse();
+		assertThat(this.updater.getNumberMissedCycles()).isZero();
+	}
+
+	private static Endpoints endpoints(String name) {
+		return new EndpointsBuilder().withNewMetadata().withName(name)
+				.withNamespace("test").endMetadata().addNewSubset().addNewAddress()
+				.withIp("10.0.0.1").endAddress().addNewPort("http", 8080, "TCP")
+				.endSubset().build();
+	}
+
+}